@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks, and writes the results in two formats:
+ * <ul>
+ *   <li>{@code jmh-result.json}: The complete results, in JMH's format, which
+ *     is understood by the usual visualization tools.</li>
+ *   <li>{@code scores.properties}: The score, score error, and unit of every
+ *     benchmark, which can be kept for a release, and passed as the baseline
+ *     of a later run.</li>
+ * </ul>
+ * If a baseline is given, every score is compared with the baseline. The
+ * process terminates with exit code 1, if a benchmark became slower by more
+ * than the threshold, and by more than the combined score errors.
+ * The arguments are passed to JMH. The following system properties are used:
+ * <ul>
+ *   <li>{@code benchmarks.resultDir}: The output directory, by default target/benchmarks.</li>
+ *   <li>{@code benchmarks.baseline}: A scores.properties file of a previous run, if any.</li>
+ *   <li>{@code benchmarks.threshold}: The tolerated slowdown in percent, by default 10.</li>
+ *   <li>{@code benchmarks.version}: The version, which is being measured.</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+	/**
+	 * The score of a single benchmark.
+	 */
+	static class Score {
+		final double value, error;
+		final String unit;
+		final boolean higherIsBetter;
+
+		Score(double pValue, double pError, String pUnit, boolean pHigherIsBetter) {
+			value = pValue;
+			error = pError;
+			unit = pUnit;
+			higherIsBetter = pHigherIsBetter;
+		}
+
+		String format() {
+			return value + "," + (Double.isNaN(error) ? "" : String.valueOf(error)) + "," + unit + ","
+					+ (higherIsBetter ? "higher" : "lower");
+		}
+
+		static Score parse(String pValue) {
+			final String[] parts = pValue.split(",", -1);
+			if (parts.length != 4) {
+				throw new IllegalArgumentException("Expected score,error,unit,higher|lower, got " + pValue);
+			}
+			final double error = parts[1].length() == 0 ? Double.NaN : Double.parseDouble(parts[1]);
+			return new Score(Double.parseDouble(parts[0]), error, parts[2], "higher".equals(parts[3]));
+		}
+
+		/**
+		 * Returns the change, compared with the given baseline.
+		 * @param pBaseline The baseline score.
+		 * @return The change in percent, positive values meaning slower.
+		 */
+		double getSlowdown(Score pBaseline) {
+			if (pBaseline.value == 0) {
+				return 0;
+			}
+			final double change = (value - pBaseline.value) / pBaseline.value * 100;
+			return higherIsBetter ? -change : change;
+		}
+
+		boolean isSignificant(Score pBaseline) {
+			final double errors = (Double.isNaN(error) ? 0 : error)
+					+ (Double.isNaN(pBaseline.error) ? 0 : pBaseline.error);
+			return Math.abs(value - pBaseline.value) > errors;
+		}
+	}
+
+	public static void main(String[] pArgs) throws CommandLineOptionException, RunnerException, IOException {
+		final CommandLineOptions cmdOptions = new CommandLineOptions(pArgs);
+		if (cmdOptions.shouldHelp()  ||  cmdOptions.shouldList()  ||  cmdOptions.shouldListWithParams()
+				||  cmdOptions.shouldListProfilers()  ||  cmdOptions.shouldListResultFormats()) {
+			Main.main(pArgs);
+			return;
+		}
+		final Path resultDir = Paths.get(System.getProperty("benchmarks.resultDir", "target/benchmarks"));
+		Files.createDirectories(resultDir);
+		final Options options = new OptionsBuilder().parent(cmdOptions)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultDir.resolve("jmh-result.json").toString())
+				.build();
+		final Collection<RunResult> results = new Runner(options).run();
+		final Map<String,Score> scores = getScores(results);
+		final Path scoresFile = resultDir.resolve("scores.properties");
+		write(scoresFile, scores, System.getProperty("benchmarks.version"));
+		System.out.println("Benchmark scores written to " + scoresFile);
+		final String baseline = System.getProperty("benchmarks.baseline");
+		if (baseline != null  &&  baseline.trim().length() > 0) {
+			final double threshold = Double.parseDouble(System.getProperty("benchmarks.threshold", "10"));
+			final int regressions = compare(read(Paths.get(baseline.trim())), scores, threshold);
+			if (regressions > 0) {
+				System.err.println(regressions + " benchmark(s) are more than " + threshold
+						+ "% slower than the baseline " + baseline.trim());
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Converts the results into scores. For the sample mode, the 99th
+	 * percentile is added as a separate score.
+	 * @param pResults The benchmark results.
+	 * @return The scores, by key.
+	 */
+	static Map<String,Score> getScores(Collection<RunResult> pResults) {
+		final Map<String,Score> scores = new TreeMap<>();
+		for (RunResult runResult : pResults) {
+			final BenchmarkParams params = runResult.getParams();
+			final String benchmark = params.getBenchmark();
+			final StringBuilder sb = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+					benchmark.lastIndexOf('.')-1)+1));
+			if (!params.getParamsKeys().isEmpty()) {
+				sb.append('(');
+				String separator = "";
+				for (String key : params.getParamsKeys()) {
+					sb.append(separator).append(key).append('=').append(params.getParam(key));
+					separator = ",";
+				}
+				sb.append(')');
+			}
+			final String key = sb.toString();
+			final Mode mode = params.getMode();
+			final Result<?> result = runResult.getPrimaryResult();
+			scores.put(key + " " + mode.shortLabel(), new Score(result.getScore(), result.getScoreError(),
+					result.getScoreUnit(), mode == Mode.Throughput));
+			if (mode == Mode.SampleTime) {
+				scores.put(key + " " + mode.shortLabel() + ".p99", new Score(result.getStatistics().getPercentile(99),
+						Double.NaN, result.getScoreUnit(), false));
+			}
+		}
+		return scores;
+	}
+
+	static void write(Path pFile, Map<String,Score> pScores, String pVersion) throws IOException {
+		try (BufferedWriter bw = Files.newBufferedWriter(pFile, StandardCharsets.ISO_8859_1)) {
+			bw.write("# Benchmark scores: score,error,unit,higher|lower (is better)");
+			bw.newLine();
+			bw.write("# Version " + (pVersion == null ? "unknown" : pVersion) + ", Java "
+					+ System.getProperty("java.version") + ", " + Instant.now());
+			bw.newLine();
+			for (Map.Entry<String,Score> en : pScores.entrySet()) {
+				bw.write(escape(en.getKey()) + "=" + en.getValue().format());
+				bw.newLine();
+			}
+		}
+	}
+
+	private static String escape(String pKey) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0;  i < pKey.length();  i++) {
+			final char c = pKey.charAt(i);
+			if (c == '='  ||  c == ':'  ||  c == ' '  ||  c == '#'  ||  c == '!'  ||  c == '\\') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	static Map<String,Score> read(Path pFile) throws IOException {
+		final Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(pFile)) {
+			props.load(in);
+		}
+		final Map<String,Score> scores = new TreeMap<>();
+		for (String key : props.stringPropertyNames()) {
+			scores.put(key, Score.parse(props.getProperty(key)));
+		}
+		return scores;
+	}
+
+	/**
+	 * Compares the given scores with the baseline, and prints the result.
+	 * @param pBaseline The scores of the baseline.
+	 * @param pScores The current scores.
+	 * @param pThreshold The tolerated slowdown in percent.
+	 * @return The number of regressions.
+	 */
+	static int compare(Map<String,Score> pBaseline, Map<String,Score> pScores, double pThreshold) {
+		int regressions = 0;
+		System.out.println("Comparison with the baseline (positive values mean slower):");
+		for (Map.Entry<String,Score> en : pScores.entrySet()) {
+			final Score baseline = pBaseline.get(en.getKey());
+			final Score score = en.getValue();
+			if (baseline == null) {
+				System.out.println("  " + en.getKey() + ": New benchmark");
+				continue;
+			}
+			if (!baseline.unit.equals(score.unit)) {
+				System.out.println("  " + en.getKey() + ": Unit changed from " + baseline.unit + " to " + score.unit);
+				continue;
+			}
+			final double slowdown = score.getSlowdown(baseline);
+			final boolean regression = slowdown > pThreshold  &&  score.isSignificant(baseline);
+			if (regression) {
+				++regressions;
+			}
+			System.out.println(String.format(Locale.ROOT, "  %s: %.3f -> %.3f %s (%+.1f%%)%s", en.getKey(),
+					Double.valueOf(baseline.value), Double.valueOf(score.value), score.unit, Double.valueOf(slowdown),
+					regression ? " REGRESSION" : ""));
+		}
+		return regressions;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jochenw.jmp.jwigrv.ScriptClassCache;
+import com.github.jochenw.jmp.jwigrv.SessionScriptCache;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.transform.CompileStatic;
+
+
+/**
+ * Measures the cost of the steps, that the JwiGrvMojo performs for a script:
+ * Parsing, and compiling the script without any cache, looking it up in the
+ * session cache, or the on-disk cache, and running the compiled script.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroovyScriptBenchmark {
+	/** A script, which is valid with, and without compileStatic. */
+	static final String SCRIPT = "int count = Integer.parseInt((String) binding.getVariable('count'))\n"
+			+ "long sum = 0\n"
+			+ "List<String> words = []\n"
+			+ "for (int i = 0;  i < count;  i++) {\n"
+			+ "    sum += i * i\n"
+			+ "    words.add('w' + (i % 10))\n"
+			+ "}\n"
+			+ "Map<String,Integer> frequencies = [:]\n"
+			+ "for (String w : words) {\n"
+			+ "    frequencies.put(w, (frequencies.get(w) ?: 0) + 1)\n"
+			+ "}\n"
+			+ "return sum + frequencies.size()\n";
+
+	@Param({"false", "true"})
+	public boolean compileStatic;
+
+	private Path tempDir, scriptFile;
+	private CompilerConfiguration config;
+	private String settingsId;
+	private ScriptClassCache sessionCachedScripts;
+	private Class<?> scriptClass;
+
+	@Setup
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("jwigrv-bench");
+		scriptFile = tempDir.resolve("bench.groovy");
+		Files.write(scriptFile, SCRIPT.getBytes(StandardCharsets.UTF_8));
+		config = new CompilerConfiguration(CompilerConfiguration.DEFAULT);
+		if (compileStatic) {
+			config.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+		}
+		settingsId = ScriptClassCache.describe(config) + ";compileStatic=" + compileStatic;
+		sessionCachedScripts = new ScriptClassCache(null, new SessionScriptCache(64), new QuietLog());
+		scriptClass = sessionCachedScripts.getScriptClass(scriptFile, config, settingsId);
+		// Populate the on-disk cache.
+		newDiskCachedScripts().getScriptClass(scriptFile, config, settingsId);
+	}
+
+	@TearDown
+	public void tearDown() {
+		Mojos.delete(tempDir);
+	}
+
+	private ScriptClassCache newDiskCachedScripts() {
+		// A new session cache, like in a new Maven session.
+		return new ScriptClassCache(tempDir.resolve("cache"), new SessionScriptCache(64), new QuietLog());
+	}
+
+	/**
+	 * Parses, and compiles the script, as if no cache was present.
+	 * @return The compiled script class.
+	 */
+	@Benchmark
+	public Class<?> parse() {
+		return new GroovyShell(config).parse(SCRIPT, "BenchScript").getClass();
+	}
+
+	/**
+	 * Loads the script from the session cache, as for the second execution
+	 * within the same Maven session.
+	 * @return The cached script class.
+	 * @throws IOException Reading the script file failed.
+	 */
+	@Benchmark
+	public Class<?> sessionCacheHit() throws IOException {
+		return sessionCachedScripts.getScriptClass(scriptFile, config, settingsId);
+	}
+
+	/**
+	 * Loads the script from the on-disk cache, as for the first execution of an
+	 * unchanged script in a new Maven session.
+	 * @return The cached script class.
+	 * @throws IOException Reading the script file, or the cache failed.
+	 */
+	@Benchmark
+	public Class<?> diskCacheHit() throws IOException {
+		return newDiskCachedScripts().getScriptClass(scriptFile, config, settingsId);
+	}
+
+	/**
+	 * Runs the compiled script.
+	 * @return The scripts result.
+	 */
+	@Benchmark
+	public Object run() {
+		final Binding binding = new Binding();
+		binding.setProperty("count", "10000");
+		return InvokerHelper.createScript(scriptClass, binding).run();
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jochenw.jmp.jwicrl.JwiCrlMojo;
+
+
+/**
+ * Measures the throughput, and the latency distribution of single requests,
+ * as performed by the JwiCrlMojo, against the {@link StubServer}. The sample
+ * mode reports percentiles, so that a slower tail is noticed, even if the
+ * average is unchanged.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class HttpRequestBenchmark {
+	private static final AtomicInteger OUTPUT_COUNTER = new AtomicInteger();
+
+	/**
+	 * The response, which is requested: small, large, or slow.
+	 */
+	@Param({"small", "large", "slow"})
+	public String response;
+
+	private StubServer server;
+	private Path tempDir;
+	private String url;
+
+	/**
+	 * The output file of a thread, so that concurrent requests don't share a file.
+	 */
+	@State(Scope.Thread)
+	public static class Output {
+		private Path outputFile;
+
+		@Setup
+		public void setUp(HttpRequestBenchmark pBenchmark) {
+			outputFile = pBenchmark.tempDir.resolve("response-" + OUTPUT_COUNTER.incrementAndGet() + ".bin");
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new StubServer();
+		tempDir = Files.createTempDirectory("jwicrl-bench");
+		url = server.getUrl("/" + response);
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.close();
+		Mojos.delete(tempDir);
+	}
+
+	/**
+	 * Performs a single request, as configured by a pom with a {@code url}, and
+	 * an {@code outputFile}.
+	 * @param pOutput The output file of the current thread.
+	 * @return The mojo, which has performed the request.
+	 * @throws MojoExecutionException The request failed.
+	 * @throws MojoFailureException The mojo configuration is invalid.
+	 */
+	@Benchmark
+	public JwiCrlMojo request(Output pOutput) throws MojoExecutionException, MojoFailureException {
+		final JwiCrlMojo mojo = Mojos.newMojo(JwiCrlMojo.class);
+		Mojos.set(mojo, "url", url);
+		Mojos.set(mojo, "outputFile", pOutput.outputFile);
+		Mojos.set(mojo, "encoding", "UTF-8");
+		mojo.execute();
+		return mojo;
+	}
+
+	/**
+	 * Like {@link #request(Output)}, but with four concurrent threads, as in a
+	 * parallel build.
+	 * @param pOutput The output file of the current thread.
+	 * @return The mojo, which has performed the request.
+	 * @throws MojoExecutionException The request failed.
+	 * @throws MojoFailureException The mojo configuration is invalid.
+	 */
+	@Benchmark
+	@Threads(4)
+	public JwiCrlMojo concurrentRequests(Output pOutput) throws MojoExecutionException, MojoFailureException {
+		return request(pOutput);
+	}
+}
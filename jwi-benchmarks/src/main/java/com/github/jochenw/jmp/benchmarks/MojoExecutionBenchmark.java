@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jochenw.jmp.jwicrl.JwiCrlMojo;
+import com.github.jochenw.jmp.jwicrl.RequestDefinition;
+import com.github.jochenw.jmp.jwigrv.JwiGrvMojo;
+
+
+/**
+ * Executes the mojos repeatedly, like a build with many modules, or many
+ * executions would: A new mojo for every execution, with the full parameter
+ * handling, caching, and reporting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class MojoExecutionBenchmark {
+	private static final int BATCH_SIZE = 16;
+
+	/**
+	 * Whether the mojos caches are enabled: The script class cache of the
+	 * JwiGrvMojo, and the response cache of the JwiCrlMojo.
+	 */
+	@Param({"false", "true"})
+	public boolean cache;
+
+	private StubServer server;
+	private Path tempDir, scriptFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new StubServer();
+		tempDir = Files.createTempDirectory("jwi-bench");
+		scriptFile = tempDir.resolve("bench.groovy");
+		Files.write(scriptFile, GroovyScriptBenchmark.SCRIPT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.close();
+		Mojos.delete(tempDir);
+	}
+
+	/**
+	 * Executes the JwiGrvMojo with a single script.
+	 * @return The executed mojo.
+	 * @throws MojoExecutionException Compiling the script failed.
+	 * @throws MojoFailureException Running the script failed.
+	 */
+	@Benchmark
+	public JwiGrvMojo groovyScript() throws MojoExecutionException, MojoFailureException {
+		final JwiGrvMojo mojo = Mojos.newMojo(JwiGrvMojo.class);
+		Mojos.set(mojo, "scriptFile", scriptFile.toAbsolutePath().toString());
+		Mojos.set(mojo, "scriptProperties", Collections.singletonMap("count", "1000"));
+		Mojos.set(mojo, "useCache", Boolean.valueOf(cache));
+		Mojos.set(mojo, "cacheDirectory", new File(tempDir.toFile(), "classes"));
+		Mojos.set(mojo, "sessionCacheSize", Integer.valueOf(64));
+		mojo.execute();
+		return mojo;
+	}
+
+	/**
+	 * Executes the JwiCrlMojo with a batch of requests, which are performed in parallel.
+	 * @return The executed mojo.
+	 * @throws MojoExecutionException A request failed.
+	 * @throws MojoFailureException The mojo configuration is invalid.
+	 */
+	@Benchmark
+	public JwiCrlMojo requestBatch() throws MojoExecutionException, MojoFailureException {
+		final List<RequestDefinition> requests = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0;  i < BATCH_SIZE;  i++) {
+			final RequestDefinition request = new RequestDefinition();
+			Mojos.set(request, "id", "request-" + i);
+			Mojos.set(request, "url", server.getUrl(i % 4 == 0 ? "/slow" : "/small"));
+			Mojos.set(request, "outputFile", tempDir.resolve("batch-response-" + i + ".bin"));
+			requests.add(request);
+		}
+		final JwiCrlMojo mojo = Mojos.newMojo(JwiCrlMojo.class);
+		Mojos.set(mojo, "requests", requests);
+		Mojos.set(mojo, "encoding", "UTF-8");
+		Mojos.set(mojo, "parallelism", Integer.valueOf(4));
+		Mojos.set(mojo, "useCache", Boolean.valueOf(cache));
+		Mojos.set(mojo, "cacheDirectory", tempDir.resolve("responses"));
+		mojo.execute();
+		return mojo;
+	}
+}
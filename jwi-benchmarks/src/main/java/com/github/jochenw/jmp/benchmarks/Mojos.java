@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.AbstractMojo;
+
+
+/**
+ * Helpers for configuring mojos outside of Maven. Like the plugin testing
+ * harness, the parameters are injected into the fields, so the benchmarks
+ * use the same code paths as a real build.
+ */
+public class Mojos {
+	private Mojos() {
+		// Static methods only.
+	}
+
+	/**
+	 * Creates a new mojo, with a {@link QuietLog}.
+	 * @param <M> The mojo type.
+	 * @param pType The mojo class.
+	 * @return The created mojo.
+	 */
+	public static <M extends AbstractMojo> M newMojo(Class<M> pType) {
+		try {
+			final M mojo = pType.getConstructor().newInstance();
+			mojo.setLog(new QuietLog());
+			return mojo;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to instantiate " + pType.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Sets the given field, which may be declared by a super class.
+	 * @param pObject The object, typically a mojo.
+	 * @param pField The field name, which is also the parameter name.
+	 * @param pValue The field value.
+	 */
+	public static void set(Object pObject, String pField, Object pValue) {
+		for (Class<?> cl = pObject.getClass();  cl != null;  cl = cl.getSuperclass()) {
+			try {
+				final Field field = cl.getDeclaredField(pField);
+				field.setAccessible(true);
+				field.set(pObject, pValue);
+				return;
+			} catch (NoSuchFieldException e) {
+				// Try the super class.
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to set field " + pField + ": " + e.getMessage(), e);
+			}
+		}
+		throw new IllegalArgumentException("Field not found: " + pObject.getClass().getName() + "." + pField);
+	}
+
+	/**
+	 * Deletes the given directory, and its contents.
+	 * @param pDir The directory to delete, or null.
+	 */
+	public static void delete(Path pDir) {
+		if (pDir == null  ||  !Files.exists(pDir)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(pDir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach((p) -> {
+				try {
+					Files.delete(p);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
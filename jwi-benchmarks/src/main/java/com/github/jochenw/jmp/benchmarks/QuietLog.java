@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * A logger, which discards everything but errors, so that the benchmarks don't
+ * measure console output.
+ */
+public class QuietLog implements Log {
+	@Override public boolean isDebugEnabled() { return false; }
+	@Override public void debug(CharSequence pContent) { /* Discarded */ }
+	@Override public void debug(CharSequence pContent, Throwable pError) { /* Discarded */ }
+	@Override public void debug(Throwable pError) { /* Discarded */ }
+
+	@Override public boolean isInfoEnabled() { return false; }
+	@Override public void info(CharSequence pContent) { /* Discarded */ }
+	@Override public void info(CharSequence pContent, Throwable pError) { /* Discarded */ }
+	@Override public void info(Throwable pError) { /* Discarded */ }
+
+	@Override public boolean isWarnEnabled() { return false; }
+	@Override public void warn(CharSequence pContent) { /* Discarded */ }
+	@Override public void warn(CharSequence pContent, Throwable pError) { /* Discarded */ }
+	@Override public void warn(Throwable pError) { /* Discarded */ }
+
+	@Override public boolean isErrorEnabled() { return true; }
+
+	@Override
+	public void error(CharSequence pContent) {
+		System.err.println("[ERROR] " + pContent);
+	}
+
+	@Override
+	public void error(CharSequence pContent, Throwable pError) {
+		error(pContent);
+		pError.printStackTrace(System.err);
+	}
+
+	@Override
+	public void error(Throwable pError) {
+		pError.printStackTrace(System.err);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * An embedded HTTP server, based on the JDK's built-in server, which serves
+ * responses of known size, and latency. It listens on an ephemeral port of
+ * the loopback interface, so the benchmarks measure the client, not the network.
+ * <ul>
+ *   <li>/small: A 1 KB response.</li>
+ *   <li>/large: An 8 MB response.</li>
+ *   <li>/slow: A 1 KB response, which is sent after a delay of 50 milliseconds.</li>
+ * </ul>
+ */
+public class StubServer implements AutoCloseable {
+	public static final int SMALL_SIZE = 1024;
+	public static final int LARGE_SIZE = 8*1024*1024;
+	public static final long SLOW_DELAY = 50;
+
+	static {
+		// Without TCP_NODELAY, small responses are delayed by about 40 milliseconds
+		// (Nagle's algorithm, and delayed acknowledgements), which would dominate
+		// the measurements. The server reads this property only once.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool((r) -> {
+		final Thread t = new Thread(r, "stub-server");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public StubServer() throws IOException {
+		final byte[] small = newBody(SMALL_SIZE);
+		final byte[] large = newBody(LARGE_SIZE);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+		server.setExecutor(executor);
+		server.createContext("/small", (ex) -> send(ex, small));
+		server.createContext("/large", (ex) -> send(ex, large));
+		server.createContext("/slow", (ex) -> {
+			try {
+				Thread.sleep(SLOW_DELAY);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			send(ex, small);
+		});
+		server.start();
+	}
+
+	private static byte[] newBody(int pSize) {
+		final byte[] body = new byte[pSize];
+		// Some text, which could be compressed, like a typical download.
+		final byte[] line = "0123456789abcdefghijklmnopqrstuvwxyz\n".getBytes();
+		for (int i = 0;  i < pSize;  i += line.length) {
+			System.arraycopy(line, 0, body, i, Math.min(line.length, pSize - i));
+		}
+		return body;
+	}
+
+	private static void send(HttpExchange pExchange, byte[] pBody) throws IOException {
+		try {
+			// Drain the request body, so the connection can be reused.
+			final byte[] buffer = new byte[8192];
+			while (pExchange.getRequestBody().read(buffer) != -1) {
+				// Discard the request body.
+			}
+			pExchange.sendResponseHeaders(200, pBody.length);
+			try (OutputStream out = pExchange.getResponseBody()) {
+				out.write(pBody);
+			}
+		} finally {
+			pExchange.close();
+		}
+	}
+
+	/**
+	 * Returns the URL of the given path.
+	 * @param pPath The path, for example "/small".
+	 * @return The URL.
+	 */
+	public String getUrl(String pPath) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + pPath;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * An expected checksum (SHA-256, or SHA-512) of a downloaded file.
+ */
+public class Checksum {
+	private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]+");
+	/** The GNU format, as written by sha256sum: "hex  name", or "hex *name". */
+	private static final Pattern GNU_LINE = Pattern.compile("^([0-9a-fA-F]{64}|[0-9a-fA-F]{128})(?:\\s+\\*?(.*))?$");
+	/** The BSD format, as written by "shasum --tag": "SHA256 (name) = hex". */
+	private static final Pattern BSD_LINE = Pattern.compile(
+			"^SHA-?(256|512)\\s*\\((.*)\\)\\s*=\\s*([0-9a-fA-F]+)$", Pattern.CASE_INSENSITIVE);
+
+	private final String algorithm;
+	private final String hex;
+
+	Checksum(String pAlgorithm, String pHex) {
+		algorithm = pAlgorithm;
+		hex = pHex.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the name of the digest algorithm.
+	 * @return "SHA-256", or "SHA-512".
+	 */
+	public String getAlgorithm() { return algorithm; }
+
+	/**
+	 * Returns the expected digest.
+	 * @return The hex encoded digest, in lower case.
+	 */
+	public String getHex() { return hex; }
+
+	/**
+	 * Returns, whether the given digest matches the expected digest.
+	 * @param pHex The hex encoded digest.
+	 * @return True, if the digests are equal.
+	 */
+	public boolean matches(String pHex) {
+		return pHex != null  &&  hex.equalsIgnoreCase(pHex);
+	}
+
+	@Override
+	public String toString() {
+		return algorithm + ":" + hex;
+	}
+
+	/**
+	 * Parses a checksum, like "sha256:0a1b...", "SHA-512=0a1b...", or "0a1b...".
+	 * Without a prefix, the algorithm is derived from the length.
+	 * @param pValue The value to parse.
+	 * @return The parsed checksum.
+	 * @throws IllegalArgumentException The value is invalid.
+	 */
+	public static Checksum parse(String pValue) {
+		final String value = pValue.trim();
+		final int offset = Math.max(value.indexOf(':'), value.indexOf('='));
+		final String hex = offset == -1 ? value : value.substring(offset+1).trim();
+		if (!HEX.matcher(hex).matches()) {
+			throw new IllegalArgumentException("Expected a hex encoded digest, got " + pValue);
+		}
+		final String algorithm = getAlgorithm(hex);
+		if (algorithm == null) {
+			throw new IllegalArgumentException("Expected 64 (SHA-256), or 128 (SHA-512) hex digits, got "
+					+ hex.length() + " in " + pValue);
+		}
+		if (offset != -1) {
+			final String prefix = value.substring(0, offset).trim().toUpperCase(Locale.ROOT).replace("-", "");
+			if (!prefix.equals(algorithm.replace("-", ""))) {
+				throw new IllegalArgumentException("Expected " + algorithm + " for a digest with "
+						+ hex.length() + " hex digits, got " + pValue);
+			}
+		}
+		return new Checksum(algorithm, hex);
+	}
+
+	private static String getAlgorithm(String pHex) {
+		switch (pHex.length()) {
+		case 64: return "SHA-256";
+		case 128: return "SHA-512";
+		default: return null;
+		}
+	}
+
+	/**
+	 * Finds the checksum of a file in the contents of a checksum file, as written
+	 * by sha256sum, sha512sum, or "shasum --tag".
+	 * @param pContents The checksum files contents.
+	 * @param pFileName The name of the file, which is looked for.
+	 * @return The checksum of the named file. If no line names the file, but the
+	 *   checksum file contains exactly one checksum, then that checksum is returned.
+	 * @throws IOException No matching checksum has been found.
+	 */
+	public static Checksum parseChecksumFile(String pContents, String pFileName) throws IOException {
+		Checksum single = null;
+		int count = 0;
+		try (BufferedReader br = new BufferedReader(new StringReader(pContents))) {
+			for (String line = br.readLine();  line != null;  line = br.readLine()) {
+				final String l = line.trim();
+				final String hex, name;
+				final Matcher gnu = GNU_LINE.matcher(l);
+				if (gnu.matches()) {
+					hex = gnu.group(1);
+					name = gnu.group(2);
+				} else {
+					final Matcher bsd = BSD_LINE.matcher(l);
+					if (!bsd.matches()  ||  bsd.group(3).length() != Integer.parseInt(bsd.group(1))/4) {
+						continue;
+					}
+					hex = bsd.group(3);
+					name = bsd.group(2);
+				}
+				final Checksum checksum = new Checksum(getAlgorithm(hex), hex);
+				if (name != null  &&  pFileName != null  &&  pFileName.equals(getFileName(name.trim()))) {
+					return checksum;
+				}
+				single = checksum;
+				++count;
+			}
+		}
+		if (count == 1) {
+			return single;
+		}
+		throw new IOException("No checksum found for " + pFileName + " (checksums found: " + count + ")");
+	}
+
+	private static String getFileName(String pPath) {
+		final int offset = Math.max(pPath.lastIndexOf('/'), pPath.lastIndexOf('\\'));
+		return pPath.substring(offset+1);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Decodes response bodies with a "Content-Encoding", while they are being
+ * copied, so that the compressed body is never stored.
+ */
+public class ContentDecoding {
+	/**
+	 * The value of the "Accept-Encoding" header, which lists the supported encodings.
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	/**
+	 * An input stream, which counts the number of bytes, that have been read.
+	 */
+	public static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		public CountingInputStream(InputStream pIn) {
+			super(pIn);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				++count;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+			final int res = super.read(pBuffer, pOffset, pLength);
+			if (res > 0) {
+				count += res;
+			}
+			return res;
+		}
+
+		@Override
+		public long skip(long pNum) throws IOException {
+			final long res = super.skip(pNum);
+			count += res;
+			return res;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a stream, which decodes the given stream.
+	 * @param pIn The response body, as received.
+	 * @param pContentEncoding The value of the "Content-Encoding" header, or null.
+	 * @return The decoded response body.
+	 * @throws IOException The content encoding is unsupported, or the body is invalid.
+	 */
+	public static InputStream decode(InputStream pIn, String pContentEncoding) throws IOException {
+		final String enc = normalize(pContentEncoding);
+		if (enc == null) {
+			return pIn;
+		} else if ("gzip".equals(enc)  ||  "x-gzip".equals(enc)) {
+			return new GZIPInputStream(pIn, BUFFER_SIZE);
+		} else if ("deflate".equals(enc)) {
+			// "deflate" should be zlib wrapped, but some servers send raw deflate data.
+			final BufferedInputStream in = new BufferedInputStream(pIn, BUFFER_SIZE);
+			in.mark(2);
+			final int b0 = in.read();
+			final int b1 = in.read();
+			in.reset();
+			final boolean zlib = b0 != -1  &&  b1 != -1  &&  (b0 & 0x0f) == 8  &&  ((b0 << 8) | b1) % 31 == 0;
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						// A custom inflater isn't released by the stream.
+						inflater.end();
+					}
+				}
+			};
+		} else {
+			throw new IOException("Unsupported Content-Encoding: " + pContentEncoding);
+		}
+	}
+
+	private static String normalize(String pContentEncoding) {
+		if (pContentEncoding == null) {
+			return null;
+		}
+		final String enc = pContentEncoding.trim().toLowerCase(Locale.ROOT);
+		return enc.length() == 0  ||  "identity".equals(enc) ? null : enc;
+	}
+}
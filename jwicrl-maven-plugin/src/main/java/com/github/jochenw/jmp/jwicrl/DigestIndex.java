@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.github.jochenw.afw.core.util.FileUtils;
+
+
+/**
+ * An index of file digests, keyed by the files path, size, and modification
+ * time. As long as a file is unchanged, its digest is taken from the index,
+ * rather than reading the file again.
+ */
+public class DigestIndex {
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final Path indexFile;
+	private final Log log;
+	private Properties entries;
+	private boolean modified;
+
+	/**
+	 * Creates a new instance.
+	 * @param pIndexFile The file, where the index is stored, or null, if
+	 *   the digests should not be stored.
+	 * @param pLog The log.
+	 */
+	public DigestIndex(Path pIndexFile, Log pLog) {
+		indexFile = pIndexFile;
+		log = pLog;
+	}
+
+	/**
+	 * Creates a digest.
+	 * @param pAlgorithm The digest algorithm, for example "SHA-256".
+	 * @return The created digest.
+	 * @throws IllegalStateException The algorithm isn't available.
+	 */
+	public static MessageDigest newDigest(String pAlgorithm) {
+		try {
+			return MessageDigest.getInstance(pAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the digest of the given file. The digest is taken from the index,
+	 * if the file is unchanged. Otherwise, it is computed, and stored in the index.
+	 * @param pFile The file.
+	 * @param pAlgorithm The digest algorithm, for example "SHA-256".
+	 * @return The hex encoded digest.
+	 * @throws IOException Reading the file failed.
+	 */
+	public String getDigest(Path pFile, String pAlgorithm) throws IOException {
+		final String key = getKey(pFile, pAlgorithm);
+		final String stamp = getStamp(pFile);
+		synchronized (this) {
+			final String value = getEntries().getProperty(key);
+			if (value != null  &&  value.startsWith(stamp + ",")) {
+				log.debug("Digest index: Found " + pAlgorithm + " digest of " + pFile);
+				return value.substring(stamp.length()+1);
+			}
+		}
+		log.debug("Digest index: Computing " + pAlgorithm + " digest of " + pFile);
+		final MessageDigest md = newDigest(pAlgorithm);
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(pFile, StandardOpenOption.READ)) {
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
+		}
+		final String hex = ResponseCache.toHex(md.digest());
+		put(pFile, pAlgorithm, hex);
+		return hex;
+	}
+
+	/**
+	 * Stores the digest of the given file, which has just been computed elsewhere,
+	 * for example while the file was written.
+	 * @param pFile The file.
+	 * @param pAlgorithm The digest algorithm, for example "SHA-256".
+	 * @param pHex The hex encoded digest.
+	 * @throws IOException Reading the files attributes failed.
+	 */
+	public void put(Path pFile, String pAlgorithm, String pHex) throws IOException {
+		final String key = getKey(pFile, pAlgorithm);
+		final String value = getStamp(pFile) + "," + pHex;
+		synchronized (this) {
+			if (!value.equals(getEntries().setProperty(key, value))) {
+				modified = true;
+			}
+		}
+	}
+
+	/**
+	 * Removes the digests of the given file, for example, because it is invalid.
+	 * @param pFile The file.
+	 */
+	public synchronized void remove(Path pFile) {
+		final String prefix = pFile.toAbsolutePath().normalize().toString() + "|";
+		if (getEntries().keySet().removeIf((k) -> k.toString().startsWith(prefix))) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * Writes the index, if it has been modified.
+	 * @throws IOException Writing the index failed.
+	 */
+	public synchronized void save() throws IOException {
+		if (indexFile == null  ||  !modified) {
+			return;
+		}
+		FileUtils.createDirectoryFor(indexFile);
+		final Path tempFile = Files.createTempFile(indexFile.toAbsolutePath().getParent(),
+				indexFile.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				entries.store(out, null);
+			}
+			try {
+				Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			modified = false;
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private Properties getEntries() {
+		if (entries == null) {
+			entries = new Properties();
+			if (indexFile != null  &&  Files.isRegularFile(indexFile)) {
+				try (InputStream in = Files.newInputStream(indexFile)) {
+					entries.load(in);
+				} catch (IOException|IllegalArgumentException e) {
+					log.warn("Unable to read digest index " + indexFile + ": " + e.getMessage());
+					entries.clear();
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static String getKey(Path pFile, String pAlgorithm) {
+		return pFile.toAbsolutePath().normalize().toString() + "|" + pAlgorithm;
+	}
+
+	private static String getStamp(Path pFile) throws IOException {
+		final BasicFileAttributes attrs = Files.readAttributes(pFile, BasicFileAttributes.class);
+		return attrs.size() + "," + attrs.lastModifiedTime().toMillis();
+	}
+}
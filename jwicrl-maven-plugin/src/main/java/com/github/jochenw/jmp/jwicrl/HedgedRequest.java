@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.github.jochenw.afw.core.util.HttpConnector.HttpConnection;
+
+
+/**
+ * Sends a request, and, if no response has arrived within a delay, a second
+ * (hedged) request to the same, or a mirror URL. The first response wins, the
+ * other request is abandoned. The delay is derived from a percentile of the
+ * response times, that have been observed for the host.
+ */
+public class HedgedRequest {
+	/**
+	 * Opens a connection to the given URL, and prepares the request (headers,
+	 * method, and body). The response status must not be read yet.
+	 */
+	public interface Opener {
+		HttpConnection open(URL pUrl) throws IOException;
+
+		/**
+		 * Releases a connection, which has been returned by {@link #open(URL)},
+		 * but has failed, or is abandoned. May be called more than once.
+		 * @param pConnection The connection to release.
+		 */
+		default void close(HttpConnection pConnection) {
+			HedgedRequest.close(pConnection);
+		}
+	}
+
+	private static final int MAX_SAMPLES = 100;
+	private static final int MIN_SAMPLES = 10;
+	private static final ConcurrentMap<String,LatencyStats> LATENCIES = new ConcurrentHashMap<>();
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool((r) -> {
+		final Thread t = new Thread(r, "jwicrl-hedge-" + THREAD_COUNTER.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * The most recent response times of a host.
+	 */
+	static class LatencyStats {
+		private final long[] samples = new long[MAX_SAMPLES];
+		private int count, next;
+
+		synchronized void record(long pMillis) {
+			samples[next] = pMillis;
+			next = (next + 1) % samples.length;
+			count = Math.min(samples.length, count + 1);
+		}
+
+		synchronized long getPercentile(int pPercentile) {
+			if (count < MIN_SAMPLES) {
+				return -1;
+			}
+			final long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			final int index = (int) Math.ceil(pPercentile / 100.0 * count) - 1;
+			return sorted[Math.max(0, Math.min(count-1, index))];
+		}
+	}
+
+	private static class Attempt {
+		private final CompletableFuture<HttpConnection> future = new CompletableFuture<>();
+		private final AtomicReference<HttpConnection> connection = new AtomicReference<>();
+		private final AtomicBoolean abandoned = new AtomicBoolean();
+		private final Opener opener;
+
+		Attempt(Opener pOpener) {
+			opener = pOpener;
+		}
+
+		void start(URL pUrl) {
+			EXECUTOR.execute(() -> {
+				try {
+					final HttpConnection conn = opener.open(pUrl);
+					connection.set(conn);
+					if (abandoned.get()) {
+						opener.close(conn);
+						throw new IOException("Abandoned request to " + pUrl);
+					}
+					try {
+						conn.getUrlConnection().getResponseCode();
+					} catch (Throwable t) {
+						opener.close(conn);
+						throw t;
+					}
+					future.complete(conn);
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+		}
+
+		void close(HttpConnection pConnection) {
+			opener.close(pConnection);
+		}
+
+		void abandon() {
+			abandoned.set(true);
+			final HttpConnection conn = connection.get();
+			if (conn != null) {
+				opener.close(conn);
+			}
+		}
+	}
+
+	private static String getHostKey(URL pUrl) {
+		return pUrl.getProtocol() + "://" + pUrl.getHost() + ":" + pUrl.getPort();
+	}
+
+	/**
+	 * Records the time, until the response to a request to the given URL arrived.
+	 * @param pUrl The request URL.
+	 * @param pMillis The response time in milliseconds.
+	 */
+	public static void recordLatency(URL pUrl, long pMillis) {
+		LATENCIES.computeIfAbsent(getHostKey(pUrl), (k) -> new LatencyStats()).record(pMillis);
+	}
+
+	/**
+	 * Returns the delay, after which a hedged request is sent.
+	 * @param pUrl The request URL.
+	 * @param pPercentile The percentile of the observed response times, for example 95.
+	 * @param pDefaultDelay The delay in milliseconds, which is used, as long as too
+	 *   few response times have been observed.
+	 * @return The delay in milliseconds.
+	 */
+	public static long getDelay(URL pUrl, int pPercentile, long pDefaultDelay) {
+		final LatencyStats stats = LATENCIES.get(getHostKey(pUrl));
+		final long percentile = stats == null ? -1 : stats.getPercentile(pPercentile);
+		return percentile == -1 ? pDefaultDelay : percentile;
+	}
+
+	/**
+	 * Sends the request, and a hedged request, if necessary.
+	 * @param pUrl The URL of the first request.
+	 * @param pHedgeUrl The URL of the hedged request.
+	 * @param pOpener Opens, and prepares, the connections.
+	 * @param pDelay The delay in milliseconds, after which the hedged request is sent.
+	 * @param pLog The log.
+	 * @return The connection, which has received the response first. The response
+	 *   status is available.
+	 * @throws IOException Both requests failed, or the first request failed within the delay.
+	 */
+	public static HttpConnection send(URL pUrl, URL pHedgeUrl, Opener pOpener, long pDelay, Log pLog)
+			throws IOException {
+		final Attempt first = new Attempt(pOpener);
+		first.start(pUrl);
+		try {
+			return first.future.get(pDelay, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// No response yet, send the hedged request below.
+		} catch (ExecutionException e) {
+			throw asIOException(e.getCause());
+		} catch (InterruptedException e) {
+			first.abandon();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + pUrl);
+		}
+		pLog.debug("No response from " + pUrl + " after " + pDelay + "ms, sending hedged request to " + pHedgeUrl);
+		final Attempt second = new Attempt(pOpener);
+		second.start(pHedgeUrl);
+		final CompletableFuture<Attempt> winner = new CompletableFuture<>();
+		final AtomicInteger failures = new AtomicInteger();
+		for (Attempt attempt : new Attempt[] { first, second }) {
+			attempt.future.whenComplete((conn, error) -> {
+				if (error == null) {
+					if (!winner.complete(attempt)) {
+						attempt.close(conn);
+					}
+				} else if (failures.incrementAndGet() == 2) {
+					winner.completeExceptionally(error);
+				}
+			});
+		}
+		try {
+			final Attempt attempt = winner.get();
+			final Attempt loser = attempt == first ? second : first;
+			loser.abandon();
+			pLog.debug("Using the response to the " + (attempt == first ? "first" : "hedged") + " request");
+			return attempt.future.get();
+		} catch (ExecutionException e) {
+			throw asIOException(e.getCause());
+		} catch (InterruptedException e) {
+			first.abandon();
+			second.abandon();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + pUrl);
+		}
+	}
+
+	private static IOException asIOException(Throwable pError) {
+		if (pError instanceof IOException) {
+			return (IOException) pError;
+		} else if (pError instanceof RuntimeException) {
+			throw (RuntimeException) pError;
+		} else if (pError instanceof Error) {
+			throw (Error) pError;
+		} else {
+			return new IOException(pError.getMessage(), pError);
+		}
+	}
+
+	private static void close(HttpConnection pConnection) {
+		try {
+			pConnection.getUrlConnection().disconnect();
+			pConnection.close();
+		} catch (Throwable t) {
+			// Ignore, the connection is abandoned anyways.
+		}
+	}
+}
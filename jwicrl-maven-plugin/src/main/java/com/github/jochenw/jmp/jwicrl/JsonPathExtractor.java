@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Extracts values from a JSON document, using a subset of JSONPath: The root
+ * "$", followed by member names (".name", or "['name']"), and array indexes
+ * ("[0]"). The document is tokenized on the fly. Subtrees, which can't contain
+ * a match, are skipped without being decoded.
+ */
+public class JsonPathExtractor extends ResponseExtractor {
+	private final Map<String,List<Object>> paths = new LinkedHashMap<>();
+	private Map<String,String> results;
+	private Reader reader;
+	private final char[] buffer = new char[8192];
+	private int offset, length;
+	private long position;
+
+	/**
+	 * Creates a new instance.
+	 * @param pExpressions The JSONPath expressions, keyed by property name.
+	 * @throws IllegalArgumentException An expression is invalid.
+	 */
+	public JsonPathExtractor(Map<String,String> pExpressions) {
+		super(pExpressions);
+		pExpressions.forEach((k,v) -> paths.put(k, parse(v)));
+	}
+
+	/**
+	 * Parses a JSONPath expression.
+	 * @param pExpression The expression.
+	 * @return The path segments: Strings for member names, and Integers for array indexes.
+	 * @throws IllegalArgumentException The expression is invalid.
+	 */
+	static List<Object> parse(String pExpression) {
+		if (!pExpression.startsWith("$")) {
+			throw new IllegalArgumentException("A JSONPath expression must start with '$': " + pExpression);
+		}
+		final List<Object> segments = new ArrayList<>();
+		int i = 1;
+		while (i < pExpression.length()) {
+			final char c = pExpression.charAt(i);
+			if (c == '.') {
+				int end = i+1;
+				while (end < pExpression.length()  &&  pExpression.charAt(end) != '.'  &&  pExpression.charAt(end) != '[') {
+					++end;
+				}
+				if (end == i+1) {
+					throw new IllegalArgumentException("Empty member name at offset " + i + " in JSONPath expression: "
+							+ pExpression);
+				}
+				segments.add(pExpression.substring(i+1, end));
+				i = end;
+			} else if (c == '[') {
+				final int end = pExpression.indexOf(']', i);
+				if (end == -1) {
+					throw new IllegalArgumentException("Missing ']' in JSONPath expression: " + pExpression);
+				}
+				final String s = pExpression.substring(i+1, end).trim();
+				if (s.length() >= 2  &&  (s.charAt(0) == '\''  ||  s.charAt(0) == '"')  &&  s.charAt(s.length()-1) == s.charAt(0)) {
+					segments.add(s.substring(1, s.length()-1));
+				} else {
+					try {
+						segments.add(Integer.valueOf(s));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Expected array index, or quoted member name, got [" + s
+								+ "] in JSONPath expression: " + pExpression);
+					}
+				}
+				i = end+1;
+			} else {
+				throw new IllegalArgumentException("Unexpected character '" + c + "' at offset " + i
+						+ " in JSONPath expression: " + pExpression);
+			}
+		}
+		return segments;
+	}
+
+	@Override
+	public Map<String,String> extract(InputStream pIn) throws IOException {
+		results = new HashMap<>();
+		reader = new InputStreamReader(pIn, StandardCharsets.UTF_8);
+		offset = length = 0;
+		position = 0;
+		if (peek() == 0xfeff) {
+			// Byte order mark
+			next();
+		}
+		value(new ArrayList<>());
+		return results;
+	}
+
+	/**
+	 * Parses a value at the given path.
+	 * @return True, if all expressions have matched, and parsing should stop.
+	 */
+	private boolean value(List<Object> pPath) throws IOException {
+		final int c = skipWhitespace();
+		final List<String> matches = new ArrayList<>();
+		boolean prefix = false;
+		for (Map.Entry<String,List<Object>> en : paths.entrySet()) {
+			if (results.containsKey(en.getKey())) {
+				continue;
+			}
+			final List<Object> path = en.getValue();
+			if (path.equals(pPath)) {
+				matches.add(en.getKey());
+			} else if (path.size() > pPath.size()  &&  path.subList(0, pPath.size()).equals(pPath)) {
+				prefix = true;
+			}
+		}
+		if (c == '{'  ||  c == '[') {
+			if (!matches.isEmpty()) {
+				throw error("The expression " + getExpressions().get(matches.get(0))
+						+ " selects an object, or array, rather than a value");
+			}
+			if (!prefix) {
+				skipContainer();
+				return false;
+			}
+			return c == '{' ? object(pPath) : array(pPath);
+		}
+		final String v;
+		if (c == '"') {
+			next();
+			v = string(!matches.isEmpty());
+		} else if (c == -1) {
+			throw error("Unexpected end of document");
+		} else {
+			v = literal();
+		}
+		for (String property : matches) {
+			results.put(property, v);
+		}
+		return !matches.isEmpty()  &&  results.size() == paths.size();
+	}
+
+	private boolean object(List<Object> pPath) throws IOException {
+		next();
+		if (skipWhitespace() == '}') {
+			next();
+			return false;
+		}
+		for (;;) {
+			if (skipWhitespace() != '"') {
+				throw error("Expected member name");
+			}
+			next();
+			final String name = string(true);
+			if (skipWhitespace() != ':') {
+				throw error("Expected ':'");
+			}
+			next();
+			pPath.add(name);
+			final boolean done = value(pPath);
+			pPath.remove(pPath.size()-1);
+			if (done) {
+				return true;
+			}
+			final int c = skipWhitespace();
+			next();
+			if (c == '}') {
+				return false;
+			} else if (c != ',') {
+				throw error("Expected ',', or '}'");
+			}
+		}
+	}
+
+	private boolean array(List<Object> pPath) throws IOException {
+		next();
+		if (skipWhitespace() == ']') {
+			next();
+			return false;
+		}
+		for (int index = 0;  ;  index++) {
+			pPath.add(Integer.valueOf(index));
+			final boolean done = value(pPath);
+			pPath.remove(pPath.size()-1);
+			if (done) {
+				return true;
+			}
+			final int c = skipWhitespace();
+			next();
+			if (c == ']') {
+				return false;
+			} else if (c != ',') {
+				throw error("Expected ',', or ']'");
+			}
+		}
+	}
+
+	/**
+	 * Skips an object, or array, without decoding it.
+	 */
+	private void skipContainer() throws IOException {
+		int depth = 0;
+		for (;;) {
+			final int c = next();
+			switch (c) {
+			case -1:
+				throw error("Unexpected end of document");
+			case '{': case '[':
+				++depth;
+				break;
+			case '}': case ']':
+				if (--depth == 0) {
+					return;
+				}
+				break;
+			case '"':
+				string(false);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads a string, after the opening quote.
+	 * @param pDecode True, if the string should be returned, false, if it should be skipped.
+	 */
+	private String string(boolean pDecode) throws IOException {
+		final StringBuilder sb = pDecode ? new StringBuilder() : null;
+		for (;;) {
+			final int c = next();
+			if (c == -1) {
+				throw error("Unexpected end of document in string");
+			} else if (c == '"') {
+				return sb == null ? null : sb.toString();
+			} else if (c == '\\') {
+				final int e = next();
+				final char ch;
+				switch (e) {
+				case '"': case '\\': case '/': ch = (char) e; break;
+				case 'b': ch = '\b'; break;
+				case 'f': ch = '\f'; break;
+				case 'n': ch = '\n'; break;
+				case 'r': ch = '\r'; break;
+				case 't': ch = '\t'; break;
+				case 'u':
+					int u = 0;
+					for (int i = 0;  i < 4;  i++) {
+						final int d = Character.digit(next(), 16);
+						if (d == -1) {
+							throw error("Invalid unicode escape");
+						}
+						u = u*16 + d;
+					}
+					ch = (char) u;
+					break;
+				default:
+					throw error("Invalid escape sequence");
+				}
+				if (sb != null) {
+					sb.append(ch);
+				}
+			} else if (sb != null) {
+				sb.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Reads a number, true, false, or null.
+	 * @return The literal, or an empty string for null.
+	 */
+	private String literal() throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (;;) {
+			final int c = peek();
+			if ((c >= '0'  &&  c <= '9')  ||  (c >= 'a'  &&  c <= 'z')  ||  c == '-'  ||  c == '+'  ||  c == '.'
+					||  c == 'E') {
+				sb.append((char) next());
+			} else {
+				break;
+			}
+		}
+		final String s = sb.toString();
+		if (s.isEmpty()) {
+			throw error("Unexpected character");
+		}
+		return "null".equals(s) ? "" : s;
+	}
+
+	private int skipWhitespace() throws IOException {
+		for (;;) {
+			final int c = peek();
+			if (c == ' '  ||  c == '\t'  ||  c == '\n'  ||  c == '\r') {
+				next();
+			} else {
+				return c;
+			}
+		}
+	}
+
+	private int peek() throws IOException {
+		if (offset == length) {
+			length = reader.read(buffer);
+			offset = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[offset];
+	}
+
+	private int next() throws IOException {
+		final int c = peek();
+		if (c != -1) {
+			++offset;
+			++position;
+		}
+		return c;
+	}
+
+	private IOException error(String pMessage) {
+		return new IOException("Invalid JSON document at character " + position + ": " + pMessage);
+	}
+}
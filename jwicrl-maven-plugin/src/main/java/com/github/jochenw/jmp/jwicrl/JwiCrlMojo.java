@@ -1,19 +1,47 @@
 package com.github.jochenw.jmp.jwicrl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -21,17 +49,35 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 import com.github.jochenw.afw.core.util.FileUtils;
-import com.github.jochenw.afw.core.util.HttpConnector;
 import com.github.jochenw.afw.core.util.HttpConnector.HttpConnection;
 import com.github.jochenw.afw.core.util.Streams;
 import com.github.jochenw.afw.core.util.Strings;
 
 
-@Mojo(name="request")
+@Mojo(name="request", threadSafe=true)
 public class JwiCrlMojo extends AbstractMojo {
-	@Parameter(property="jwicrl.url", required=true)
+	private static final int BODY_CHUNK_SIZE = 64*1024;
+
+	@Parameter(property="jwicrl.url")
 	private String url;
 
+	/**
+	 * A list of requests, which are executed concurrently, instead of the single
+	 * request, which is described by {@code url}. Every entry has its own url,
+	 * method, headers, query parameters, and output file. The other parameters
+	 * (encoding, authentication, trust, proxy, and cache settings) apply to all
+	 * entries.
+	 */
+	@Parameter
+	private List<RequestDefinition> requests;
+
+	/**
+	 * The maximum number of concurrently executed requests, if {@code requests}
+	 * are given.
+	 */
+	@Parameter(property="jwicrl.parallelism", defaultValue="4")
+	private int parallelism;
+
 	@Parameter(property="jwicrl.method", defaultValue="GET", required=true) 
 	private String method;
 
@@ -41,6 +87,27 @@ public class JwiCrlMojo extends AbstractMojo {
 	@Parameter(property="jwicrl.outputFile")
 	private Path outputFile;
 
+	/**
+	 * A file, which is sent as the request body, for example with POST, or PUT.
+	 * The file is streamed, rather than loaded into memory.
+	 */
+	@Parameter(property="jwicrl.bodyFile")
+	private Path bodyFile;
+
+	/**
+	 * A text, which is sent as the request body, using the {@code encoding}.
+	 * Mutually exclusive with {@code bodyFile}.
+	 */
+	@Parameter(property="jwicrl.bodyText")
+	private String bodyText;
+
+	/**
+	 * Whether to compress the request body on the fly, and send it with
+	 * "Content-Encoding: gzip". The server must support this.
+	 */
+	@Parameter(property="jwicrl.bodyGzip", defaultValue="false")
+	private boolean bodyGzip;
+
 	@Parameter(property="jwicrl.skip", defaultValue="false", required=true)  
 	private boolean skip;
 
@@ -68,6 +135,199 @@ public class JwiCrlMojo extends AbstractMojo {
 	@Parameter(property="jwicrl.proxy")
 	private String proxy;
 
+	/**
+	 * Whether to cache responses locally. Cached responses are revalidated with
+	 * conditional requests (If-None-Match, and If-Modified-Since). Only GET requests
+	 * with an {@code outputFile} are cached. The cache is disabled by default; to
+	 * enable it, set {@code <useCache>true</useCache>} in the plugin configuration,
+	 * or run Maven with {@code -Djwicrl.cache=true}.
+	 */
+	@Parameter(property="jwicrl.cache", defaultValue="false")
+	private boolean useCache;
+
+	/**
+	 * The directory, where cached responses are stored. The default location
+	 * allows to share the cache between projects.
+	 */
+	@Parameter(property="jwicrl.cacheDir", defaultValue="${user.home}/.jwicrl/cache")
+	private Path cacheDirectory;
+
+	/**
+	 * The maximum size of the response cache, for example "512M", or "2G". If the
+	 * cache grows larger, the least recently used responses are removed.
+	 */
+	@Parameter(property="jwicrl.cacheMaxSize", defaultValue="512M")
+	private String cacheMaxSize;
+
+	/**
+	 * Whether to create the {@code outputFile} as a hard link to the cached
+	 * response, rather than a copy. Use this only, if the output file isn't
+	 * modified later on.
+	 */
+	@Parameter(property="jwicrl.cacheHardLinks", defaultValue="false")
+	private boolean cacheHardLinks;
+
+	/**
+	 * The connect timeout in milliseconds. Zero means no timeout.
+	 */
+	@Parameter(property="jwicrl.connectTimeout", defaultValue="30000")
+	private int connectTimeout;
+
+	/**
+	 * The read timeout in milliseconds: The maximum time to wait for the response,
+	 * and for more data while reading it. Zero means no timeout.
+	 */
+	@Parameter(property="jwicrl.readTimeout", defaultValue="300000")
+	private int readTimeout;
+
+	/**
+	 * The number of retries of a failed request. Only requests with an idempotent
+	 * method (GET, HEAD, PUT, DELETE, OPTIONS, TRACE) are retried. A request is
+	 * retried after network errors, timeouts, and the status codes 408, 429, 500,
+	 * 502, 503, and 504.
+	 */
+	@Parameter(property="jwicrl.retries", defaultValue="0")
+	private int retries;
+
+	/**
+	 * The delay before the first retry in milliseconds. The delay doubles with
+	 * every retry, and is randomized.
+	 */
+	@Parameter(property="jwicrl.retryDelay", defaultValue="500")
+	private long retryDelay;
+
+	/**
+	 * The maximum delay between retries in milliseconds.
+	 */
+	@Parameter(property="jwicrl.retryMaxDelay", defaultValue="30000")
+	private long retryMaxDelay;
+
+	/**
+	 * URLs of mirrors, which serve the same resource as the {@code url}. Retries,
+	 * and hedged requests, use the next mirror.
+	 */
+	@Parameter
+	private List<String> mirrors;
+
+	/**
+	 * Whether to send a second (hedged) request, if the response to a GET, or HEAD,
+	 * request doesn't arrive within the {@code hedgePercentile} of the response times,
+	 * that have been observed for the host. The first response wins.
+	 */
+	@Parameter(property="jwicrl.hedge", defaultValue="false")
+	private boolean hedge;
+
+	/**
+	 * The percentile of the observed response times, after which a hedged request is sent.
+	 */
+	@Parameter(property="jwicrl.hedgePercentile", defaultValue="95")
+	private int hedgePercentile;
+
+	/**
+	 * The delay in milliseconds, after which a hedged request is sent, as long as
+	 * too few response times have been observed.
+	 */
+	@Parameter(property="jwicrl.hedgeDelay", defaultValue="1000")
+	private long hedgeDelay;
+
+	/**
+	 * The expected checksum of the response body, for example "sha256:0a1b...",
+	 * or "sha512:0a1b...". Without a prefix, the algorithm is derived from the
+	 * length. If the {@code outputFile} is already present with this checksum,
+	 * the request is skipped. Otherwise, the checksum is computed while the
+	 * response is written, and a mismatch fails the build.
+	 */
+	@Parameter(property="jwicrl.checksum")
+	private String checksum;
+
+	/**
+	 * The URL of a checksum file, as created by sha256sum, or sha512sum, which
+	 * contains the expected checksum. Alternative to {@code checksum}.
+	 */
+	@Parameter(property="jwicrl.checksumUrl")
+	private String checksumUrl;
+
+	/**
+	 * The file, where the checksums of output files are stored, together with their
+	 * size, and modification time. As long as an output file is unchanged, it needn't
+	 * be read again, to compare its checksum.
+	 */
+	@Parameter(property="jwicrl.digestIndexFile", defaultValue="${project.build.directory}/jwicrl/digest-index.properties")
+	private Path digestIndexFile;
+
+	/**
+	 * The file, where the outcome, and the latency breakdown (DNS lookup, connect,
+	 * TLS handshake, time to first byte, and transfer), of every request is
+	 * appended, as one JSON object per line. Every execution adds its requests,
+	 * so that the file covers the whole build. By default, no report is written;
+	 * set this parameter (for example, to
+	 * {@code ${project.build.directory}/jwicrl/request-metrics.jsonl}), or the
+	 * property {@code jwicrl.metricsReportFile}, to enable it.
+	 */
+	@Parameter(property="jwicrl.metricsReportFile")
+	private Path metricsReportFile;
+
+	/**
+	 * Expressions, which extract values from the response into project properties.
+	 * The keys are the property names, the values are either JSONPath expressions,
+	 * like "$.build.id", or "$.items[0]['version']", or XPath expressions, like
+	 * "/metadata/versioning/release", or "/feed/entry[1]/@id". The response is parsed
+	 * while it is being read. Without an {@code outputFile}, reading stops, as soon
+	 * as all expressions have matched. An expression without a match fails the request.
+	 * <pre>
+	 *   &lt;extract&gt;
+	 *     &lt;app.version&gt;$.version&lt;/app.version&gt;
+	 *   &lt;/extract&gt;
+	 * </pre>
+	 */
+	@Parameter
+	private Map<String,String> extract;
+
+	/**
+	 * Whether to ask the server for a compressed response ("Accept-Encoding: gzip, deflate").
+	 * A compressed response is decompressed, while it is being written, so the
+	 * {@code outputFile} always receives the uncompressed body.
+	 */
+	@Parameter(property="jwicrl.compressed", defaultValue="false")
+	private boolean compressed;
+
+	/**
+	 * Whether to download the response in byte ranges, which are fetched in parallel,
+	 * if the server supports range requests. An interrupted download is resumed by the
+	 * next execution. Applies to GET requests with an {@code outputFile} only, which
+	 * aren't cached in the response cache.
+	 */
+	@Parameter(property="jwicrl.rangeDownload", defaultValue="false")
+	private boolean rangeDownload;
+
+	/**
+	 * The size of the byte ranges, for example "8M", if {@code rangeDownload} is true.
+	 */
+	@Parameter(property="jwicrl.rangeChunkSize", defaultValue="8M")
+	private String rangeChunkSize;
+
+	/**
+	 * The maximum number of byte ranges, which are fetched concurrently, if
+	 * {@code rangeDownload} is true.
+	 */
+	@Parameter(property="jwicrl.rangeThreads", defaultValue="4")
+	private int rangeThreads;
+
+	/**
+	 * The archive mode: "off", "record" (send every request, and record the response
+	 * in the archive), "replay" (answer every request from the archive, without network
+	 * access, failing for requests, which haven't been recorded), or "auto" (replay
+	 * recorded requests, send, and record the others).
+	 */
+	@Parameter(property="jwicrl.archive", defaultValue="off")
+	private String archiveMode;
+
+	/**
+	 * The directory of the request archive, if {@code archiveMode} isn't "off".
+	 */
+	@Parameter(property="jwicrl.archiveDir", defaultValue="${user.home}/.jwicrl/archive")
+	private Path archiveDirectory;
+
     /**
      * The character encoding to use when reading and writing filtered resources.
      */
@@ -77,21 +337,241 @@ public class JwiCrlMojo extends AbstractMojo {
 	@Parameter(defaultValue="${project}", readonly=true, required=true)
 	private MavenProject project;
 
-	protected HttpConnector getHttpConnector() throws MojoFailureException {
-		final HttpConnector connector = new HttpConnector();
-		if (trustAll) {
-			connector.setTrustingAllCertificates(true);
+	@Parameter(defaultValue="${session}", readonly=true, required=true)
+	private MavenSession session;
+
+	@Parameter(defaultValue="${mojoExecution}", readonly=true)
+	private MojoExecution mojoExecution;
+
+	private DigestIndex digestIndex;
+	private final MetricsReport metricsReport = new MetricsReport();
+
+	/**
+	 * Returns the HTTP client for the configured trust, and proxy settings. The
+	 * client is shared with other executions in the same Maven session, so that
+	 * open connections, and TLS sessions, can be reused.
+	 * @return The HTTP client.
+	 * @throws MojoFailureException The trust store is invalid.
+	 */
+	protected SessionConnectionPool.Client getHttpClient() throws MojoFailureException {
+		if (trustStore != null  &&  !Files.isRegularFile(trustStore)) {
+			throw new MojoFailureException("Invalid parameter 'trustStore': Expected existing file, got " + trustStore);
+		}
+		final SessionConnectionPool.Client client = SessionConnectionPool.of(session)
+				.getClient(trustAll, trustStore, trustStorePwd, proxy);
+		getLog().debug("Http client: " + client.getKey());
+		return client;
+	}
+
+	protected List<RequestDefinition> getRequestDefinitions() throws MojoFailureException {
+		if (requests == null  ||  requests.isEmpty()) {
+			if (url == null  ||  url.trim().length() == 0) {
+				throw new MojoFailureException("Either of the parameters 'url', or 'requests' is required.");
+			}
+			final RequestDefinition request = new RequestDefinition(url, method, null, queryParameters, outputFile);
+			validateBody(request);
+			validateChecksum(request);
+			validateExtract(request);
+			return Collections.singletonList(request);
+		}
+		if (url != null) {
+			throw new MojoFailureException("The parameters 'url', and 'requests' are mutually exclusive.");
+		}
+		final Set<String> ids = new HashSet<>();
+		for (RequestDefinition request : requests) {
+			if (request.getUrl() == null  ||  request.getUrl().trim().length() == 0) {
+				throw new MojoFailureException("Invalid value for parameter 'requests': Every request requires a 'url'.");
+			}
+			if (!ids.add(request.getId())) {
+				throw new MojoFailureException("Invalid value for parameter 'requests': Duplicate request id: "
+						+ request.getId());
+			}
+			validateBody(request);
+			validateChecksum(request);
+			validateExtract(request);
+		}
+		return requests;
+	}
+
+	protected String getMethod(RequestDefinition pRequest) {
+		if (pRequest.getMethod() != null) {
+			return pRequest.getMethod();
+		}
+		return method == null ? "GET" : method;
+	}
+
+	protected Map<String,String> getHeaders(RequestDefinition pRequest) {
+		final Map<String,String> map = new LinkedHashMap<>();
+		if (headers != null) {
+			map.putAll(headers);
+		}
+		if (pRequest.getHeaders() != null) {
+			map.putAll(pRequest.getHeaders());
+		}
+		return map;
+	}
+
+	protected int getParallelism() {
+		return parallelism > 0 ? parallelism : 4;
+	}
+
+	protected int getHedgePercentile() {
+		return hedgePercentile > 0  &&  hedgePercentile <= 100 ? hedgePercentile : 95;
+	}
+
+	protected boolean isRangeDownload(RequestDefinition pRequest) {
+		return rangeDownload  &&  pRequest.getOutputFile() != null  &&  "GET".equalsIgnoreCase(getMethod(pRequest));
+	}
+
+	protected long getRangeChunkSize() throws MojoFailureException {
+		try {
+			final long size = ResponseCache.parseSize(rangeChunkSize == null ? "8M" : rangeChunkSize);
+			if (size <= 0) {
+				throw new NumberFormatException();
+			}
+			return size;
+		} catch (NumberFormatException nfe) {
+			throw new MojoFailureException("Invalid value for parameter 'rangeChunkSize': Expected size, like 8M, got "
+					+ rangeChunkSize);
+		}
+	}
+
+	protected ResponseCache getResponseCache(RequestDefinition pRequest) throws MojoFailureException {
+		if (!useCache  ||  cacheDirectory == null  ||  pRequest.getOutputFile() == null
+				||  !"GET".equalsIgnoreCase(getMethod(pRequest))  ||  isRangeDownload(pRequest)) {
+			return null;
+		}
+		final long maxSize;
+		try {
+			maxSize = ResponseCache.parseSize(cacheMaxSize == null ? "512M" : cacheMaxSize);
+		} catch (NumberFormatException nfe) {
+			throw new MojoFailureException("Invalid value for parameter 'cacheMaxSize': Expected size, like 512M, got "
+					+ cacheMaxSize);
+		}
+		return new ResponseCache(cacheDirectory, maxSize, getLog());
+	}
+
+	protected RequestArchive.Mode getArchiveMode() throws MojoFailureException {
+		try {
+			return RequestArchive.Mode.of(archiveMode);
+		} catch (IllegalArgumentException e) {
+			throw new MojoFailureException("Invalid value for parameter 'archiveMode': " + e.getMessage());
 		}
-		if (proxy != null) {
-			connector.setProxy(proxy);
+	}
+
+	protected RequestArchive getRequestArchive() throws MojoFailureException {
+		if (getArchiveMode() == RequestArchive.Mode.OFF) {
+			return null;
 		}
-		if (trustStore != null) {
-			if (!Files.isRegularFile(trustStore)) {
-				throw new MojoFailureException("Invalid parameter 'trustStore': Expected existing file, got " + trustStore);
+		if (archiveDirectory == null) {
+			throw new MojoFailureException("The parameter 'archiveDirectory' is required, if 'archiveMode' isn't off.");
+		}
+		return RequestArchive.of(archiveDirectory);
+	}
+
+	/**
+	 * Returns the key, under which the response is archived. Unlike the cache key,
+	 * it includes the request body, so that different requests to the same URL
+	 * can be replayed.
+	 * @param pRequest The request.
+	 * @param pUrl The request URL.
+	 * @param pHeaders The request headers.
+	 * @param pEncoding The encoding of the body text.
+	 * @return The archive key.
+	 * @throws MojoExecutionException Reading the body file failed.
+	 */
+	protected String getArchiveKey(RequestDefinition pRequest, URL pUrl, Map<String,String> pHeaders,
+			String pEncoding) throws MojoExecutionException {
+		final String requestKey = ResponseCache.getKey(getMethod(pRequest), pUrl, pHeaders, authUser);
+		final Path file = getBodyFile(pRequest);
+		final String text = getBodyText(pRequest);
+		if (file != null) {
+			final MessageDigest digest = DigestIndex.newDigest("SHA-256");
+			try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+				drain(in);
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Unable to read body file " + file + ": " + ioe.getMessage(), ioe);
 			}
-			connector.setTruststore(trustStore, trustStorePwd);
+			return RequestArchive.getKey(requestKey, ResponseCache.toHex(digest.digest()));
+		} else if (text != null) {
+			return RequestArchive.getKey(requestKey,
+					ResponseCache.toHex(ResponseCache.sha256(text.getBytes(Charset.forName(pEncoding)))));
+		} else {
+			return RequestArchive.getKey(requestKey, null);
 		}
-		return connector;
+	}
+
+	/**
+	 * Records a response, which has been written to a file.
+	 * @param pArchive The archive.
+	 * @param pKey The archive key.
+	 * @param pUrl The request URL.
+	 * @param pStatusCode The response status.
+	 * @param pFile The file with the response body.
+	 * @throws MojoExecutionException Writing the archive failed.
+	 */
+	protected void record(RequestArchive pArchive, String pKey, URL pUrl, int pStatusCode, Path pFile)
+			throws MojoExecutionException {
+		try {
+			pArchive.put(pKey, pStatusCode, pFile);
+			getLog().debug("Recorded response of " + pUrl + " in archive " + archiveDirectory);
+		} catch (IOException ioe) {
+			throw new MojoExecutionException("Unable to record response of " + pUrl + " in archive "
+					+ archiveDirectory + ": " + ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * Answers a request from the archive. A literal {@code checksum} is verified,
+	 * but a {@code checksumUrl} isn't fetched, because no network access is done.
+	 * @param pRequest The request.
+	 * @param pUrl The request URL.
+	 * @param pEntry The archived response.
+	 * @param pStartTime The time, when the request has been started.
+	 * @return The requests outcome.
+	 * @throws MojoExecutionException Reading the archive, or writing the output failed.
+	 */
+	protected RequestResult replay(RequestDefinition pRequest, URL pUrl, RequestArchive.Entry pEntry, long pStartTime)
+			throws MojoExecutionException {
+		final Path outputFile = pRequest.getOutputFile();
+		final String value = getChecksum(pRequest);
+		final Checksum expectedChecksum = value == null ? null : Checksum.parse(value);
+		final MessageDigest digest = expectedChecksum == null ? null
+				: DigestIndex.newDigest(expectedChecksum.getAlgorithm());
+		final ResponseExtractor extractor = getResponseExtractor(pRequest);
+		final Map<String,String> extracted = new HashMap<>();
+		final long transferStart = System.nanoTime();
+		final long bytes;
+		try (InputStream bodyIn = pEntry.openBody()) {
+			final InputStream in = digest == null ? bodyIn : new DigestInputStream(bodyIn, digest);
+			if (outputFile != null) {
+				getLog().debug("Writing archived response to " + outputFile);
+				FileUtils.createDirectoryFor(outputFile);
+				try (OutputStream out = Files.newOutputStream(outputFile)) {
+					copyResponse(in, out, extractor, extracted);
+				}
+				bytes = pEntry.getBodyLength();
+			} else if (extractor != null) {
+				extracted.putAll(extractor.extract(in));
+				if (digest != null) {
+					drain(in);
+				}
+				bytes = 0;
+			} else {
+				getLog().debug("Writing archived response to System.out");
+				bytes = writeAtOnce(in, System.out);
+			}
+		} catch (IOException ioe) {
+			throw new MojoExecutionException("Unable to replay response of " + pUrl + ": " + ioe.getMessage(), ioe);
+		}
+		if (expectedChecksum != null) {
+			verifyChecksum(pUrl, expectedChecksum, outputFile, digest);
+		}
+		setProperties(pRequest, pUrl, extracted);
+		final RequestMetrics metrics = new RequestMetrics(pUrl);
+		metrics.setTransferMillis(RequestMetrics.toMillis(System.nanoTime() - transferStart));
+		return RequestResult.replayed(pRequest, pEntry.getStatusCode(), bytes, System.currentTimeMillis() - pStartTime,
+				metrics);
 	}
 
 	protected String getEncoding() {
@@ -124,12 +604,37 @@ public class JwiCrlMojo extends AbstractMojo {
 		}
 	}
 
-	protected URL getRequestUrl(String pEncoding) throws MojoExecutionException {
+	protected URL getRequestUrl(RequestDefinition pRequest, String pEncoding) throws MojoExecutionException {
+		return getRequestUrl(pRequest.getUrl(), pRequest.getQueryParameters(), pEncoding);
+	}
+
+	/**
+	 * Returns the request URL, followed by the URLs of the mirrors.
+	 * @param pRequest The request.
+	 * @param pEncoding The encoding of the query parameters.
+	 * @return A non-empty list of URLs.
+	 * @throws MojoExecutionException A URL is invalid.
+	 */
+	protected List<URL> getRequestUrls(RequestDefinition pRequest, String pEncoding) throws MojoExecutionException {
+		final List<URL> urls = new ArrayList<>();
+		urls.add(getRequestUrl(pRequest, pEncoding));
+		final List<String> mirrorUrls = pRequest.getMirrors() == null ? mirrors : pRequest.getMirrors();
+		if (mirrorUrls != null) {
+			for (String mirrorUrl : mirrorUrls) {
+				urls.add(getRequestUrl(mirrorUrl, pRequest.getQueryParameters(), pEncoding));
+			}
+		}
+		return urls;
+	}
+
+	protected URL getRequestUrl(String pUrl, Map<String,String> pQueryParameters, String pEncoding)
+			throws MojoExecutionException {
 		final String urlStr;
+		final Map<String,String> queryParameters = pQueryParameters;
 		if (queryParameters == null  ||  queryParameters.isEmpty()) {
-			urlStr = url;
+			urlStr = pUrl;
 		} else {
-			final StringBuilder sb = new StringBuilder();
+			final StringBuilder sb = new StringBuilder(pUrl);
 			for (Map.Entry<String,String> en : queryParameters.entrySet()) {
 				if (sb.indexOf("?") == -1) {
 					// First parameter
@@ -150,13 +655,357 @@ public class JwiCrlMojo extends AbstractMojo {
 		}
 	}
 
-	protected boolean hasBody() {
-		return "GET".equalsIgnoreCase(method)  ||  "HEAD".equalsIgnoreCase(method);
+	protected Path getBodyFile(RequestDefinition pRequest) {
+		if (pRequest.getBodyFile() != null  ||  pRequest.getBodyText() != null) {
+			return pRequest.getBodyFile();
+		}
+		return bodyFile;
+	}
+
+	protected String getBodyText(RequestDefinition pRequest) {
+		if (pRequest.getBodyFile() != null  ||  pRequest.getBodyText() != null) {
+			return pRequest.getBodyText();
+		}
+		return bodyText;
 	}
 
-	protected void setHeaders(HttpURLConnection pUrlConnection, String pEncoding) {
-		if (headers != null  &&  !headers.isEmpty()) {
-			for (Map.Entry<String,String> en : headers.entrySet()) {
+	protected boolean hasBody(RequestDefinition pRequest) {
+		return getBodyFile(pRequest) != null  ||  getBodyText(pRequest) != null;
+	}
+
+	protected void validateBody(RequestDefinition pRequest) throws MojoFailureException {
+		final Path file = getBodyFile(pRequest);
+		if (file != null  &&  getBodyText(pRequest) != null) {
+			throw new MojoFailureException("The parameters 'bodyFile', and 'bodyText' are mutually exclusive.");
+		}
+		if (file != null  &&  !Files.isRegularFile(file)) {
+			throw new MojoFailureException("Invalid parameter 'bodyFile': Expected existing file, got " + file);
+		}
+		final String requestMethod = getMethod(pRequest);
+		if (hasBody(pRequest)  &&  ("GET".equalsIgnoreCase(requestMethod)  ||  "HEAD".equalsIgnoreCase(requestMethod))) {
+			throw new MojoFailureException("A request body requires a method like POST, or PUT, got " + requestMethod);
+		}
+	}
+
+	protected String getChecksum(RequestDefinition pRequest) {
+		if (pRequest.getChecksum() != null  ||  pRequest.getChecksumUrl() != null) {
+			return pRequest.getChecksum();
+		}
+		return checksum;
+	}
+
+	protected String getChecksumUrl(RequestDefinition pRequest) {
+		if (pRequest.getChecksum() != null  ||  pRequest.getChecksumUrl() != null) {
+			return pRequest.getChecksumUrl();
+		}
+		return checksumUrl;
+	}
+
+	protected void validateChecksum(RequestDefinition pRequest) throws MojoFailureException {
+		final String value = getChecksum(pRequest);
+		final String valueUrl = getChecksumUrl(pRequest);
+		if (value != null  &&  valueUrl != null) {
+			throw new MojoFailureException("The parameters 'checksum', and 'checksumUrl' are mutually exclusive.");
+		}
+		if (value != null) {
+			try {
+				Checksum.parse(value);
+			} catch (IllegalArgumentException e) {
+				throw new MojoFailureException("Invalid parameter 'checksum': " + e.getMessage());
+			}
+		}
+		final String requestMethod = getMethod(pRequest);
+		if ((value != null  ||  valueUrl != null)  &&  !"GET".equalsIgnoreCase(requestMethod)) {
+			throw new MojoFailureException("A checksum requires the method GET, got " + requestMethod);
+		}
+	}
+
+	protected void writeMetricsReport() {
+		if (metricsReportFile == null) {
+			return;
+		}
+		final String projectId = project == null ? null : project.getGroupId() + ":" + project.getArtifactId();
+		final String executionId = mojoExecution == null ? null : mojoExecution.getExecutionId();
+		try {
+			metricsReport.write(metricsReportFile, projectId, executionId);
+			getLog().debug("Request metrics written to " + metricsReportFile);
+		} catch (IOException ioe) {
+			getLog().warn("Unable to write request metrics to " + metricsReportFile + ": " + ioe.getMessage());
+		}
+	}
+
+	protected Map<String,String> getExtract(RequestDefinition pRequest) {
+		return pRequest.getExtract() == null ? extract : pRequest.getExtract();
+	}
+
+	protected ResponseExtractor getResponseExtractor(RequestDefinition pRequest) {
+		final Map<String,String> expressions = getExtract(pRequest);
+		return expressions == null  ||  expressions.isEmpty() ? null : ResponseExtractor.of(expressions);
+	}
+
+	protected void validateExtract(RequestDefinition pRequest) throws MojoFailureException {
+		try {
+			getResponseExtractor(pRequest);
+		} catch (IllegalArgumentException e) {
+			throw new MojoFailureException("Invalid parameter 'extract': " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Copies the response body, evaluating the {@code extract} expressions on the fly.
+	 * @param pIn The response body, which is closed.
+	 * @param pOut The destination.
+	 * @param pExtractor The extractor, or null.
+	 * @param pExtracted Receives the extracted values.
+	 * @throws IOException Reading, or writing the response body failed.
+	 */
+	protected void copyResponse(InputStream pIn, OutputStream pOut, ResponseExtractor pExtractor,
+			Map<String,String> pExtracted) throws IOException {
+		try (InputStream in = pIn) {
+			if (pExtractor != null) {
+				// The parser reads through the tee, the copy continues after the last match.
+				pExtracted.putAll(pExtractor.extract(ResponseExtractor.tee(in, pOut)));
+			}
+			Streams.copy(in, pOut);
+		}
+	}
+
+	/**
+	 * Evaluates the {@code extract} expressions on a file, for example a restored
+	 * response, which hasn't been read from the network.
+	 */
+	protected void extract(RequestDefinition pRequest, Path pFile, Map<String,String> pExtracted)
+			throws MojoExecutionException {
+		final ResponseExtractor extractor = getResponseExtractor(pRequest);
+		if (extractor != null) {
+			try (InputStream in = Files.newInputStream(pFile)) {
+				pExtracted.putAll(extractor.extract(in));
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Unable to extract values from " + pFile + ": " + ioe.getMessage(), ioe);
+			}
+		}
+	}
+
+	/**
+	 * Sets the extracted values as project properties.
+	 * @param pRequest The request.
+	 * @param pUrl The request URL.
+	 * @param pExtracted The extracted values.
+	 * @throws MojoExecutionException An expression had no match.
+	 */
+	protected void setProperties(RequestDefinition pRequest, URL pUrl, Map<String,String> pExtracted)
+			throws MojoExecutionException {
+		final Map<String,String> expressions = getExtract(pRequest);
+		if (expressions == null  ||  expressions.isEmpty()) {
+			return;
+		}
+		final List<String> missing = new ArrayList<>();
+		expressions.forEach((property, expression) -> {
+			if (!pExtracted.containsKey(property)) {
+				missing.add(property + "=" + expression);
+			}
+		});
+		if (!missing.isEmpty()) {
+			throw new MojoExecutionException("No match in the response of " + pUrl + " for: "
+					+ String.join(", ", missing));
+		}
+		for (String property : expressions.keySet()) {
+			final String value = pExtracted.get(property);
+			if (project != null) {
+				project.getProperties().setProperty(property, value);
+			}
+			getLog().info("Property " + property + " = " + value);
+		}
+	}
+
+	protected synchronized DigestIndex getDigestIndex() {
+		if (digestIndex == null) {
+			digestIndex = new DigestIndex(digestIndexFile, getLog());
+		}
+		return digestIndex;
+	}
+
+	/**
+	 * Returns the expected checksum of the response body, fetching the checksum
+	 * file, if necessary.
+	 * @param pRequest The request.
+	 * @param pHttpClient The client, which fetches the checksum file.
+	 * @param pUrl The request URL, which provides the file name, that is looked
+	 *   for in the checksum file.
+	 * @param pEncoding The encoding of query parameters, and credentials.
+	 * @return The expected checksum, or null.
+	 * @throws MojoExecutionException Fetching, or parsing the checksum file failed.
+	 */
+	protected Checksum getExpectedChecksum(RequestDefinition pRequest, SessionConnectionPool.Client pHttpClient,
+			URL pUrl, String pEncoding) throws MojoExecutionException {
+		final String value = getChecksum(pRequest);
+		if (value != null) {
+			return Checksum.parse(value);
+		}
+		final String valueUrl = getChecksumUrl(pRequest);
+		if (valueUrl == null) {
+			return null;
+		}
+		final URL checksumFileUrl = getRequestUrl(valueUrl, null, pEncoding);
+		final String path = pUrl.getPath();
+		final String fileName = path.substring(path.lastIndexOf('/')+1);
+		try (HttpConnection httpConnection = openConnection(pHttpClient, checksumFileUrl, getHeaders(pRequest),
+				pEncoding)) {
+			final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
+			final int statusCode = urlConnection.getResponseCode();
+			if (statusCode != HttpURLConnection.HTTP_OK) {
+				drain(urlConnection.getErrorStream());
+				throw new MojoExecutionException("Unable to fetch checksum file " + checksumFileUrl + ": "
+						+ statusCode + ", " + urlConnection.getResponseMessage());
+			}
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (InputStream in = urlConnection.getInputStream()) {
+				Streams.copy(in, baos);
+			}
+			final Checksum expected = Checksum.parseChecksumFile(baos.toString("UTF-8"), fileName);
+			getLog().debug("Checksum of " + fileName + ": " + expected);
+			return expected;
+		} catch (IOException ioe) {
+			throw new MojoExecutionException("Unable to read checksum file " + checksumFileUrl + ": "
+					+ ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * Compares the checksum of the response body with the expected checksum. If they
+	 * don't match, then the output file is deleted.
+	 * @param pUrl The request URL.
+	 * @param pChecksum The expected checksum.
+	 * @param pOutputFile The output file, or null.
+	 * @param pDigest The digest, which has been computed while writing the response,
+	 *   or null, if the output file must be read.
+	 * @throws MojoExecutionException The checksums don't match.
+	 */
+	protected void verifyChecksum(URL pUrl, Checksum pChecksum, Path pOutputFile, MessageDigest pDigest)
+			throws MojoExecutionException {
+		try {
+			final String actual = pDigest == null ? getDigestIndex().getDigest(pOutputFile, pChecksum.getAlgorithm())
+					: ResponseCache.toHex(pDigest.digest());
+			if (!pChecksum.matches(actual)) {
+				if (pOutputFile != null) {
+					getDigestIndex().remove(pOutputFile);
+					Files.deleteIfExists(pOutputFile);
+				}
+				final String msg = "Checksum mismatch for " + pUrl + ": Expected " + pChecksum + ", got "
+						+ pChecksum.getAlgorithm() + ":" + actual;
+				getLog().error(msg);
+				throw new MojoExecutionException(msg);
+			}
+			getLog().debug("Checksum verified: " + pChecksum);
+			if (pDigest != null  &&  pOutputFile != null) {
+				getDigestIndex().put(pOutputFile, pChecksum.getAlgorithm(), actual);
+			}
+		} catch (IOException ioe) {
+			throw new MojoExecutionException("Unable to verify checksum of " + pOutputFile + ": "
+					+ ioe.getMessage(), ioe);
+		}
+	}
+
+	/**
+	 * Sends the request body, if any. The body is streamed: A body of known length is
+	 * sent in fixed length streaming mode, a compressed body in chunked streaming mode,
+	 * so that the connection doesn't buffer the body in memory. Files are transferred
+	 * through a {@link FileChannel}.
+	 * @param pUrlConnection The connection, which isn't connected yet.
+	 * @param pRequest The request.
+	 * @param pEncoding The encoding of a {@code bodyText}.
+	 * @param pMetrics The requests metrics, which receive the connect time.
+	 * @return The number of bytes, which have been read from the body file, or text.
+	 * @throws IOException Sending the body failed.
+	 */
+	protected long writeBody(HttpURLConnection pUrlConnection, RequestDefinition pRequest, String pEncoding,
+			RequestMetrics pMetrics) throws IOException {
+		final Path file = getBodyFile(pRequest);
+		final byte[] textBytes = file == null ? getBodyText(pRequest).getBytes(Charset.forName(pEncoding)) : null;
+		final long length = file == null ? textBytes.length : Files.size(file);
+		pUrlConnection.setDoOutput(true);
+		if (bodyGzip) {
+			pUrlConnection.setRequestProperty("Content-Encoding", "gzip");
+			pUrlConnection.setChunkedStreamingMode(BODY_CHUNK_SIZE);
+		} else {
+			pUrlConnection.setFixedLengthStreamingMode(length);
+		}
+		connect(pUrlConnection, pMetrics);
+		try (OutputStream os = pUrlConnection.getOutputStream();
+			 OutputStream out = bodyGzip ? new GZIPOutputStream(os, BODY_CHUNK_SIZE) : os) {
+			if (file == null) {
+				out.write(textBytes);
+			} else {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					final WritableByteChannel target = Channels.newChannel(out);
+					long position = 0;
+					while (position < length) {
+						final long transferred = channel.transferTo(position, length - position, target);
+						if (transferred <= 0) {
+							throw new IOException("Unexpected end of file " + file + " at position " + position);
+						}
+						position += transferred;
+					}
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Opens a connection, and applies the timeouts, and the given headers.
+	 * @param pHttpClient The client, which creates the connection.
+	 * @param pUrl The URL to connect to.
+	 * @param pHeaders The request headers.
+	 * @param pEncoding The encoding of the credentials.
+	 * @return The opened connection, which isn't connected yet.
+	 * @throws IOException Opening the connection failed.
+	 */
+	protected HttpConnection openConnection(SessionConnectionPool.Client pHttpClient, URL pUrl,
+			Map<String,String> pHeaders, String pEncoding) throws IOException {
+		final HttpConnection httpConnection = pHttpClient.connect(pUrl);
+		final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
+		urlConnection.setConnectTimeout(Math.max(0, connectTimeout));
+		urlConnection.setReadTimeout(Math.max(0, readTimeout));
+		setHeaders(urlConnection, pHeaders, pEncoding);
+		return httpConnection;
+	}
+
+	/**
+	 * Connects to the server, measuring the time for DNS lookup, TCP connect, and TLS
+	 * handshake. If the connection is taken from the keep-alive cache, the connect
+	 * time is close to zero, and no TLS handshake is recorded.
+	 * @param pUrlConnection The connection, which isn't connected yet.
+	 * @param pMetrics The requests metrics, which receive the measured times.
+	 * @throws IOException Connecting failed.
+	 */
+	protected void connect(HttpURLConnection pUrlConnection, RequestMetrics pMetrics) throws IOException {
+		if (proxy == null) {
+			// The JVM caches the address, so the connection doesn't look it up again.
+			final long dnsStart = System.nanoTime();
+			try {
+				InetAddress.getAllByName(pUrlConnection.getURL().getHost());
+			} catch (UnknownHostException e) {
+				// Reported by the connect below.
+			}
+			pMetrics.setDnsMillis(RequestMetrics.toMillis(System.nanoTime() - dnsStart));
+		}
+		TimingSocketFactory.reset();
+		final long connectStart = System.nanoTime();
+		pUrlConnection.connect();
+		final long connectEnd = System.nanoTime();
+		final long handshakeStart = TimingSocketFactory.getHandshakeStart();
+		if (handshakeStart == 0) {
+			pMetrics.setConnectMillis(RequestMetrics.toMillis(connectEnd - connectStart));
+		} else {
+			pMetrics.setConnectMillis(RequestMetrics.toMillis(handshakeStart - connectStart));
+			pMetrics.setTlsMillis(RequestMetrics.toMillis(connectEnd - handshakeStart));
+		}
+	}
+
+	protected void setHeaders(HttpURLConnection pUrlConnection, Map<String,String> pHeaders, String pEncoding) {
+		if (pHeaders != null  &&  !pHeaders.isEmpty()) {
+			for (Map.Entry<String,String> en : pHeaders.entrySet()) {
 				pUrlConnection.addRequestProperty(en.getKey(), en.getValue());
 			}
 		}
@@ -170,47 +1019,464 @@ public class JwiCrlMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * Returns, whether other executions, or requests, may write to System.out
+	 * concurrently: In a parallel build, or if a batch of requests is executed
+	 * by multiple threads.
+	 * @return True, if the output of a request must be written at once.
+	 */
+	protected boolean isConcurrentOutput() {
+		return (session != null  &&  session.isParallel())
+				||  (requests != null  &&  requests.size() > 1  &&  getParallelism() > 1);
+	}
+
+	/**
+	 * Writes the given stream to the given print stream. If the output may be
+	 * written concurrently ({@link #isConcurrentOutput()}), the stream is read
+	 * completely, and written in a single operation, so that the output of
+	 * concurrent executions isn't interleaved. Otherwise, it is streamed, without
+	 * buffering the whole body in memory.
+	 * @param pIn The stream to read. May be null, in which case nothing is written.
+	 * @param pOut The stream to write to, typically {@link System#out}.
+	 * @return The number of bytes, which have been written.
+	 * @throws IOException Reading the input stream failed.
+	 */
+	protected long writeAtOnce(InputStream pIn, PrintStream pOut) throws IOException {
+		if (pIn == null) {
+			return 0;
+		}
+		if (!isConcurrentOutput()) {
+			final ContentDecoding.CountingInputStream countingIn = new ContentDecoding.CountingInputStream(pIn);
+			try (InputStream in = countingIn) {
+				Streams.copy(in, pOut);
+			}
+			pOut.flush();
+			return countingIn.getCount();
+		}
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (InputStream in = pIn) {
+			Streams.copy(in, baos);
+		}
+		final byte[] bytes = baos.toByteArray();
+		pOut.write(bytes, 0, bytes.length);
+		pOut.flush();
+		return bytes.length;
+	}
+
+	/**
+	 * Reads, and closes, the given stream. A connection can only be reused
+	 * by the JVM's keep-alive cache, if the response has been consumed.
+	 * @param pIn The stream to drain, or null.
+	 * @throws IOException Reading the stream failed.
+	 */
+	protected void drain(InputStream pIn) throws IOException {
+		if (pIn != null) {
+			try (InputStream in = pIn) {
+				final byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+					// Discard the response.
+				}
+			}
+		}
+	}
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		if (skip) {
 			getLog().info("Skipping, parameter skip=true");
 			return;
 		}
-		final HttpConnector httpConnector = getHttpConnector();
+		final List<RequestDefinition> requestDefinitions = getRequestDefinitions();
+		getArchiveMode();
+		final SessionConnectionPool.Client httpClient = getHttpClient();
 		final String encoding = getEncoding();
-		final URL url = getRequestUrl(encoding);
+		try {
+			if (requests == null  ||  requests.isEmpty()) {
+				final RequestDefinition request = requestDefinitions.get(0);
+				try {
+					final RequestResult result = executeRequest(request, httpClient, encoding);
+					metricsReport.add(result);
+					getLog().info("Request " + request.getId() + ": OK, " + result.getSummary());
+				} catch (MojoExecutionException|MojoFailureException e) {
+					metricsReport.addFailure(request, e.getMessage());
+					throw e;
+				}
+			} else {
+				try {
+					executeRequests(requestDefinitions, httpClient, encoding);
+				} finally {
+					metricsReport.log(getLog());
+				}
+			}
+		} finally {
+			writeMetricsReport();
+			try {
+				getDigestIndex().save();
+			} catch (IOException ioe) {
+				getLog().warn("Unable to write digest index " + digestIndexFile + ": " + ioe.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Executes the given requests concurrently, and reports the outcome of every
+	 * request. Failed requests don't stop the other requests.
+	 * @param pRequests The requests to execute.
+	 * @param pHttpClient The client, which creates the connections.
+	 * @param pEncoding The encoding of query parameters, and credentials.
+	 * @throws MojoExecutionException At least one of the requests failed.
+	 */
+	protected void executeRequests(List<RequestDefinition> pRequests, SessionConnectionPool.Client pHttpClient, String pEncoding)
+			throws MojoExecutionException {
+		final int threads = Math.min(getParallelism(), pRequests.size());
+		getLog().debug("Executing " + pRequests.size() + " requests, using " + threads + " threads");
+		final AtomicInteger counter = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, (r) -> {
+			final Thread t = new Thread(r, "jwicrl-request-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		final List<Future<RequestResult>> futures = new ArrayList<>(pRequests.size());
+		try {
+			for (RequestDefinition request : pRequests) {
+				futures.add(executor.submit(() -> executeRequest(request, pHttpClient, pEncoding)));
+			}
+			final List<String> failedRequests = new ArrayList<>();
+			for (int i = 0;  i < pRequests.size();  i++) {
+				final RequestDefinition request = pRequests.get(i);
+				try {
+					final RequestResult result = futures.get(i).get();
+					metricsReport.add(result);
+					getLog().info("Request " + request.getId() + ": OK, " + result.getSummary());
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause() == null ? e : e.getCause();
+					getLog().error("Request " + request.getId() + ": FAILED, " + cause.getMessage());
+					metricsReport.addFailure(request, cause.getMessage());
+					failedRequests.add(request.getId());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while waiting for request " + request.getId(), e);
+				}
+			}
+			if (!failedRequests.isEmpty()) {
+				throw new MojoExecutionException(failedRequests.size() + " of " + pRequests.size()
+						+ " requests failed: " + String.join(", ", failedRequests));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Executes a single request, retrying it, if necessary.
+	 * @param pRequest The request to execute.
+	 * @param pHttpClient The client, which creates the connection.
+	 * @param pEncoding The encoding of query parameters, and credentials.
+	 * @return The requests outcome.
+	 * @throws MojoExecutionException The request failed.
+	 * @throws MojoFailureException The response cache, or the archive, is misconfigured.
+	 */
+	protected RequestResult executeRequest(RequestDefinition pRequest, SessionConnectionPool.Client pHttpClient,
+			String pEncoding)
+			throws MojoExecutionException, MojoFailureException {
+		final long startTime = System.currentTimeMillis();
+		final List<URL> urls = getRequestUrls(pRequest, pEncoding);
+		final URL url = urls.get(0);
+		final Path outputFile = pRequest.getOutputFile();
+		final Map<String,String> requestHeaders = getHeaders(pRequest);
 		getLog().debug("Url: " + url);
-		try (HttpConnection httpConnection = httpConnector.connect(url)) {
-			final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
-			setHeaders(urlConnection, encoding);
-			urlConnection.setDoOutput(hasBody());
-			urlConnection.setDoInput(true);
-			final int statusCode  = urlConnection.getResponseCode();
-			final String statusMessage = urlConnection.getResponseMessage();
-			if (statusCode >= 200  &&  statusCode < 300) {
-				getLog().debug("Response: " + statusCode + ", " + statusMessage);
-				if (outputFile != null) {
-					getLog().debug("Writing response to " + outputFile);
-					FileUtils.createDirectoryFor(outputFile);
-					try (OutputStream out = Files.newOutputStream(outputFile)) {
-						Streams.copy(urlConnection.getInputStream(), out);
+		final RequestArchive.Mode mode = getArchiveMode();
+		final RequestArchive archive = getRequestArchive();
+		final String archiveKey = archive == null ? null : getArchiveKey(pRequest, url, requestHeaders, pEncoding);
+		if (mode == RequestArchive.Mode.REPLAY  ||  mode == RequestArchive.Mode.AUTO) {
+			final RequestArchive.Entry entry;
+			try {
+				entry = archive.get(archiveKey);
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Unable to read archive " + archiveDirectory + ": " + ioe.getMessage(), ioe);
+			}
+			if (entry != null) {
+				getLog().debug("Replaying archived response of " + url);
+				return replay(pRequest, url, entry, startTime);
+			}
+			if (mode == RequestArchive.Mode.REPLAY) {
+				throw new MojoExecutionException("No archived response for " + getMethod(pRequest).toUpperCase(Locale.ROOT)
+						+ " " + url + " in " + archiveDirectory);
+			}
+		}
+		// In auto mode, the request hasn't been recorded yet.
+		final RequestArchive recordArchive = mode == RequestArchive.Mode.REPLAY ? null : archive;
+		final Checksum expectedChecksum = getExpectedChecksum(pRequest, pHttpClient, url, pEncoding);
+		if (expectedChecksum != null  &&  outputFile != null  &&  Files.isRegularFile(outputFile)) {
+			try {
+				if (expectedChecksum.matches(getDigestIndex().getDigest(outputFile, expectedChecksum.getAlgorithm()))) {
+					getLog().info("Output file " + outputFile + " has the expected checksum, skipping request to " + url);
+					final Map<String,String> extracted = new HashMap<>();
+					extract(pRequest, outputFile, extracted);
+					setProperties(pRequest, url, extracted);
+					if (recordArchive != null) {
+						record(recordArchive, archiveKey, url, HttpURLConnection.HTTP_OK, outputFile);
+					}
+					return RequestResult.skipped(pRequest, Files.size(outputFile), System.currentTimeMillis() - startTime,
+							new RequestMetrics(url));
+				}
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Unable to compute checksum of " + outputFile + ": "
+						+ ioe.getMessage(), ioe);
+			}
+			getLog().debug("Output file " + outputFile + " doesn't have the expected checksum");
+		}
+		if (isRangeDownload(pRequest)) {
+			final RangeDownloader downloader = new RangeDownloader(url, outputFile, getRangeChunkSize(),
+					rangeThreads > 0 ? rangeThreads : 4,
+					() -> openConnection(pHttpClient, url, requestHeaders, pEncoding), getLog());
+			try {
+				final long bytes = downloader.download();
+				if (bytes != -1) {
+					if (expectedChecksum != null) {
+						verifyChecksum(url, expectedChecksum, outputFile, null);
+					}
+					final Map<String,String> extracted = new HashMap<>();
+					extract(pRequest, outputFile, extracted);
+					setProperties(pRequest, url, extracted);
+					if (recordArchive != null) {
+						record(recordArchive, archiveKey, url, HttpURLConnection.HTTP_OK, outputFile);
+					}
+					// The ranges are fetched concurrently, so only the total is measured.
+					final long millis = System.currentTimeMillis() - startTime;
+					final RequestMetrics metrics = new RequestMetrics(url);
+					metrics.setTransferMillis(millis);
+					metrics.setReceivedBytes(bytes);
+					return new RequestResult(pRequest, HttpURLConnection.HTTP_OK, bytes, -1, millis, false, metrics);
+				}
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Range download of " + url + " failed: " + ioe.getMessage(), ioe);
+			}
+			getLog().debug("Range download not possible, falling back to a single request");
+		}
+		final ResponseCache responseCache = getResponseCache(pRequest);
+		final String cacheKey = responseCache == null ? null
+				: ResponseCache.getKey(getMethod(pRequest), url, requestHeaders, authUser);
+		final ResponseCache.Entry cachedResponse = responseCache == null ? null : responseCache.get(cacheKey);
+		final String requestMethod = getMethod(pRequest).toUpperCase(Locale.ROOT);
+		final RetryPolicy retryPolicy = new RetryPolicy(RetryPolicy.isIdempotent(requestMethod) ? retries : 0,
+				retryDelay, retryMaxDelay);
+		final Map<HttpURLConnection,RequestMetrics> metricsByConnection = new ConcurrentHashMap<>();
+		final HedgedRequest.Opener opener = new HedgedRequest.Opener() {
+			@Override
+			public HttpConnection open(URL pUrl) throws IOException {
+				final HttpConnection httpConnection = openConnection(pHttpClient, pUrl, requestHeaders, pEncoding);
+				final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
+				final RequestMetrics metrics = new RequestMetrics(pUrl);
+				metricsByConnection.put(urlConnection, metrics);
+				try {
+					if (cachedResponse != null) {
+						cachedResponse.setConditionalHeaders(urlConnection);
+					}
+					urlConnection.setRequestMethod(requestMethod);
+					urlConnection.setDoInput(true);
+					if (compressed) {
+						urlConnection.setRequestProperty("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING);
+					}
+					if (hasBody(pRequest)) {
+						final long bodyBytes = writeBody(urlConnection, pRequest, pEncoding, metrics);
+						getLog().debug("Request body: " + bodyBytes + " bytes" + (bodyGzip ? ", gzip compressed" : ""));
+					} else {
+						connect(urlConnection, metrics);
 					}
+					metrics.requestSent();
+					return httpConnection;
+				} catch (IOException|RuntimeException e) {
+					// Otherwise, every failed attempt would leak a connection.
+					close(httpConnection);
+					throw e;
+				}
+			}
+
+			@Override
+			public void close(HttpConnection pConnection) {
+				metricsByConnection.remove(pConnection.getUrlConnection());
+				HedgedRequest.Opener.super.close(pConnection);
+			}
+		};
+		final boolean hedging = hedge  &&  !hasBody(pRequest)
+				&&  ("GET".equals(requestMethod)  ||  "HEAD".equals(requestMethod));
+		for (int attempt = 0;  ;  attempt++) {
+			// Retries use the next mirror, if any.
+			final URL attemptUrl = urls.get(attempt % urls.size());
+			final URL hedgeUrl = urls.get((attempt + 1) % urls.size());
+			Path recording = null;
+			try {
+				final long attemptStartTime = System.currentTimeMillis();
+				if (recordArchive != null) {
+					recording = Files.createTempFile("jwicrl-", ".rec");
+				}
+				final HttpConnection httpConnection;
+				if (hedging) {
+					final long delay = HedgedRequest.getDelay(attemptUrl, getHedgePercentile(), hedgeDelay);
+					httpConnection = HedgedRequest.send(attemptUrl, hedgeUrl, opener, delay, getLog());
 				} else {
-					getLog().debug("Writing response to System.out");
-					Streams.copy(urlConnection.getInputStream(), System.out);
+					httpConnection = opener.open(attemptUrl);
+				}
+				try (HttpConnection conn = httpConnection;
+					 OutputStream recorder = recording == null ? null : Files.newOutputStream(recording)) {
+					final HttpURLConnection urlConnection = conn.getUrlConnection();
+					final RequestMetrics metrics = metricsByConnection.remove(urlConnection);
+					urlConnection.getResponseCode();
+					HedgedRequest.recordLatency(urlConnection.getURL(), System.currentTimeMillis() - attemptStartTime);
+					metrics.responseReceived();
+					metrics.setAttempts(attempt + 1);
+					final MessageDigest digest = expectedChecksum == null ? null
+							: DigestIndex.newDigest(expectedChecksum.getAlgorithm());
+					final Map<String,String> extracted = new HashMap<>();
+					final RequestResult result = processResponse(pRequest, urlConnection, responseCache, cacheKey,
+							cachedResponse, digest, recorder, extracted, metrics, startTime);
+					if (expectedChecksum != null) {
+						// A restored response hasn't passed the digest.
+						verifyChecksum(url, expectedChecksum, outputFile, result.isNotModified() ? null : digest);
+					}
+					setProperties(pRequest, url, extracted);
+					if (recorder != null) {
+						recorder.close();
+						// A restored response hasn't passed the recorder.
+						if (result.isNotModified()) {
+							record(recordArchive, archiveKey, url, HttpURLConnection.HTTP_OK, outputFile);
+						} else {
+							record(recordArchive, archiveKey, url, result.getStatusCode(), recording);
+						}
+					}
+					return result;
+				}
+			} catch (IOException ioe) {
+				final String msg = ioe.getMessage() == null ? ioe.getClass().getName() : ioe.getMessage();
+				if (attempt >= retryPolicy.getRetries()  ||  !RetryPolicy.isRetryable(ioe)) {
+					if (ioe instanceof RetryPolicy.RetryableStatusException) {
+						getLog().error(msg);
+						throw new MojoExecutionException(msg);
+					}
+					throw new MojoExecutionException(ioe);
+				}
+				final long delay = retryPolicy.getDelay(attempt + 1, ioe);
+				getLog().warn("Request to " + attemptUrl + " failed (" + msg + "), retrying in " + delay + "ms ("
+						+ (attempt + 1) + " of " + retryPolicy.getRetries() + ")");
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while waiting to retry " + url, e);
+				}
+			} finally {
+				if (recording != null) {
+					try {
+						Files.deleteIfExists(recording);
+					} catch (IOException ioe) {
+						getLog().debug("Unable to delete " + recording + ": " + ioe.getMessage());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Processes the response of a request.
+	 * @param pRequest The request.
+	 * @param pUrlConnection The connection, which has received the response.
+	 * @param pResponseCache The response cache, or null.
+	 * @param pCacheKey The cache key, or null.
+	 * @param pCachedResponse The cached response, which has been used for a conditional request, or null.
+	 * @param pDigest A digest, which is updated with the response body, or null.
+	 * @param pRecorder Receives a copy of the (decoded) response body for the archive, or null.
+	 * @param pExtracted Receives the values, which have been extracted from the response.
+	 * @param pMetrics The requests metrics, which receive the transfer time.
+	 * @param pStartTime The time, when the request has been started.
+	 * @return The requests outcome.
+	 * @throws IOException Reading the response failed, or the response status indicates
+	 *   a temporary failure ({@link RetryPolicy.RetryableStatusException}).
+	 * @throws MojoExecutionException The response status indicates a permanent failure.
+	 */
+	protected RequestResult processResponse(RequestDefinition pRequest, HttpURLConnection pUrlConnection,
+			ResponseCache pResponseCache, String pCacheKey, ResponseCache.Entry pCachedResponse, MessageDigest pDigest,
+			OutputStream pRecorder, Map<String,String> pExtracted, RequestMetrics pMetrics, long pStartTime)
+			throws IOException, MojoExecutionException {
+		final URL url = pUrlConnection.getURL();
+		final Path outputFile = pRequest.getOutputFile();
+		final int statusCode  = pUrlConnection.getResponseCode();
+		final String statusMessage = pUrlConnection.getResponseMessage();
+		final long bytes;
+		long compressedBytes = -1;
+		final boolean notModified;
+		if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED  &&  pCachedResponse != null) {
+			getLog().info("Resource not modified, using cached response for " + url);
+			pResponseCache.restore(pCachedResponse, outputFile, cacheHardLinks);
+			extract(pRequest, outputFile, pExtracted);
+			bytes = pCachedResponse.getSize();
+			notModified = true;
+		} else if (statusCode >= 200  &&  statusCode < 300) {
+			getLog().debug("Response: " + statusCode + ", " + statusMessage);
+			notModified = false;
+			final long transferStart = System.nanoTime();
+			final String contentEncoding = compressed ? pUrlConnection.getContentEncoding() : null;
+			final ContentDecoding.CountingInputStream receivedIn =
+					new ContentDecoding.CountingInputStream(pUrlConnection.getInputStream());
+			final InputStream decodedIn = ContentDecoding.decode(receivedIn, contentEncoding);
+			final InputStream digestIn = pDigest == null ? decodedIn : new DigestInputStream(decodedIn, pDigest);
+			final InputStream responseIn = pRecorder == null ? digestIn : ResponseExtractor.tee(digestIn, pRecorder);
+			final ResponseExtractor extractor = getResponseExtractor(pRequest);
+			if (pResponseCache != null  &&  ResponseCache.isCacheable(pUrlConnection)) {
+				getLog().debug("Writing response to " + outputFile + " via response cache");
+				final ResponseCache.Entry entry = pResponseCache.store(pCacheKey, url, pUrlConnection,
+						(out) -> copyResponse(responseIn, out, extractor, pExtracted));
+				pResponseCache.restore(entry, outputFile, cacheHardLinks);
+				bytes = entry.getSize();
+			} else if (outputFile != null) {
+				getLog().debug("Writing response to " + outputFile);
+				FileUtils.createDirectoryFor(outputFile);
+				try (OutputStream out = Files.newOutputStream(outputFile)) {
+					copyResponse(responseIn, out, extractor, pExtracted);
+				}
+				bytes = Files.size(outputFile);
+			} else if (extractor != null) {
+				// Stop reading after the last match, unless the checksum, or the archive, requires the whole body.
+				try (InputStream in = responseIn) {
+					pExtracted.putAll(extractor.extract(in));
+					if (pDigest != null  ||  pRecorder != null) {
+						drain(in);
+					}
 				}
+				getLog().debug("Extracted " + pExtracted.size() + " values from the response, after reading "
+						+ receivedIn.getCount() + " bytes");
+				bytes = 0;
 			} else {
-				final String errorMsg = "Response error: " + statusCode + ", " + statusMessage;
+				getLog().debug("Writing response to System.out");
+				bytes = writeAtOnce(responseIn, System.out);
+			}
+			pMetrics.setTransferMillis(RequestMetrics.toMillis(System.nanoTime() - transferStart));
+			pMetrics.setReceivedBytes(receivedIn.getCount());
+			if (decodedIn != receivedIn) {
+				compressedBytes = receivedIn.getCount();
+				getLog().info("Received " + compressedBytes + " bytes (" + contentEncoding + "), "
+						+ bytes + " bytes uncompressed");
+			}
+		} else {
+			final String errorMsg = "Response error: " + statusCode + ", " + statusMessage;
+			final boolean retryable = RetryPolicy.isRetryableStatus(statusCode);
+			if (!retryable) {
 				getLog().error(errorMsg);
-				if (getLog().isDebugEnabled()) {
-					getLog().error("Writing response to System.err");
-					Streams.copy(urlConnection.getErrorStream(), System.err);
-				}
-				throw new MojoExecutionException(errorMsg);
 			}
-		} catch (IOException ioe) {
-			throw new MojoExecutionException(ioe);
+			if (getLog().isDebugEnabled()) {
+				getLog().error("Writing response to System.err");
+				writeAtOnce(pUrlConnection.getErrorStream(), System.err);
+			} else {
+				drain(pUrlConnection.getErrorStream());
+			}
+			if (retryable) {
+				throw new RetryPolicy.RetryableStatusException(errorMsg, statusCode,
+						RetryPolicy.parseRetryAfter(pUrlConnection.getHeaderField("Retry-After")));
+			}
+			throw new MojoExecutionException(errorMsg);
 		}
+		return new RequestResult(pRequest, statusCode, bytes, compressedBytes, System.currentTimeMillis() - pStartTime,
+				notModified, pMetrics);
 	}
 
 }
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.github.jochenw.afw.core.util.FileUtils;
+
+
+/**
+ * Collects the outcome, and the metrics of the requests in an execution. The
+ * collected data is summarized by host in the Maven log, and appended to a
+ * report file, with one JSON object per request, and line.
+ */
+public class MetricsReport {
+	private static final Object LOCK = new Object();
+
+	private static class Failure {
+		private final RequestDefinition request;
+		private final String message;
+
+		Failure(RequestDefinition pRequest, String pMessage) {
+			request = pRequest;
+			message = pMessage;
+		}
+	}
+
+	private static class HostSummary {
+		private int requests, failures, ttfbCount;
+		private long bytes, receivedBytes, transferMillis, ttfbMillis, maxMillis;
+	}
+
+	private final List<RequestResult> results = new ArrayList<>();
+	private final List<Failure> failures = new ArrayList<>();
+
+	public synchronized void add(RequestResult pResult) {
+		results.add(pResult);
+	}
+
+	public synchronized void addFailure(RequestDefinition pRequest, String pMessage) {
+		failures.add(new Failure(pRequest, pMessage));
+	}
+
+	private static String getHost(String pUrl) {
+		try {
+			return getHost(new URL(pUrl));
+		} catch (MalformedURLException e) {
+			return pUrl;
+		}
+	}
+
+	private static String getHost(URL pUrl) {
+		final int port = pUrl.getPort() == -1 ? pUrl.getDefaultPort() : pUrl.getPort();
+		return pUrl.getProtocol() + "://" + pUrl.getHost() + ":" + port;
+	}
+
+	private static String getUrl(RequestResult pResult) {
+		final RequestMetrics metrics = pResult.getMetrics();
+		return metrics == null ? pResult.getRequest().getUrl() : metrics.getUrl().toExternalForm();
+	}
+
+	/**
+	 * Logs a summary of the collected requests, grouped by host.
+	 * @param pLog The log.
+	 */
+	public synchronized void log(Log pLog) {
+		final Map<String,HostSummary> hosts = new LinkedHashMap<>();
+		for (RequestResult result : results) {
+			final HostSummary summary = hosts.computeIfAbsent(getHost(getUrl(result)), (h) -> new HostSummary());
+			summary.requests++;
+			summary.bytes += Math.max(0, result.getBytes());
+			summary.maxMillis = Math.max(summary.maxMillis, result.getMillis());
+			final RequestMetrics metrics = result.getMetrics();
+			if (metrics != null) {
+				if (metrics.getTtfbMillis() >= 0) {
+					summary.ttfbMillis += metrics.getTtfbMillis();
+					summary.ttfbCount++;
+				}
+				if (metrics.getReceivedBytes() >= 0  &&  metrics.getTransferMillis() >= 0) {
+					summary.receivedBytes += metrics.getReceivedBytes();
+					summary.transferMillis += metrics.getTransferMillis();
+				}
+			}
+		}
+		for (Failure failure : failures) {
+			final HostSummary summary = hosts.computeIfAbsent(getHost(failure.request.getUrl()), (h) -> new HostSummary());
+			summary.requests++;
+			summary.failures++;
+		}
+		pLog.info("Request metrics by host:");
+		for (Map.Entry<String,HostSummary> en : hosts.entrySet()) {
+			final HostSummary summary = en.getValue();
+			final StringBuilder sb = new StringBuilder("  ").append(en.getKey()).append(": ")
+					.append(summary.requests).append(" requests, ")
+					.append(summary.failures).append(" failed, ")
+					.append(summary.bytes).append(" bytes");
+			if (summary.ttfbCount > 0) {
+				sb.append(", avg ttfb=").append(summary.ttfbMillis / summary.ttfbCount).append("ms");
+			}
+			sb.append(", max time=").append(summary.maxMillis).append("ms");
+			if (summary.transferMillis > 0) {
+				sb.append(", throughput=").append(RequestMetrics.formatThroughput(
+						summary.receivedBytes * 1000.0 / summary.transferMillis));
+			}
+			pLog.info(sb.toString());
+		}
+	}
+
+	/**
+	 * Appends the collected requests to the given report file.
+	 * @param pFile The report file.
+	 * @param pProject The current project, or null.
+	 * @param pExecutionId The current executions id, or null.
+	 * @throws IOException Writing the report failed.
+	 */
+	public void write(Path pFile, String pProject, String pExecutionId) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		final String timestamp = Instant.now().toString();
+		synchronized (this) {
+			for (RequestResult result : results) {
+				final RequestMetrics metrics = result.getMetrics();
+				final Map<String,Object> map = newRecord(timestamp, pProject, pExecutionId, result.getRequest());
+				map.put("url", getUrl(result));
+				map.put("status", result.isSkipped() ? "skipped" : result.isNotModified() ? "cached" : "ok");
+				map.put("statusCode", result.isSkipped() ? null : Integer.valueOf(result.getStatusCode()));
+				map.put("bytes", Long.valueOf(result.getBytes()));
+				map.put("millis", Long.valueOf(result.getMillis()));
+				if (metrics != null) {
+					map.put("receivedBytes", orNull(metrics.getReceivedBytes()));
+					map.put("dnsMillis", orNull(metrics.getDnsMillis()));
+					map.put("connectMillis", orNull(metrics.getConnectMillis()));
+					map.put("tlsMillis", orNull(metrics.getTlsMillis()));
+					map.put("ttfbMillis", orNull(metrics.getTtfbMillis()));
+					map.put("transferMillis", orNull(metrics.getTransferMillis()));
+					final double throughput = metrics.getThroughput();
+					map.put("bytesPerSecond", throughput < 0 ? null : Long.valueOf((long) throughput));
+					map.put("attempts", Integer.valueOf(metrics.getAttempts()));
+				}
+				appendJson(sb, map);
+			}
+			for (Failure failure : failures) {
+				final Map<String,Object> map = newRecord(timestamp, pProject, pExecutionId, failure.request);
+				map.put("url", failure.request.getUrl());
+				map.put("status", "failed");
+				map.put("error", failure.message);
+				appendJson(sb, map);
+			}
+		}
+		// Parallel builds may report to the same file.
+		synchronized (LOCK) {
+			FileUtils.createDirectoryFor(pFile);
+			try (Writer w = Files.newBufferedWriter(pFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND)) {
+				w.write(sb.toString());
+			}
+		}
+	}
+
+	private static Map<String,Object> newRecord(String pTimestamp, String pProject, String pExecutionId,
+			RequestDefinition pRequest) {
+		final Map<String,Object> map = new LinkedHashMap<>();
+		map.put("timestamp", pTimestamp);
+		map.put("project", pProject);
+		map.put("execution", pExecutionId);
+		map.put("id", pRequest.getId());
+		return map;
+	}
+
+	private static Long orNull(long pValue) {
+		return pValue < 0 ? null : Long.valueOf(pValue);
+	}
+
+	private static void appendJson(StringBuilder pSb, Map<String,Object> pMap) {
+		pSb.append('{');
+		boolean first = true;
+		for (Map.Entry<String,Object> en : pMap.entrySet()) {
+			if (en.getValue() == null) {
+				continue;
+			}
+			if (!first) {
+				pSb.append(", ");
+			}
+			first = false;
+			appendJsonString(pSb, en.getKey());
+			pSb.append(": ");
+			if (en.getValue() instanceof Number) {
+				pSb.append(en.getValue());
+			} else {
+				appendJsonString(pSb, en.getValue().toString());
+			}
+		}
+		pSb.append("}\n");
+	}
+
+	private static void appendJsonString(StringBuilder pSb, String pValue) {
+		pSb.append('"');
+		for (int i = 0;  i < pValue.length();  i++) {
+			final char c = pValue.charAt(i);
+			switch (c) {
+			case '"': pSb.append("\\\""); break;
+			case '\\': pSb.append("\\\\"); break;
+			case '\n': pSb.append("\\n"); break;
+			case '\r': pSb.append("\\r"); break;
+			case '\t': pSb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					pSb.append(String.format(Locale.ROOT, "\\u%04x", Integer.valueOf(c)));
+				} else {
+					pSb.append(c);
+				}
+			}
+		}
+		pSb.append('"');
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.github.jochenw.afw.core.util.FileUtils;
+import com.github.jochenw.afw.core.util.HttpConnector.HttpConnection;
+
+
+/**
+ * Downloads a large resource by fetching byte ranges in parallel. The ranges
+ * are written into a preallocated part file, next to the output file. A small
+ * state file records the completed ranges, so that an interrupted download can
+ * be resumed. When all ranges are complete, the part file is moved into place.
+ */
+public class RangeDownloader {
+	private static final String PART_SUFFIX = ".part";
+	private static final String STATE_SUFFIX = ".part.properties";
+
+	/**
+	 * Opens a connection to the resource, which is already configured with
+	 * the request headers. The connection must not be connected yet.
+	 */
+	public interface Connector {
+		HttpConnection connect() throws IOException;
+	}
+
+	private final URL url;
+	private final Path outputFile, partFile, stateFile;
+	private final long chunkSize;
+	private final int threads;
+	private final Connector connector;
+	private final Log log;
+	private long length;
+	private String etag, lastModified;
+	private BitSet completedChunks;
+
+	/**
+	 * Creates a new instance.
+	 * @param pUrl The resources URL.
+	 * @param pOutputFile The file, where the resource is written to.
+	 * @param pChunkSize The size of the ranges, which are fetched by a single request.
+	 * @param pThreads The maximum number of concurrent requests.
+	 * @param pConnector Opens the connections.
+	 * @param pLog The log.
+	 */
+	public RangeDownloader(URL pUrl, Path pOutputFile, long pChunkSize, int pThreads, Connector pConnector, Log pLog) {
+		url = pUrl;
+		outputFile = pOutputFile;
+		partFile = pOutputFile.resolveSibling(pOutputFile.getFileName() + PART_SUFFIX);
+		stateFile = pOutputFile.resolveSibling(pOutputFile.getFileName() + STATE_SUFFIX);
+		chunkSize = pChunkSize;
+		threads = pThreads;
+		connector = pConnector;
+		log = pLog;
+	}
+
+	public Path getPartFile() { return partFile; }
+	public Path getStateFile() { return stateFile; }
+
+	/**
+	 * Downloads the resource, resuming a previously interrupted download, if possible.
+	 * @return The resources length in bytes, or -1, if the server doesn't support
+	 *   range requests. In the latter case, nothing has been downloaded, and the
+	 *   caller should fall back to an ordinary request.
+	 * @throws IOException The download failed. The completed ranges are kept, so
+	 *   that the next attempt can resume.
+	 */
+	public long download() throws IOException {
+		if (!probe()) {
+			return -1;
+		}
+		final int numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+		if (!resume(numChunks)) {
+			completedChunks = new BitSet(numChunks);
+			FileUtils.createDirectoryFor(partFile);
+			Files.deleteIfExists(partFile);
+			saveState();
+		}
+		final int remainingChunks = numChunks - completedChunks.cardinality();
+		log.debug("Downloading " + url + ": " + length + " bytes, " + remainingChunks + " of " + numChunks
+				+ " chunks remaining");
+		try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			// Preallocate the file, so that ranges can be written in any order.
+			if (channel.size() > length) {
+				channel.truncate(length);
+			} else if (channel.size() < length) {
+				channel.write(ByteBuffer.wrap(new byte[1]), length-1);
+			}
+			if (remainingChunks > 0) {
+				downloadChunks(channel, numChunks, Math.max(1, Math.min(threads, remainingChunks)));
+			}
+			channel.force(true);
+		}
+		try {
+			Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.deleteIfExists(stateFile);
+		return length;
+	}
+
+	private void downloadChunks(FileChannel pChannel, int pNumChunks, int pThreads) throws IOException {
+		final AtomicInteger counter = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(pThreads, (r) -> {
+			final Thread t = new Thread(r, "jwicrl-range-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			// After a failure, pending chunks are skipped. Running chunks are not interrupted,
+			// because that would close the channel: They complete, and can be reused on resume.
+			final AtomicBoolean aborted = new AtomicBoolean();
+			final List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0;  i < pNumChunks;  i++) {
+				if (!isCompleted(i)) {
+					final int chunk = i;
+					futures.add(executor.submit(() -> {
+						if (!aborted.get()) {
+							try {
+								downloadChunk(pChannel, chunk);
+							} catch (IOException|RuntimeException e) {
+								aborted.set(true);
+								throw e;
+							}
+						}
+						return null;
+					}));
+				}
+			}
+			IOException error = null;
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (error == null) {
+						error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+								: new IOException(e.getCause().getMessage(), e.getCause());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while downloading " + url, e);
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void downloadChunk(FileChannel pChannel, int pChunk) throws IOException {
+		final long from = pChunk * chunkSize;
+		final long to = Math.min(length, from + chunkSize) - 1;
+		try (HttpConnection httpConnection = connector.connect()) {
+			final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
+			urlConnection.setRequestProperty("Range", "bytes=" + from + "-" + to);
+			// If the resource has changed, the server sends the complete resource,
+			// rather than the range, which is detected below.
+			if (etag != null  &&  !etag.startsWith("W/")) {
+				urlConnection.setRequestProperty("If-Range", etag);
+			} else if (lastModified != null) {
+				urlConnection.setRequestProperty("If-Range", lastModified);
+			}
+			final int statusCode = urlConnection.getResponseCode();
+			if (statusCode == HttpURLConnection.HTTP_OK) {
+				Files.deleteIfExists(stateFile);
+				throw new IOException("Expected status " + HttpURLConnection.HTTP_PARTIAL + " for range " + from
+						+ "-" + to + " of " + url + ", got " + statusCode
+						+ " (the resource has changed, the download will be restarted)");
+			} else if (statusCode != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException("Expected status " + HttpURLConnection.HTTP_PARTIAL + " for range " + from
+						+ "-" + to + " of " + url + ", got " + statusCode);
+			}
+			try (InputStream in = urlConnection.getInputStream();
+				 ReadableByteChannel source = Channels.newChannel(in)) {
+				long position = from;
+				while (position <= to) {
+					final long transferred = pChannel.transferFrom(source, position, to - position + 1);
+					if (transferred <= 0) {
+						throw new IOException("Premature end of range " + from + "-" + to + " of " + url
+								+ " at position " + position);
+					}
+					position += transferred;
+				}
+			}
+		}
+		pChannel.force(false);
+		markCompleted(pChunk);
+	}
+
+	private synchronized boolean isCompleted(int pChunk) {
+		return completedChunks.get(pChunk);
+	}
+
+	private synchronized void markCompleted(int pChunk) throws IOException {
+		completedChunks.set(pChunk);
+		saveState();
+	}
+
+	private boolean probe() throws IOException {
+		try (HttpConnection httpConnection = connector.connect()) {
+			final HttpURLConnection urlConnection = httpConnection.getUrlConnection();
+			urlConnection.setRequestMethod("HEAD");
+			final int statusCode = urlConnection.getResponseCode();
+			if (statusCode != HttpURLConnection.HTTP_OK) {
+				log.debug("Range download: HEAD request returned status " + statusCode + ", ranges not used");
+				return false;
+			}
+			final String acceptRanges = urlConnection.getHeaderField("Accept-Ranges");
+			length = urlConnection.getContentLengthLong();
+			if (acceptRanges == null  ||  !"bytes".equalsIgnoreCase(acceptRanges.trim())  ||  length <= 0) {
+				log.debug("Range download: Server doesn't support byte ranges for " + url + ", ranges not used");
+				return false;
+			}
+			etag = urlConnection.getHeaderField("ETag");
+			lastModified = urlConnection.getHeaderField("Last-Modified");
+			return true;
+		}
+	}
+
+	private boolean resume(int pNumChunks) throws IOException {
+		if (!Files.isRegularFile(stateFile)  ||  !Files.isRegularFile(partFile)) {
+			return false;
+		}
+		final Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(stateFile)) {
+			props.load(in);
+		}
+		if (!url.toExternalForm().equals(props.getProperty("url"))
+				||  !String.valueOf(length).equals(props.getProperty("length"))
+				||  !String.valueOf(chunkSize).equals(props.getProperty("chunkSize"))
+				||  !String.valueOf(etag).equals(props.getProperty("etag"))
+				||  !String.valueOf(lastModified).equals(props.getProperty("lastModified"))) {
+			log.info("Range download: The resource, or the settings, have changed, restarting download of " + url);
+			return false;
+		}
+		completedChunks = new BitSet(pNumChunks);
+		final String completed = props.getProperty("completed", "");
+		for (String s : completed.split(",")) {
+			if (s.length() > 0) {
+				completedChunks.set(Integer.parseInt(s));
+			}
+		}
+		log.info("Range download: Resuming download of " + url + ", " + completedChunks.cardinality()
+				+ " of " + pNumChunks + " chunks are already complete");
+		return true;
+	}
+
+	private void saveState() throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("url", url.toExternalForm());
+		props.setProperty("length", String.valueOf(length));
+		props.setProperty("chunkSize", String.valueOf(chunkSize));
+		props.setProperty("etag", String.valueOf(etag));
+		props.setProperty("lastModified", String.valueOf(lastModified));
+		final StringBuilder sb = new StringBuilder();
+		for (int i = completedChunks.nextSetBit(0);  i >= 0;  i = completedChunks.nextSetBit(i+1)) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(i);
+		}
+		props.setProperty("completed", sb.toString());
+		final Path tempFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			props.store(out, null);
+		}
+		Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
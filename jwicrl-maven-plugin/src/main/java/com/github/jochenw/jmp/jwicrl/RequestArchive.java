@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A local archive of recorded responses, which allows to replay requests
+ * without network access. The archive consists of two files:
+ * <ul>
+ *   <li>{@code archive.dat}: An append-only data file. Every record consists of a
+ *     header (magic number, request key, status code, recording time, and body
+ *     length), followed by the response body.</li>
+ *   <li>{@code archive.idx}: An append-only index with fixed size entries (request
+ *     key, and offset of the record). The index is loaded into a hash map, and
+ *     rebuilt from the data file, if it is missing.</li>
+ * </ul>
+ * A request, which is recorded again, is appended, and the index entry of the
+ * new record replaces the previous one. Response bodies are read via memory
+ * mapping. Concurrent writers (threads, or processes) are serialized by a lock
+ * on the data file. An archive is shared by all executions within the JVM.
+ */
+public class RequestArchive {
+	/**
+	 * The archive modes.
+	 */
+	public enum Mode {
+		/** The archive isn't used. */
+		OFF,
+		/** Every request is sent, and the response is recorded. */
+		RECORD,
+		/** Responses are taken from the archive, no requests are sent. */
+		REPLAY,
+		/** Responses are taken from the archive, if present, otherwise recorded. */
+		AUTO;
+
+		/**
+		 * Parses the given parameter value.
+		 * @param pValue The parameter value, for example "replay", or null.
+		 * @return The mode, OFF, if the value is null, or empty.
+		 * @throws IllegalArgumentException The value is invalid.
+		 */
+		public static Mode of(String pValue) {
+			if (pValue == null  ||  pValue.trim().length() == 0) {
+				return OFF;
+			}
+			try {
+				return valueOf(pValue.trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Expected off, record, replay, or auto, got " + pValue);
+			}
+		}
+	}
+
+	/**
+	 * An archived response.
+	 */
+	public static class Entry {
+		private final Path dataFile;
+		private final int statusCode;
+		private final long recordedAt, bodyOffset, bodyLength;
+
+		Entry(Path pDataFile, int pStatusCode, long pRecordedAt, long pBodyOffset, long pBodyLength) {
+			dataFile = pDataFile;
+			statusCode = pStatusCode;
+			recordedAt = pRecordedAt;
+			bodyOffset = pBodyOffset;
+			bodyLength = pBodyLength;
+		}
+
+		public int getStatusCode() { return statusCode; }
+
+		/**
+		 * Returns the time, when the response has been recorded.
+		 * @return The recording time in milliseconds since the epoch.
+		 */
+		public long getRecordedAt() { return recordedAt; }
+		public long getBodyLength() { return bodyLength; }
+
+		/**
+		 * Opens the response body.
+		 * @return A stream, which reads the body from the memory mapped data file.
+		 */
+		public InputStream openBody() {
+			return new MappedInputStream(dataFile, bodyOffset, bodyOffset + bodyLength);
+		}
+	}
+
+	/**
+	 * Reads a region of a file through memory mappings of limited size, so that
+	 * bodies of any size can be read without copying them onto the heap.
+	 */
+	static class MappedInputStream extends InputStream {
+		private static final long WINDOW_SIZE = 64*1024*1024;
+		private final Path file;
+		private final long end;
+		private long position;
+		private MappedByteBuffer buffer;
+
+		MappedInputStream(Path pFile, long pStart, long pEnd) {
+			file = pFile;
+			position = pStart;
+			end = pEnd;
+		}
+
+		private boolean hasRemaining() throws IOException {
+			while (buffer == null  ||  !buffer.hasRemaining()) {
+				if (position >= end) {
+					return false;
+				}
+				final long size = Math.min(WINDOW_SIZE, end - position);
+				// The mapping remains valid after the channel is closed.
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+				}
+				position += size;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+			if (pLength == 0) {
+				return 0;
+			}
+			if (!hasRemaining()) {
+				return -1;
+			}
+			final int length = Math.min(pLength, buffer.remaining());
+			buffer.get(pBuffer, pOffset, length);
+			return length;
+		}
+
+		@Override
+		public int available() {
+			return buffer == null ? 0 : buffer.remaining();
+		}
+
+		@Override
+		public void close() {
+			buffer = null;
+			position = end;
+		}
+	}
+
+	static final String DATA_FILE = "archive.dat";
+	static final String INDEX_FILE = "archive.idx";
+	private static final int MAGIC = 0x4A435241;
+	private static final int KEY_SIZE = 32;
+	private static final int HEADER_SIZE = 4 + KEY_SIZE + 4 + 8 + 8;
+	private static final int INDEX_ENTRY_SIZE = KEY_SIZE + 8;
+	private static final Map<Path,RequestArchive> ARCHIVES = new ConcurrentHashMap<>();
+
+	private final Path dataFile, indexFile;
+	private final Map<String,Long> index = new HashMap<>();
+	private long indexSize;
+
+	RequestArchive(Path pDirectory) {
+		dataFile = pDirectory.resolve(DATA_FILE);
+		indexFile = pDirectory.resolve(INDEX_FILE);
+	}
+
+	/**
+	 * Returns the archive in the given directory.
+	 * @param pDirectory The archive directory.
+	 * @return The archive, which is shared within the JVM.
+	 */
+	public static RequestArchive of(Path pDirectory) {
+		return ARCHIVES.computeIfAbsent(pDirectory.toAbsolutePath().normalize(), RequestArchive::new);
+	}
+
+	/**
+	 * Returns the archive key of a request.
+	 * @param pRequestKey The request key, as returned by
+	 *   {@link ResponseCache#getKey(String, java.net.URL, Map, String)}.
+	 * @param pBodyDigest The hex encoded SHA-256 digest of the request body, or null.
+	 * @return The archive key, a hex encoded SHA-256 digest.
+	 */
+	public static String getKey(String pRequestKey, String pBodyDigest) {
+		if (pBodyDigest == null) {
+			return pRequestKey;
+		}
+		final String key = pRequestKey + "\nbody: " + pBodyDigest;
+		return ResponseCache.toHex(ResponseCache.sha256(key.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Returns the archived response for the given key.
+	 * @param pKey The archive key.
+	 * @return The archived response, or null.
+	 * @throws IOException Reading the archive failed.
+	 */
+	public synchronized Entry get(String pKey) throws IOException {
+		Long offset = index.get(pKey);
+		if (offset == null) {
+			// Another process may have recorded the response in the meantime.
+			readIndex();
+			offset = index.get(pKey);
+			if (offset == null) {
+				return null;
+			}
+		}
+		try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, offset.longValue());
+			header.flip();
+			final byte[] key = new byte[KEY_SIZE];
+			if (header.getInt() != MAGIC  ||  !pKey.equals(ResponseCache.toHex(getBytes(header, key)))) {
+				throw new IOException("Invalid record at offset " + offset + " of archive " + dataFile);
+			}
+			final int statusCode = header.getInt();
+			final long recordedAt = header.getLong();
+			final long bodyLength = header.getLong();
+			final long bodyOffset = offset.longValue() + HEADER_SIZE;
+			if (bodyOffset + bodyLength > channel.size()) {
+				throw new IOException("Truncated record at offset " + offset + " of archive " + dataFile);
+			}
+			return new Entry(dataFile, statusCode, recordedAt, bodyOffset, bodyLength);
+		}
+	}
+
+	/**
+	 * Records a response.
+	 * @param pKey The archive key.
+	 * @param pStatusCode The response status.
+	 * @param pBody A file with the response body.
+	 * @throws IOException Writing the archive failed.
+	 */
+	public synchronized void put(String pKey, int pStatusCode, Path pBody) throws IOException {
+		final Path dir = dataFile.getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			 FileLock lock = data.lock();
+			 FileChannel body = FileChannel.open(pBody, StandardOpenOption.READ)) {
+			// Read the entries of concurrent writers first, so that the index stays in sync.
+			readIndex();
+			final long offset = data.size();
+			final long bodyLength = body.size();
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).put(fromHex(pKey)).putInt(pStatusCode).putLong(System.currentTimeMillis())
+				.putLong(bodyLength);
+			header.flip();
+			writeFully(data, header, offset);
+			long transferred = 0;
+			while (transferred < bodyLength) {
+				final long count = data.transferFrom(body, offset + HEADER_SIZE + transferred, bodyLength - transferred);
+				if (count <= 0) {
+					throw new EOFException("Unexpected end of file: " + pBody);
+				}
+				transferred += count;
+				body.position(transferred);
+			}
+			try (FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+				entry.put(fromHex(pKey)).putLong(offset);
+				entry.flip();
+				writeFully(idx, entry, indexSize);
+				indexSize += INDEX_ENTRY_SIZE;
+			}
+			index.put(pKey, Long.valueOf(offset));
+		}
+	}
+
+	/**
+	 * Reads the index entries, which have been added since the last call. If the
+	 * index is missing, but the data file is present, the index is rebuilt.
+	 * @throws IOException Reading the index failed.
+	 */
+	protected void readIndex() throws IOException {
+		if (!Files.isRegularFile(indexFile)) {
+			index.clear();
+			indexSize = 0;
+			if (Files.isRegularFile(dataFile)) {
+				rebuildIndex();
+			}
+			return;
+		}
+		try (FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			final long size = idx.size() - idx.size() % INDEX_ENTRY_SIZE;
+			if (size < indexSize) {
+				// The archive has been replaced.
+				index.clear();
+				indexSize = 0;
+			}
+			if (size > indexSize) {
+				final ByteBuffer entries = ByteBuffer.allocate((int) (size - indexSize));
+				readFully(idx, entries, indexSize);
+				entries.flip();
+				final byte[] key = new byte[KEY_SIZE];
+				while (entries.remaining() >= INDEX_ENTRY_SIZE) {
+					final String hexKey = ResponseCache.toHex(getBytes(entries, key));
+					index.put(hexKey, Long.valueOf(entries.getLong()));
+				}
+				indexSize = size;
+			}
+		}
+	}
+
+	private void rebuildIndex() throws IOException {
+		try (FileChannel data = FileChannel.open(dataFile, StandardOpenOption.READ);
+			 FileChannel idx = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					 StandardOpenOption.TRUNCATE_EXISTING)) {
+			final long size = data.size();
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+			final byte[] key = new byte[KEY_SIZE];
+			long offset = 0;
+			while (offset + HEADER_SIZE <= size) {
+				header.clear();
+				readFully(data, header, offset);
+				header.flip();
+				if (header.getInt() != MAGIC) {
+					break;
+				}
+				getBytes(header, key);
+				header.getInt();
+				header.getLong();
+				final long bodyLength = header.getLong();
+				if (offset + HEADER_SIZE + bodyLength > size) {
+					// An incomplete record of an interrupted writer.
+					break;
+				}
+				entry.clear();
+				entry.put(key).putLong(offset);
+				entry.flip();
+				writeFully(idx, entry, indexSize);
+				indexSize += INDEX_ENTRY_SIZE;
+				index.put(ResponseCache.toHex(key), Long.valueOf(offset));
+				offset += HEADER_SIZE + bodyLength;
+			}
+		}
+	}
+
+	private static byte[] getBytes(ByteBuffer pBuffer, byte[] pBytes) {
+		pBuffer.get(pBytes);
+		return pBytes;
+	}
+
+	private static byte[] fromHex(String pHex) {
+		if (pHex.length() != KEY_SIZE*2) {
+			throw new IllegalArgumentException("Invalid archive key: " + pHex);
+		}
+		final byte[] bytes = new byte[KEY_SIZE];
+		for (int i = 0;  i < bytes.length;  i++) {
+			bytes[i] = (byte) Integer.parseInt(pHex.substring(2*i, 2*i+2), 16);
+		}
+		return bytes;
+	}
+
+	private static void readFully(FileChannel pChannel, ByteBuffer pBuffer, long pPosition) throws IOException {
+		long position = pPosition;
+		while (pBuffer.hasRemaining()) {
+			final int res = pChannel.read(pBuffer, position);
+			if (res == -1) {
+				throw new EOFException("Unexpected end of file at offset " + position);
+			}
+			position += res;
+		}
+	}
+
+	private static void writeFully(FileChannel pChannel, ByteBuffer pBuffer, long pPosition) throws IOException {
+		long position = pPosition;
+		while (pBuffer.hasRemaining()) {
+			position += pChannel.write(pBuffer, position);
+		}
+	}
+}
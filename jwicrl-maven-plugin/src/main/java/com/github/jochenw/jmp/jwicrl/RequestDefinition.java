@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An entry of the request goals {@code requests} parameter: A single request,
+ * which is executed concurrently with the other entries.
+ */
+public class RequestDefinition {
+	private String id;
+	private String url;
+	private List<String> mirrors;
+	private String method;
+	private Map<String,String> headers;
+	private Map<String,String> queryParameters;
+	private Path outputFile;
+	private Path bodyFile;
+	private String bodyText;
+	private String checksum;
+	private String checksumUrl;
+	private Map<String,String> extract;
+
+	public RequestDefinition() {
+	}
+
+	RequestDefinition(String pUrl, String pMethod, Map<String,String> pHeaders,
+			Map<String,String> pQueryParameters, Path pOutputFile) {
+		url = pUrl;
+		method = pMethod;
+		headers = pHeaders;
+		queryParameters = pQueryParameters;
+		outputFile = pOutputFile;
+	}
+
+	/**
+	 * Returns the requests id, which is used for reporting. Defaults to the url.
+	 * @return The requests id.
+	 */
+	public String getId() {
+		return id == null ? url : id;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns the mirror URLs, which serve the same resource as the url.
+	 * @return The mirror URLs, or null to use the goals {@code mirrors}.
+	 */
+	public List<String> getMirrors() {
+		return mirrors;
+	}
+
+	/**
+	 * Returns the request method.
+	 * @return The request method, or null to use the goals {@code method}.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the request headers. These are added to (and override) the goals
+	 * {@code headers}.
+	 * @return The request headers, or null.
+	 */
+	public Map<String,String> getHeaders() {
+		return headers;
+	}
+
+	public Map<String,String> getQueryParameters() {
+		return queryParameters;
+	}
+
+	/**
+	 * Returns the file, where the response is written to.
+	 * @return The output file, or null to write the response to System.out.
+	 */
+	public Path getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * Returns the file, which is sent as the request body.
+	 * @return The body file, or null to use the goals {@code bodyFile}, or {@code bodyText}.
+	 */
+	public Path getBodyFile() {
+		return bodyFile;
+	}
+
+	/**
+	 * Returns the text, which is sent as the request body.
+	 * @return The body text, or null to use the goals {@code bodyFile}, or {@code bodyText}.
+	 */
+	public String getBodyText() {
+		return bodyText;
+	}
+
+	/**
+	 * Returns the expected checksum of the response body.
+	 * @return The checksum, or null to use the goals {@code checksum}, or {@code checksumUrl}.
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Returns the URL of a checksum file, which contains the expected checksum.
+	 * @return The checksum files URL, or null to use the goals {@code checksum}, or {@code checksumUrl}.
+	 */
+	public String getChecksumUrl() {
+		return checksumUrl;
+	}
+
+	/**
+	 * Returns the expressions, which extract values from the response into project properties.
+	 * @return The expressions, keyed by property name, or null to use the goals {@code extract}.
+	 */
+	public Map<String,String> getExtract() {
+		return extract;
+	}
+}
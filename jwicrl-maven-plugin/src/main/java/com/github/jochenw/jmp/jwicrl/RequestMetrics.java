@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.net.URL;
+import java.util.Locale;
+
+
+/**
+ * The latency breakdown of a single request: The time, which has been spent
+ * for DNS lookup, TCP connect, TLS handshake, waiting for the response (time
+ * to first byte), and transferring the response body. Times are in
+ * milliseconds, with -1 meaning "not measured", for example, because the
+ * connection has been reused.
+ */
+public class RequestMetrics {
+	private final URL url;
+	private long dnsMillis = -1, connectMillis = -1, tlsMillis = -1, ttfbMillis = -1, transferMillis = -1;
+	private long receivedBytes = -1;
+	private long requestSentNanos;
+	private int attempts = 1;
+
+	/**
+	 * Creates a new instance.
+	 * @param pUrl The URL, which has actually been requested (possibly a mirror).
+	 */
+	public RequestMetrics(URL pUrl) {
+		url = pUrl;
+	}
+
+	public URL getUrl() { return url; }
+	public long getDnsMillis() { return dnsMillis; }
+	public void setDnsMillis(long pMillis) { dnsMillis = pMillis; }
+	public long getConnectMillis() { return connectMillis; }
+	public void setConnectMillis(long pMillis) { connectMillis = pMillis; }
+	public long getTlsMillis() { return tlsMillis; }
+	public void setTlsMillis(long pMillis) { tlsMillis = pMillis; }
+	public long getTtfbMillis() { return ttfbMillis; }
+	public void setTtfbMillis(long pMillis) { ttfbMillis = pMillis; }
+	public long getTransferMillis() { return transferMillis; }
+	public void setTransferMillis(long pMillis) { transferMillis = pMillis; }
+
+	/**
+	 * Returns the number of bytes, which have been received, before decoding.
+	 * @return The size of the response body, as transferred, or -1.
+	 */
+	public long getReceivedBytes() { return receivedBytes; }
+	public void setReceivedBytes(long pBytes) { receivedBytes = pBytes; }
+	public int getAttempts() { return attempts; }
+	public void setAttempts(int pAttempts) { attempts = pAttempts; }
+
+	/**
+	 * Records, that the request has been sent, so that the time to first byte can be computed.
+	 */
+	public void requestSent() { requestSentNanos = System.nanoTime(); }
+
+	/**
+	 * Records, that the response headers have been received.
+	 */
+	public void responseReceived() {
+		if (requestSentNanos != 0) {
+			ttfbMillis = toMillis(System.nanoTime() - requestSentNanos);
+		}
+	}
+
+	/**
+	 * Returns the transfer rate of the response body.
+	 * @return The throughput in bytes per second, or -1, if it isn't known.
+	 */
+	public double getThroughput() {
+		if (receivedBytes < 0  ||  transferMillis <= 0) {
+			return -1;
+		}
+		return receivedBytes * 1000.0 / transferMillis;
+	}
+
+	static long toMillis(long pNanos) {
+		return pNanos / 1000000L;
+	}
+
+	/**
+	 * Formats a transfer rate.
+	 * @param pBytesPerSecond The transfer rate in bytes per second.
+	 * @return The formatted transfer rate, for example "1.5 MB/s".
+	 */
+	public static String formatThroughput(double pBytesPerSecond) {
+		if (pBytesPerSecond >= 1024*1024) {
+			return String.format(Locale.ROOT, "%.1f MB/s", pBytesPerSecond / (1024*1024));
+		} else if (pBytesPerSecond >= 1024) {
+			return String.format(Locale.ROOT, "%.1f KB/s", pBytesPerSecond / 1024);
+		} else {
+			return String.format(Locale.ROOT, "%.0f B/s", pBytesPerSecond);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		append(sb, "dns", dnsMillis);
+		append(sb, "connect", connectMillis);
+		append(sb, "tls", tlsMillis);
+		append(sb, "ttfb", ttfbMillis);
+		append(sb, "transfer", transferMillis);
+		final double throughput = getThroughput();
+		if (throughput >= 0) {
+			sb.append(sb.length() == 0 ? "" : ", ").append("throughput=").append(formatThroughput(throughput));
+		}
+		if (attempts > 1) {
+			sb.append(sb.length() == 0 ? "" : ", ").append("attempts=").append(attempts);
+		}
+		return sb.toString();
+	}
+
+	private void append(StringBuilder pSb, String pName, long pMillis) {
+		if (pMillis >= 0) {
+			pSb.append(pSb.length() == 0 ? "" : ", ").append(pName).append('=').append(pMillis).append("ms");
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+
+/**
+ * The outcome of a single request.
+ */
+public class RequestResult {
+	private final RequestDefinition request;
+	private final int statusCode;
+	private final long bytes;
+	private final long compressedBytes;
+	private final long millis;
+	private final boolean notModified;
+	private final boolean replayed;
+	private final RequestMetrics metrics;
+
+	RequestResult(RequestDefinition pRequest, int pStatusCode, long pBytes, long pMillis, boolean pNotModified) {
+		this(pRequest, pStatusCode, pBytes, -1, pMillis, pNotModified);
+	}
+
+	RequestResult(RequestDefinition pRequest, int pStatusCode, long pBytes, long pCompressedBytes, long pMillis,
+			boolean pNotModified) {
+		this(pRequest, pStatusCode, pBytes, pCompressedBytes, pMillis, pNotModified, null);
+	}
+
+	RequestResult(RequestDefinition pRequest, int pStatusCode, long pBytes, long pCompressedBytes, long pMillis,
+			boolean pNotModified, RequestMetrics pMetrics) {
+		this(pRequest, pStatusCode, pBytes, pCompressedBytes, pMillis, pNotModified, false, pMetrics);
+	}
+
+	private RequestResult(RequestDefinition pRequest, int pStatusCode, long pBytes, long pCompressedBytes,
+			long pMillis, boolean pNotModified, boolean pReplayed, RequestMetrics pMetrics) {
+		request = pRequest;
+		statusCode = pStatusCode;
+		bytes = pBytes;
+		compressedBytes = pCompressedBytes;
+		millis = pMillis;
+		notModified = pNotModified;
+		replayed = pReplayed;
+		metrics = pMetrics;
+	}
+
+	/**
+	 * Creates the result of a request, which has been skipped, because the
+	 * output file is already present, with the expected checksum.
+	 */
+	static RequestResult skipped(RequestDefinition pRequest, long pBytes, long pMillis, RequestMetrics pMetrics) {
+		return new RequestResult(pRequest, -1, pBytes, -1, pMillis, false, pMetrics);
+	}
+
+	/**
+	 * Creates the result of a request, which has been answered from the request archive.
+	 */
+	static RequestResult replayed(RequestDefinition pRequest, int pStatusCode, long pBytes, long pMillis,
+			RequestMetrics pMetrics) {
+		return new RequestResult(pRequest, pStatusCode, pBytes, -1, pMillis, false, true, pMetrics);
+	}
+
+	public RequestDefinition getRequest() { return request; }
+	public int getStatusCode() { return statusCode; }
+
+	/**
+	 * Returns the number of bytes, which have been written to the output.
+	 * @return The size of the response body.
+	 */
+	public long getBytes() { return bytes; }
+
+	/**
+	 * Returns the number of bytes, which have been received, if the response
+	 * body was compressed.
+	 * @return The size of the compressed response body, or -1, if the response
+	 *   wasn't compressed.
+	 */
+	public long getCompressedBytes() { return compressedBytes; }
+	public long getMillis() { return millis; }
+
+	/**
+	 * Returns, whether the response body has been taken from the response cache.
+	 * @return True, if the server responded with 304 (Not Modified).
+	 */
+	public boolean isNotModified() { return notModified; }
+
+	/**
+	 * Returns, whether the request has been skipped, because the output file
+	 * was already present, with the expected checksum.
+	 * @return True, if no request has been sent.
+	 */
+	public boolean isSkipped() { return statusCode == -1; }
+
+	/**
+	 * Returns, whether the response has been taken from the request archive.
+	 * @return True, if no request has been sent.
+	 */
+	public boolean isReplayed() { return replayed; }
+
+	/**
+	 * Returns the latency breakdown of the request.
+	 * @return The requests metrics, or null.
+	 */
+	public RequestMetrics getMetrics() { return metrics; }
+
+	/**
+	 * Returns a single line summary of the result.
+	 * @return A summary, which is suitable for logging.
+	 */
+	public String getSummary() {
+		if (isSkipped()) {
+			return "skipped (checksum matches), bytes=" + bytes + ", time=" + millis + "ms";
+		}
+		final String breakdown = metrics == null ? "" : metrics.toString();
+		return "status=" + statusCode + (notModified ? " (cached)" : "") + (replayed ? " (replayed)" : "") + ", bytes=" + bytes
+				+ (compressedBytes == -1 ? "" : ", compressed=" + compressedBytes) + ", time=" + millis + "ms"
+				+ (breakdown.length() == 0 ? "" : " (" + breakdown + ")");
+	}
+}
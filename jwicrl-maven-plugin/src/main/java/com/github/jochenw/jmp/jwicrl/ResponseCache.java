@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.github.jochenw.afw.core.util.Streams;
+
+
+/**
+ * A local cache of HTTP responses. For every cached response, the body, and the
+ * validators (ETag, and Last-Modified) are stored, so that later requests can
+ * be sent as conditional requests. The cache has a size limit: If it is exceeded,
+ * the least recently used entries are removed.
+ */
+public class ResponseCache {
+	private static final String BODY_SUFFIX = ".body";
+	private static final String INDEX_SUFFIX = ".properties";
+
+	/**
+	 * Writes a response body.
+	 */
+	public interface BodyWriter {
+		void write(OutputStream pOut) throws IOException;
+	}
+
+	/**
+	 * A cached response.
+	 */
+	public static class Entry {
+		private final Path bodyFile;
+		private final String etag, lastModified;
+		private final long size;
+
+		Entry(Path pBodyFile, String pEtag, String pLastModified, long pSize) {
+			bodyFile = pBodyFile;
+			etag = pEtag;
+			lastModified = pLastModified;
+			size = pSize;
+		}
+
+		public Path getBodyFile() { return bodyFile; }
+		public String getEtag() { return etag; }
+		public String getLastModified() { return lastModified; }
+		public long getSize() { return size; }
+
+		/**
+		 * Adds the headers If-None-Match, and If-Modified-Since to the given request.
+		 * @param pConnection The request.
+		 */
+		public void setConditionalHeaders(HttpURLConnection pConnection) {
+			if (etag != null) {
+				pConnection.setRequestProperty("If-None-Match", etag);
+			}
+			if (lastModified != null) {
+				pConnection.setRequestProperty("If-Modified-Since", lastModified);
+			}
+		}
+	}
+
+	private final Path directory;
+	private final long maxSize;
+	private final Log log;
+
+	/**
+	 * Creates a new instance.
+	 * @param pDirectory The cache directory.
+	 * @param pMaxSize The maximum size of all cached bodies in bytes.
+	 * @param pLog The plugins logger.
+	 */
+	public ResponseCache(Path pDirectory, long pMaxSize, Log pLog) {
+		directory = pDirectory;
+		maxSize = pMaxSize;
+		log = pLog;
+	}
+
+	/**
+	 * Parses a size, like "1024", "512K", "512M", or "2G".
+	 * @param pValue The value to parse.
+	 * @return The parsed size in bytes.
+	 * @throws NumberFormatException The value is invalid.
+	 */
+	public static long parseSize(String pValue) {
+		final String v = pValue.trim().toUpperCase(Locale.ROOT);
+		final long factor;
+		final String number;
+		if (v.endsWith("K")) {
+			factor = 1024L;
+			number = v.substring(0, v.length()-1);
+		} else if (v.endsWith("M")) {
+			factor = 1024L*1024L;
+			number = v.substring(0, v.length()-1);
+		} else if (v.endsWith("G")) {
+			factor = 1024L*1024L*1024L;
+			number = v.substring(0, v.length()-1);
+		} else {
+			factor = 1L;
+			number = v;
+		}
+		final long size = Long.parseLong(number.trim());
+		if (size < 0) {
+			throw new NumberFormatException("Negative size: " + pValue);
+		}
+		return size*factor;
+	}
+
+	/**
+	 * Computes the cache key for a request.
+	 * @param pMethod The request method.
+	 * @param pUrl The request URL.
+	 * @param pHeaders The request headers, or null.
+	 * @param pAuthUser The user name for basic authentication, or null.
+	 * @return The cache key, a hex encoded SHA-256 hash.
+	 */
+	public static String getKey(String pMethod, URL pUrl, Map<String,String> pHeaders, String pAuthUser) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(pMethod.toUpperCase(Locale.ROOT)).append('\n').append(pUrl).append('\n');
+		if (pHeaders != null) {
+			new TreeMap<>(pHeaders).forEach((k,v) -> sb.append(k.toLowerCase(Locale.ROOT)).append(": ").append(v).append('\n'));
+		}
+		if (pAuthUser != null) {
+			sb.append("user: ").append(pAuthUser).append('\n');
+		}
+		return toHex(sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	static byte[] sha256(byte[] pBytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(pBytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] pBytes) {
+		final StringBuilder sb = new StringBuilder(pBytes.length*2);
+		for (byte b : pBytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns, whether the given response may be cached: It must be a 200 response,
+	 * with at least one validator, and without "Cache-Control: no-store".
+	 * @param pConnection The response.
+	 * @return True, if the response may be cached.
+	 * @throws IOException Reading the response status failed.
+	 */
+	public static boolean isCacheable(HttpURLConnection pConnection) throws IOException {
+		if (pConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			return false;
+		}
+		final String cacheControl = pConnection.getHeaderField("Cache-Control");
+		if (cacheControl != null  &&  cacheControl.toLowerCase(Locale.ROOT).contains("no-store")) {
+			return false;
+		}
+		return pConnection.getHeaderField("ETag") != null  ||  pConnection.getHeaderField("Last-Modified") != null;
+	}
+
+	/**
+	 * Returns the cached response with the given key.
+	 * @param pKey The cache key.
+	 * @return The cached response, or null.
+	 */
+	public Entry get(String pKey) {
+		final Path indexFile = directory.resolve(pKey + INDEX_SUFFIX);
+		final Path bodyFile = directory.resolve(pKey + BODY_SUFFIX);
+		if (!Files.isRegularFile(indexFile)  ||  !Files.isRegularFile(bodyFile)) {
+			return null;
+		}
+		final Properties props = new Properties();
+		try {
+			try (InputStream in = Files.newInputStream(indexFile)) {
+				props.load(in);
+			}
+			final long size = Long.parseLong(props.getProperty("size", "-1"));
+			if (size != Files.size(bodyFile)) {
+				log.warn("Ignoring invalid response cache entry: " + indexFile);
+				return null;
+			}
+			// The index files modification time is used for LRU eviction.
+			Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+			return new Entry(bodyFile, props.getProperty("etag"), props.getProperty("lastModified"), size);
+		} catch (IOException|NumberFormatException e) {
+			log.warn("Unable to read response cache entry " + indexFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a response in the cache.
+	 * @param pKey The cache key.
+	 * @param pUrl The request URL.
+	 * @param pConnection The response, which provides the validators.
+	 * @param pBody The response body.
+	 * @return The created cache entry.
+	 * @throws IOException Reading the body, or writing the cache entry failed.
+	 */
+	public Entry store(String pKey, URL pUrl, HttpURLConnection pConnection, InputStream pBody) throws IOException {
+		return store(pKey, pUrl, pConnection, (out) -> {
+			try (InputStream in = pBody) {
+				Streams.copy(in, out);
+			}
+		});
+	}
+
+	/**
+	 * Stores a response in the cache.
+	 * @param pKey The cache key.
+	 * @param pUrl The request URL.
+	 * @param pConnection The response, which provides the validators.
+	 * @param pBody Writes the response body.
+	 * @return The created cache entry.
+	 * @throws IOException Writing the body, or the cache entry failed.
+	 */
+	public Entry store(String pKey, URL pUrl, HttpURLConnection pConnection, BodyWriter pBody) throws IOException {
+		Files.createDirectories(directory);
+		final Path bodyFile = directory.resolve(pKey + BODY_SUFFIX);
+		final Path indexFile = directory.resolve(pKey + INDEX_SUFFIX);
+		final String etag = pConnection.getHeaderField("ETag");
+		final String lastModified = pConnection.getHeaderField("Last-Modified");
+		final Path tempBody = Files.createTempFile(directory, pKey, ".tmp");
+		final Path tempIndex = Files.createTempFile(directory, pKey, ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tempBody)) {
+				pBody.write(out);
+			}
+			final long size = Files.size(tempBody);
+			final Properties props = new Properties();
+			props.setProperty("url", pUrl.toString());
+			props.setProperty("size", String.valueOf(size));
+			if (etag != null) {
+				props.setProperty("etag", etag);
+			}
+			if (lastModified != null) {
+				props.setProperty("lastModified", lastModified);
+			}
+			try (OutputStream out = Files.newOutputStream(tempIndex)) {
+				props.store(out, null);
+			}
+			move(tempBody, bodyFile);
+			move(tempIndex, indexFile);
+			log.debug("Stored response cache entry: " + pUrl + " -> " + bodyFile);
+			evict(pKey);
+			return new Entry(bodyFile, etag, lastModified, size);
+		} finally {
+			Files.deleteIfExists(tempBody);
+			Files.deleteIfExists(tempIndex);
+		}
+	}
+
+	private void move(Path pSource, Path pTarget) throws IOException {
+		try {
+			Files.move(pSource, pTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(pSource, pTarget, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Copies the cached body to the given file.
+	 * @param pEntry The cached response.
+	 * @param pTarget The file, which receives the body.
+	 * @param pHardLink True, if a hard link should be created, rather than a copy.
+	 *   If creating the link fails, the file is copied.
+	 * @throws IOException Copying the file failed.
+	 */
+	public void restore(Entry pEntry, Path pTarget, boolean pHardLink) throws IOException {
+		final Path dir = pTarget.toAbsolutePath().getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		if (pHardLink) {
+			try {
+				Files.deleteIfExists(pTarget);
+				Files.createLink(pTarget, pEntry.getBodyFile());
+				return;
+			} catch (IOException|UnsupportedOperationException e) {
+				log.debug("Unable to create hard link " + pTarget + ", copying instead: " + e.getMessage());
+			}
+		}
+		Files.copy(pEntry.getBodyFile(), pTarget, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Removes the least recently used entries, until the total size of the cached
+	 * bodies is below the size limit.
+	 * @param pKeep The key of an entry, which must not be removed.
+	 */
+	protected void evict(String pKeep) {
+		final List<Path> indexFiles = new ArrayList<>();
+		long totalSize = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + INDEX_SUFFIX)) {
+			for (Path indexFile : stream) {
+				final Path bodyFile = getBodyFile(indexFile);
+				if (Files.isRegularFile(bodyFile)) {
+					indexFiles.add(indexFile);
+					totalSize += Files.size(bodyFile);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Unable to scan response cache " + directory + ": " + e.getMessage());
+			return;
+		}
+		if (totalSize <= maxSize) {
+			return;
+		}
+		indexFiles.sort(Comparator.comparingLong((p) -> p.toFile().lastModified()));
+		for (Path indexFile : indexFiles) {
+			if (totalSize <= maxSize) {
+				break;
+			}
+			if (indexFile.getFileName().toString().equals(pKeep + INDEX_SUFFIX)) {
+				continue;
+			}
+			final Path bodyFile = getBodyFile(indexFile);
+			try {
+				final long size = Files.size(bodyFile);
+				Files.deleteIfExists(indexFile);
+				Files.deleteIfExists(bodyFile);
+				totalSize -= size;
+				log.debug("Evicted response cache entry: " + bodyFile);
+			} catch (IOException e) {
+				// Possibly removed concurrently, ignore this.
+			}
+		}
+	}
+
+	private Path getBodyFile(Path pIndexFile) {
+		final String name = pIndexFile.getFileName().toString();
+		return pIndexFile.resolveSibling(name.substring(0, name.length() - INDEX_SUFFIX.length()) + BODY_SUFFIX);
+	}
+}
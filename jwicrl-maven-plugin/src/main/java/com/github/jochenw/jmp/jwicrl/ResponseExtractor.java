@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Extracts values from a response body, while it is being read, using a streaming
+ * parser. Reading stops, as soon as all expressions have matched, so the
+ * document is neither buffered, nor read completely.
+ */
+public abstract class ResponseExtractor {
+	private final Map<String,String> expressions;
+
+	/**
+	 * Creates a new instance.
+	 * @param pExpressions The expressions, keyed by the property names, which receive the values.
+	 */
+	protected ResponseExtractor(Map<String,String> pExpressions) {
+		expressions = pExpressions;
+	}
+
+	/**
+	 * Returns the expressions, keyed by property name.
+	 * @return The expressions.
+	 */
+	public Map<String,String> getExpressions() {
+		return expressions;
+	}
+
+	/**
+	 * Creates an extractor for the given expressions. JSONPath expressions start
+	 * with "$" (for example "$.build.id", or "$.items[0]['name']"), XPath
+	 * expressions start with "/" (for example "/project/version", or
+	 * "/feed/entry[1]/@id").
+	 * @param pExpressions The expressions, keyed by the property names.
+	 * @return The created extractor.
+	 * @throws IllegalArgumentException An expression is invalid, or JSONPath, and
+	 *   XPath expressions are mixed.
+	 */
+	public static ResponseExtractor of(Map<String,String> pExpressions) {
+		if (pExpressions == null  ||  pExpressions.isEmpty()) {
+			throw new IllegalArgumentException("No expressions given");
+		}
+		boolean json = false, xml = false;
+		for (Map.Entry<String,String> en : pExpressions.entrySet()) {
+			final String expr = en.getValue() == null ? "" : en.getValue().trim();
+			if (expr.startsWith("$")) {
+				json = true;
+			} else if (expr.startsWith("/")) {
+				xml = true;
+			} else {
+				throw new IllegalArgumentException("Expected a JSONPath expression (starting with '$'), or an XPath"
+						+ " expression (starting with '/') for property " + en.getKey() + ", got " + en.getValue());
+			}
+		}
+		if (json  &&  xml) {
+			throw new IllegalArgumentException("JSONPath, and XPath expressions can't be mixed");
+		}
+		final Map<String,String> expressions = new LinkedHashMap<>();
+		pExpressions.forEach((k,v) -> expressions.put(k, v.trim()));
+		return json ? new JsonPathExtractor(expressions) : new XPathExtractor(expressions);
+	}
+
+	/**
+	 * Reads the given stream, until all expressions have matched, or the end of the
+	 * stream is reached. The stream isn't closed.
+	 * @param pIn The response body.
+	 * @return The extracted values, keyed by property name. Expressions without a match are missing.
+	 * @throws IOException Reading, or parsing the response body failed.
+	 */
+	public abstract Map<String,String> extract(InputStream pIn) throws IOException;
+
+	/**
+	 * Returns a stream, which writes all bytes, that are read from the given stream,
+	 * to the given output stream. This allows to parse a response, while it is
+	 * being copied. Closing the returned stream doesn't close the input stream.
+	 * @param pIn The stream to read from.
+	 * @param pOut The stream, which receives a copy of the bytes, that have been read.
+	 * @return The created stream.
+	 */
+	public static InputStream tee(InputStream pIn, OutputStream pOut) {
+		return new FilterInputStream(pIn) {
+			@Override
+			public int read() throws IOException {
+				final int b = super.read();
+				if (b != -1) {
+					pOut.write(b);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] pBuffer, int pOffset, int pLength) throws IOException {
+				final int res = super.read(pBuffer, pOffset, pLength);
+				if (res > 0) {
+					pOut.write(pBuffer, pOffset, res);
+				}
+				return res;
+			}
+
+			@Override
+			public long skip(long pNum) throws IOException {
+				final byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, pNum))];
+				final int res = read(buffer, 0, buffer.length);
+				return Math.max(0, res);
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+
+			@Override
+			public void close() {
+				// The input stream is closed by the caller.
+			}
+		};
+	}
+}
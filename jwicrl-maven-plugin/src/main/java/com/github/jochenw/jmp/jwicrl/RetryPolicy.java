@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.file.FileSystemException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+
+/**
+ * Decides, whether a failed request is retried, and how long to wait before
+ * the next attempt. The delay grows exponentially, and is randomized (jitter),
+ * so that concurrent clients don't retry in lockstep.
+ */
+public class RetryPolicy {
+	private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+			"GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
+	/**
+	 * Thrown, if the server responded with a status code, that indicates a
+	 * temporary failure, like 503 (Service Unavailable).
+	 */
+	public static class RetryableStatusException extends IOException {
+		private static final long serialVersionUID = 5027516473208216478L;
+		private final int statusCode;
+		private final long retryAfterMillis;
+
+		public RetryableStatusException(String pMessage, int pStatusCode, long pRetryAfterMillis) {
+			super(pMessage);
+			statusCode = pStatusCode;
+			retryAfterMillis = pRetryAfterMillis;
+		}
+
+		public int getStatusCode() { return statusCode; }
+
+		/**
+		 * Returns the delay, that the server asked for with a "Retry-After" header.
+		 * @return The requested delay in milliseconds, or -1.
+		 */
+		public long getRetryAfterMillis() { return retryAfterMillis; }
+	}
+
+	private final int retries;
+	private final long delay, maxDelay;
+
+	/**
+	 * Creates a new instance.
+	 * @param pRetries The maximum number of retries, zero disables retries.
+	 * @param pDelay The delay before the first retry in milliseconds.
+	 * @param pMaxDelay The maximum delay in milliseconds.
+	 */
+	public RetryPolicy(int pRetries, long pDelay, long pMaxDelay) {
+		retries = Math.max(0, pRetries);
+		delay = Math.max(0, pDelay);
+		maxDelay = Math.max(delay, pMaxDelay);
+	}
+
+	public int getRetries() { return retries; }
+
+	/**
+	 * Returns, whether the given request method is idempotent. Only requests with
+	 * an idempotent method are retried, or hedged.
+	 * @param pMethod The request method.
+	 * @return True, if the method is idempotent.
+	 */
+	public static boolean isIdempotent(String pMethod) {
+		return pMethod != null  &&  IDEMPOTENT_METHODS.contains(pMethod.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * Returns, whether the given status code indicates a temporary failure.
+	 * @param pStatusCode The response status code.
+	 * @return True for 408, 429, 500, 502, 503, and 504.
+	 */
+	public static boolean isRetryableStatus(int pStatusCode) {
+		switch (pStatusCode) {
+		case 408: case 429: case 500: case 502: case 503: case 504:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Returns, whether the given failure is worth a retry. Network failures, and
+	 * timeouts, are, but local file system errors, protocol errors, and
+	 * certificate problems aren't.
+	 * @param pError The failure.
+	 * @return True, if the request should be retried.
+	 */
+	public static boolean isRetryable(IOException pError) {
+		if (pError instanceof RetryableStatusException) {
+			return true;
+		}
+		return !(pError instanceof FileSystemException  ||  pError instanceof ProtocolException
+				||  pError instanceof SSLHandshakeException  ||  pError instanceof SSLPeerUnverifiedException);
+	}
+
+	/**
+	 * Returns the delay before the given retry.
+	 * @param pRetry The retry number, starting with 1.
+	 * @param pError The failure, which caused the retry.
+	 * @return The delay in milliseconds: The exponentially growing delay, reduced by
+	 *   a random amount of up to one half. If the server asked for a longer delay
+	 *   (via "Retry-After"), that delay is used instead, up to the maximum delay.
+	 */
+	public long getDelay(int pRetry, IOException pError) {
+		final int shift = Math.min(30, Math.max(0, pRetry - 1));
+		final long exponential = Math.min(maxDelay, delay << shift);
+		final long half = exponential / 2;
+		long millis = half + (half > 0 ? ThreadLocalRandom.current().nextLong(exponential - half + 1) : exponential);
+		if (pError instanceof RetryableStatusException) {
+			final long retryAfter = ((RetryableStatusException) pError).getRetryAfterMillis();
+			if (retryAfter > millis) {
+				millis = Math.min(maxDelay, retryAfter);
+			}
+		}
+		return millis;
+	}
+
+	/**
+	 * Parses the value of a "Retry-After" header.
+	 * @param pValue The header value, or null.
+	 * @return The delay in milliseconds, or -1, if the value is missing, or not a
+	 *   number of seconds. (HTTP dates aren't supported.)
+	 */
+	public static long parseRetryAfter(String pValue) {
+		if (pValue == null) {
+			return -1;
+		}
+		try {
+			final long seconds = Long.parseLong(pValue.trim());
+			return seconds < 0 ? -1 : seconds * 1000;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
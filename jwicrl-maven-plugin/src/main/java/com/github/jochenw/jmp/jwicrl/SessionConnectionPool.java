@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.github.jochenw.afw.core.util.HttpConnector;
+import com.github.jochenw.afw.core.util.HttpConnector.HttpConnection;
+
+
+/**
+ * A set of HTTP clients, which is shared by all executions within the same Maven
+ * session. Executions with the same trust, and proxy settings share a client,
+ * and thereby the same SSL socket factory. As a consequence, the JVM's keep-alive
+ * cache can reuse open connections between executions, and TLS sessions can be
+ * resumed, rather than negotiated again.
+ */
+public class SessionConnectionPool {
+	/**
+	 * A client, which is configured for a particular set of trust, and proxy settings.
+	 */
+	public static class Client {
+		private final String key;
+		private final HttpConnector connector;
+		private final SSLSocketFactory socketFactory;
+		private final HostnameVerifier hostnameVerifier;
+
+		Client(String pKey, HttpConnector pConnector, SSLSocketFactory pSocketFactory,
+				HostnameVerifier pHostnameVerifier) {
+			key = pKey;
+			connector = pConnector;
+			socketFactory = pSocketFactory;
+			hostnameVerifier = pHostnameVerifier;
+		}
+
+		public String getKey() { return key; }
+		SSLSocketFactory getSocketFactory() { return socketFactory; }
+		public HttpConnector getConnector() { return connector; }
+
+		/**
+		 * Opens a connection to the given URL. HTTPS connections use the clients
+		 * shared socket factory.
+		 * @param pUrl The URL to connect to.
+		 * @return The opened connection.
+		 * @throws IOException Opening the connection failed.
+		 */
+		public HttpConnection connect(URL pUrl) throws IOException {
+			final HttpConnection connection = connector.connect(pUrl);
+			final HttpURLConnection urlConnection = connection.getUrlConnection();
+			if (urlConnection instanceof HttpsURLConnection) {
+				final HttpsURLConnection httpsConnection = (HttpsURLConnection) urlConnection;
+				if (socketFactory != null) {
+					httpsConnection.setSSLSocketFactory(socketFactory);
+				}
+				if (hostnameVerifier != null) {
+					httpsConnection.setHostnameVerifier(hostnameVerifier);
+				}
+			}
+			return connection;
+		}
+	}
+
+	private final Map<String,Client> clients = new HashMap<>();
+
+	/**
+	 * Returns the pool, which is attached to the given session, creating it, if
+	 * necessary.
+	 * @param pSession The Maven session, or null (for testing), in which case a new,
+	 *   unshared, pool is returned.
+	 * @return The session scoped pool.
+	 */
+	public static SessionConnectionPool of(MavenSession pSession) {
+		if (pSession == null  ||  pSession.getRepositorySession() == null) {
+			return new SessionConnectionPool();
+		}
+		// Using the class object as the key ensures, that different plugin versions
+		// within the same session don't see each others pool.
+		return (SessionConnectionPool) pSession.getRepositorySession().getData()
+				.computeIfAbsent(SessionConnectionPool.class, () -> new SessionConnectionPool());
+	}
+
+	/**
+	 * Returns the key of the client with the given settings.
+	 * @param pTrustAll Whether all server certificates are trusted.
+	 * @param pTrustStore The trust store, or null.
+	 * @param pTrustStorePwd The trust stores password, or null. Only a hash
+	 *   of the password becomes part of the key.
+	 * @param pProxy The proxy, or null.
+	 * @return A string, which identifies the settings.
+	 */
+	public static String getKey(boolean pTrustAll, Path pTrustStore, String pTrustStorePwd, String pProxy) {
+		final String pwdHash = pTrustStorePwd == null ? ""
+				: ResponseCache.toHex(ResponseCache.sha256(pTrustStorePwd.getBytes(StandardCharsets.UTF_8)));
+		return "trustAll=" + pTrustAll
+				+ ", trustStore=" + (pTrustStore == null ? "" : pTrustStore.toAbsolutePath().normalize())
+				+ ", trustStorePwd=" + pwdHash
+				+ ", proxy=" + (pProxy == null ? "" : pProxy);
+	}
+
+	/**
+	 * Returns the client with the given settings, creating it, if necessary.
+	 * @param pTrustAll Whether all server certificates are trusted.
+	 * @param pTrustStore The trust store, or null.
+	 * @param pTrustStorePwd The trust stores password, or null.
+	 * @param pProxy The proxy, or null.
+	 * @return The shared client.
+	 * @throws MojoFailureException The trust store could not be loaded.
+	 */
+	public synchronized Client getClient(boolean pTrustAll, Path pTrustStore, String pTrustStorePwd, String pProxy)
+			throws MojoFailureException {
+		final String key = getKey(pTrustAll, pTrustStore, pTrustStorePwd, pProxy);
+		final SSLSocketFactory socketFactory = SslContextCache.getSocketFactory(pTrustAll, pTrustStore, pTrustStorePwd);
+		Client client = clients.get(key);
+		// A different factory means, that the trust store has been modified.
+		if (client == null  ||  client.getSocketFactory() != socketFactory) {
+			client = newClient(key, socketFactory, pTrustAll, pProxy);
+			clients.put(key, client);
+		}
+		return client;
+	}
+
+	protected Client newClient(String pKey, SSLSocketFactory pSocketFactory, boolean pTrustAll, String pProxy) {
+		// The trust settings aren't passed to the connector: The client applies the
+		// shared socket factory to every connection, so the connector would only load
+		// the trust store again.
+		final HttpConnector connector = new HttpConnector();
+		if (pProxy != null) {
+			connector.setProxy(pProxy);
+		}
+		final HostnameVerifier hostnameVerifier = pTrustAll ? (host, session) -> true : null;
+		return new Client(pKey, connector, pSocketFactory, hostnameVerifier);
+	}
+}
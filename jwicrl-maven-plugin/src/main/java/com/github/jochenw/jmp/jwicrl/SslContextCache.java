@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+
+/**
+ * A JVM wide cache of initialized SSL socket factories. Loading a large trust
+ * store, and initializing an SSL context, is expensive, so it is done once per
+ * trust store, rather than once per execution. The cache key contains the trust
+ * stores modification time, and size, so that a modified trust store is loaded
+ * again. Sharing the factory also allows the JVM's keep-alive cache to reuse
+ * connections, because it only reuses connections with the same factory.
+ */
+public class SslContextCache {
+	private static final Map<String,SSLSocketFactory> FACTORIES = new ConcurrentHashMap<>();
+
+	private SslContextCache() {
+		// Static methods only.
+	}
+
+	/**
+	 * Returns the cache key for the given settings.
+	 * @param pTrustAll Whether all server certificates are trusted.
+	 * @param pTrustStore The trust store, or null.
+	 * @param pTrustStorePwd The trust stores password, or null. Only a hash
+	 *   of the password becomes part of the key.
+	 * @return The cache key.
+	 * @throws MojoFailureException The trust stores attributes could not be read.
+	 */
+	static String getKey(boolean pTrustAll, Path pTrustStore, String pTrustStorePwd) throws MojoFailureException {
+		if (pTrustAll) {
+			return "trustAll";
+		} else if (pTrustStore == null) {
+			return "default";
+		}
+		final BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(pTrustStore, BasicFileAttributes.class);
+		} catch (IOException e) {
+			throw new MojoFailureException("Invalid parameter 'trustStore': Unable to read " + pTrustStore
+					+ ": " + e.getMessage(), e);
+		}
+		final String pwdHash = pTrustStorePwd == null ? ""
+				: ResponseCache.toHex(ResponseCache.sha256(pTrustStorePwd.getBytes(StandardCharsets.UTF_8)));
+		return getPathKey(pTrustStore) + ", modified=" + attrs.lastModifiedTime().toMillis()
+				+ ", size=" + attrs.size() + ", pwd=" + pwdHash;
+	}
+
+	private static String getPathKey(Path pTrustStore) {
+		return "trustStore=" + pTrustStore.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Returns the socket factory for the given settings, creating it, if necessary.
+	 * @param pTrustAll Whether all server certificates are trusted.
+	 * @param pTrustStore The trust store, or null.
+	 * @param pTrustStorePwd The trust stores password, or null.
+	 * @return The shared socket factory, a {@link TimingSocketFactory}.
+	 * @throws MojoFailureException The trust store could not be loaded.
+	 */
+	public static SSLSocketFactory getSocketFactory(boolean pTrustAll, Path pTrustStore, String pTrustStorePwd)
+			throws MojoFailureException {
+		final String key = getKey(pTrustAll, pTrustStore, pTrustStorePwd);
+		final SSLSocketFactory factory = FACTORIES.get(key);
+		if (factory != null) {
+			return factory;
+		}
+		synchronized (FACTORIES) {
+			final SSLSocketFactory existingFactory = FACTORIES.get(key);
+			if (existingFactory != null) {
+				return existingFactory;
+			}
+			final SSLSocketFactory delegate;
+			if (pTrustAll) {
+				delegate = newSocketFactory(new TrustManager[] { new TrustingAllManager() });
+			} else if (pTrustStore != null) {
+				delegate = newSocketFactory(getTrustManagers(pTrustStore, pTrustStorePwd));
+				// Forget about previous versions of the trust store.
+				final String prefix = getPathKey(pTrustStore) + ", ";
+				FACTORIES.keySet().removeIf((k) -> k.startsWith(prefix));
+			} else {
+				delegate = HttpsURLConnection.getDefaultSSLSocketFactory();
+			}
+			final SSLSocketFactory newFactory = new TimingSocketFactory(delegate);
+			FACTORIES.put(key, newFactory);
+			return newFactory;
+		}
+	}
+
+	static TrustManager[] getTrustManagers(Path pTrustStore, String pTrustStorePwd) throws MojoFailureException {
+		final String fileName = pTrustStore.getFileName().toString().toLowerCase(Locale.ROOT);
+		final String type = fileName.endsWith(".p12")  ||  fileName.endsWith(".pfx") ? "PKCS12" : KeyStore.getDefaultType();
+		try (InputStream in = Files.newInputStream(pTrustStore)) {
+			final KeyStore keyStore = KeyStore.getInstance(type);
+			keyStore.load(in, pTrustStorePwd == null ? null : pTrustStorePwd.toCharArray());
+			final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			tmf.init(keyStore);
+			return tmf.getTrustManagers();
+		} catch (IOException|GeneralSecurityException e) {
+			throw new MojoFailureException("Invalid parameter 'trustStore': Unable to load trust store "
+					+ pTrustStore + ": " + e.getMessage(), e);
+		}
+	}
+
+	static SSLSocketFactory newSocketFactory(TrustManager[] pTrustManagers) throws MojoFailureException {
+		try {
+			final SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, pTrustManagers, null);
+			return sslContext.getSocketFactory();
+		} catch (GeneralSecurityException e) {
+			throw new MojoFailureException("Unable to initialize SSL context: " + e.getMessage(), e);
+		}
+	}
+
+	private static class TrustingAllManager implements X509TrustManager {
+		@Override
+		public void checkClientTrusted(X509Certificate[] pChain, String pAuthType) {
+			// Accept everything.
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] pChain, String pAuthType) {
+			// Accept everything.
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+
+import javax.net.ssl.SSLSocketFactory;
+
+
+/**
+ * An SSL socket factory, which records, when the TLS handshake of a new
+ * connection starts. It refuses to create unconnected sockets, so that the
+ * {@link javax.net.ssl.HttpsURLConnection} connects a plain socket first,
+ * and then layers TLS on top of it. The time between the start of the
+ * connect, and the layering, is the TCP connect time. The remaining time
+ * until the connection is established is the TLS handshake.
+ */
+public class TimingSocketFactory extends SSLSocketFactory {
+	private static final ThreadLocal<long[]> HANDSHAKE_START = ThreadLocal.withInitial(() -> new long[1]);
+
+	private final SSLSocketFactory delegate;
+
+	/**
+	 * Creates a new instance.
+	 * @param pDelegate The factory, which creates the actual sockets.
+	 */
+	public TimingSocketFactory(SSLSocketFactory pDelegate) {
+		delegate = pDelegate;
+	}
+
+	/**
+	 * Resets the handshake start of the current thread. Invoked before connecting.
+	 */
+	public static void reset() {
+		HANDSHAKE_START.get()[0] = 0;
+	}
+
+	/**
+	 * Returns, when the TLS handshake of the last connection, that has been
+	 * established by the current thread, started.
+	 * @return The {@link System#nanoTime()} of the handshake start, or 0, if
+	 *   no new TLS connection has been created since {@link #reset()}.
+	 */
+	public static long getHandshakeStart() {
+		return HANDSHAKE_START.get()[0];
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		// The HttpsURLConnection falls back to a plain socket, if the cause is an UnsupportedOperationException.
+		final SocketException se = new SocketException("Unconnected sockets not implemented");
+		se.initCause(new UnsupportedOperationException());
+		throw se;
+	}
+
+	@Override
+	public Socket createSocket(Socket pSocket, String pHost, int pPort, boolean pAutoClose) throws IOException {
+		HANDSHAKE_START.get()[0] = System.nanoTime();
+		return delegate.createSocket(pSocket, pHost, pPort, pAutoClose);
+	}
+
+	@Override
+	public Socket createSocket(Socket pSocket, InputStream pConsumed, boolean pAutoClose) throws IOException {
+		return delegate.createSocket(pSocket, pConsumed, pAutoClose);
+	}
+
+	@Override
+	public Socket createSocket(String pHost, int pPort) throws IOException {
+		return delegate.createSocket(pHost, pPort);
+	}
+
+	@Override
+	public Socket createSocket(String pHost, int pPort, InetAddress pLocalHost, int pLocalPort) throws IOException {
+		return delegate.createSocket(pHost, pPort, pLocalHost, pLocalPort);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress pHost, int pPort) throws IOException {
+		return delegate.createSocket(pHost, pPort);
+	}
+
+	@Override
+	public Socket createSocket(InetAddress pAddress, int pPort, InetAddress pLocalAddress, int pLocalPort)
+			throws IOException {
+		return delegate.createSocket(pAddress, pPort, pLocalAddress, pLocalPort);
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Extracts values from an XML document, using a subset of XPath: Absolute
+ * location paths with element names, or "*", optionally followed by a position
+ * ("/feed/entry[2]/title"), and ending with an attribute ("/@id"), or an
+ * element (optionally "/text()"), in which case the trimmed text content is
+ * extracted. Namespace prefixes are ignored, elements are matched by their local
+ * name. The document is parsed with a StAX reader.
+ */
+public class XPathExtractor extends ResponseExtractor {
+	private static final XMLInputFactory FACTORY = newFactory();
+
+	private static class Step {
+		private final String name;
+		private final int position;
+
+		Step(String pName, int pPosition) {
+			name = pName;
+			position = pPosition;
+		}
+
+		boolean matches(Element pElement) {
+			if ("*".equals(name)) {
+				return position == 0  ||  position == pElement.anyPosition;
+			}
+			return name.equals(pElement.name)  &&  (position == 0  ||  position == pElement.namePosition);
+		}
+	}
+
+	private static class Path {
+		private final List<Step> steps;
+		private final String attribute;
+
+		Path(List<Step> pSteps, String pAttribute) {
+			steps = pSteps;
+			attribute = pAttribute;
+		}
+	}
+
+	private static class Element {
+		private final String name;
+		private final int namePosition, anyPosition;
+		private final Map<String,Integer> childCounts = new HashMap<>();
+		private int childCount;
+
+		Element(String pName, int pNamePosition, int pAnyPosition) {
+			name = pName;
+			namePosition = pNamePosition;
+			anyPosition = pAnyPosition;
+		}
+	}
+
+	private static class Capture {
+		private final int depth;
+		private final String property;
+		private final StringBuilder sb = new StringBuilder();
+
+		Capture(int pDepth, String pProperty) {
+			depth = pDepth;
+			property = pProperty;
+		}
+	}
+
+	private final Map<String,Path> paths = new LinkedHashMap<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param pExpressions The XPath expressions, keyed by property name.
+	 * @throws IllegalArgumentException An expression is invalid.
+	 */
+	public XPathExtractor(Map<String,String> pExpressions) {
+		super(pExpressions);
+		pExpressions.forEach((k,v) -> paths.put(k, parse(v)));
+	}
+
+	private static XMLInputFactory newFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private static Path parse(String pExpression) {
+		if (!pExpression.startsWith("/")  ||  pExpression.startsWith("//")) {
+			throw new IllegalArgumentException("Expected an absolute location path, like /project/version, got "
+					+ pExpression);
+		}
+		final String[] parts = pExpression.substring(1).split("/", -1);
+		final List<Step> steps = new ArrayList<>();
+		String attribute = null;
+		for (int i = 0;  i < parts.length;  i++) {
+			final String part = parts[i].trim();
+			final boolean last = i == parts.length-1;
+			if (last  &&  part.startsWith("@")  &&  part.length() > 1  &&  i > 0) {
+				attribute = localName(part.substring(1));
+			} else if (last  &&  "text()".equals(part)  &&  i > 0) {
+				// The text content is the default.
+			} else {
+				final int offset = part.indexOf('[');
+				final String name = localName(offset == -1 ? part : part.substring(0, offset));
+				int position = 0;
+				if (offset != -1) {
+					if (!part.endsWith("]")) {
+						throw new IllegalArgumentException("Missing ']' in XPath expression: " + pExpression);
+					}
+					try {
+						position = Integer.parseInt(part.substring(offset+1, part.length()-1).trim());
+					} catch (NumberFormatException e) {
+						position = -1;
+					}
+					if (position < 1) {
+						throw new IllegalArgumentException("Expected a position, like [1], in step " + part
+								+ " of XPath expression: " + pExpression);
+					}
+				}
+				if (name.isEmpty()  ||  name.startsWith("@")  ||  name.contains("(")) {
+					throw new IllegalArgumentException("Unsupported step " + part + " in XPath expression: "
+							+ pExpression);
+				}
+				steps.add(new Step(name, position));
+			}
+		}
+		return new Path(steps, attribute);
+	}
+
+	private static String localName(String pName) {
+		final int offset = pName.indexOf(':');
+		return offset == -1 ? pName : pName.substring(offset+1);
+	}
+
+	@Override
+	public Map<String,String> extract(InputStream pIn) throws IOException {
+		final Map<String,String> results = new HashMap<>();
+		final List<Element> elements = new ArrayList<>();
+		final List<Capture> captures = new ArrayList<>();
+		final Element root = new Element(null, 1, 1);
+		XMLStreamReader reader = null;
+		try {
+			reader = FACTORY.createXMLStreamReader(pIn);
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					final Element parent = elements.isEmpty() ? root : elements.get(elements.size()-1);
+					final String name = reader.getLocalName();
+					final int namePosition = parent.childCounts.merge(name, Integer.valueOf(1), Integer::sum).intValue();
+					final Element element = new Element(name, namePosition, ++parent.childCount);
+					elements.add(element);
+					for (Map.Entry<String,Path> en : paths.entrySet()) {
+						final Path path = en.getValue();
+						if (results.containsKey(en.getKey())  ||  !matches(path, elements)) {
+							continue;
+						}
+						if (path.attribute == null) {
+							captures.add(new Capture(elements.size(), en.getKey()));
+						} else {
+							for (int i = 0;  i < reader.getAttributeCount();  i++) {
+								if (path.attribute.equals(reader.getAttributeLocalName(i))) {
+									results.put(en.getKey(), reader.getAttributeValue(i));
+									break;
+								}
+							}
+						}
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (!captures.isEmpty()) {
+						final String text = reader.getText();
+						for (Capture capture : captures) {
+							capture.sb.append(text);
+						}
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					for (int i = captures.size()-1;  i >= 0;  i--) {
+						final Capture capture = captures.get(i);
+						if (capture.depth == elements.size()) {
+							results.put(capture.property, capture.sb.toString().trim());
+							captures.remove(i);
+						}
+					}
+					elements.remove(elements.size()-1);
+					break;
+				default:
+					break;
+				}
+				if (results.size() == paths.size()) {
+					break;
+				}
+			}
+			return results;
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid XML document: " + e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					// Doesn't close the underlying stream.
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Ignore this.
+				}
+			}
+		}
+	}
+
+	private boolean matches(Path pPath, List<Element> pElements) {
+		if (pPath.steps.size() != pElements.size()) {
+			return false;
+		}
+		for (int i = 0;  i < pElements.size();  i++) {
+			if (!pPath.steps.get(i).matches(pElements.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwicrl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * A minimal HTTP server for the tests, based on the JDK's built-in server.
+ * It listens on an ephemeral port of the loopback interface.
+ */
+class HttpStubServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final Map<String,AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+	HttpStubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * Registers a handler for the given path, which counts the requests.
+	 * @param pPath The request path, for example "/schema.xsd".
+	 * @param pHandler The handler.
+	 */
+	void addHandler(String pPath, HttpHandler pHandler) {
+		final AtomicInteger counter = new AtomicInteger();
+		requestCounts.put(pPath, counter);
+		server.createContext(pPath, (ex) -> {
+			counter.incrementAndGet();
+			try {
+				pHandler.handle(ex);
+			} finally {
+				ex.close();
+			}
+		});
+	}
+
+	String getUrl(String pPath) {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + pPath;
+	}
+
+	int getRequestCount(String pPath) {
+		final AtomicInteger counter = requestCounts.get(pPath);
+		return counter == null ? 0 : counter.get();
+	}
+
+	static void send(HttpExchange pExchange, int pStatus, byte[] pBody) throws IOException {
+		if (pBody == null) {
+			pExchange.sendResponseHeaders(pStatus, -1);
+		} else {
+			pExchange.sendResponseHeaders(pStatus, pBody.length);
+			try (OutputStream out = pExchange.getResponseBody()) {
+				out.write(pBody);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
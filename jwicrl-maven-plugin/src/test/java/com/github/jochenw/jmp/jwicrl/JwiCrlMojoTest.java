@@ -2,37 +2,37 @@ package com.github.jochenw.jmp.jwicrl;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.Field;
-import java.lang.reflect.UndeclaredThrowableException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.SSLSocketFactory;
 
-import org.apache.commons.io.input.XmlStreamReader;
-import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugin.descriptor.MojoDescriptor;
-import org.apache.maven.plugin.descriptor.PluginDescriptor;
-import org.apache.maven.plugin.descriptor.PluginDescriptorBuilder;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
-import org.apache.maven.repository.RepositorySystem;
-import org.codehaus.plexus.PlexusContainer;
-import org.codehaus.plexus.component.configurator.ComponentConfigurator;
-import org.codehaus.plexus.component.repository.ComponentDescriptor;
-import org.codehaus.plexus.util.InterpolationFilterReader;
+import org.apache.maven.project.MavenProject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,59 +40,521 @@ import org.junit.jupiter.api.Test;
 
 
 class JwiCrlMojoTest extends AbstractMojoTestCase {
-	@BeforeEach protected void setUp() throws Exception {
-		final ComponentConfigurator configurator = getContainer().lookup( ComponentConfigurator.class, "basic" );
-		setFieldValue(this, "configurator", configurator);
+	@BeforeEach protected void setUp() throws Exception { super.setUp(); }
+	@AfterEach protected void tearDown() throws Exception { super.tearDown(); }
+
+	@Test
+	void testSkip() throws Exception {
+		doTest("skip-execution", "[INFO] Skipping, parameter skip=true\n", null);
+	}
+
+	@Test
+	void testConditionalCache() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/conditional-cache/schema.xsd");
+		final Path cacheDir = Paths.get("target/jwicrl-test/conditional-cache/cache");
+		Files.deleteIfExists(outputFile);
+		if (Files.isDirectory(cacheDir)) {
+			try (Stream<Path> files = Files.list(cacheDir)) {
+				for (Path p : (Iterable<Path>) files::iterator) {
+					Files.delete(p);
+				}
+			}
+		}
+		final byte[] body = "<schema/>".getBytes(StandardCharsets.UTF_8);
+		final AtomicInteger notModified = new AtomicInteger();
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/schema.xsd", (ex) -> {
+				ex.getResponseHeaders().add("ETag", "\"v1\"");
+				if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+					notModified.incrementAndGet();
+					HttpStubServer.send(ex, 304, null);
+				} else {
+					HttpStubServer.send(ex, 200, body);
+				}
+			});
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/schema.xsd"));
+			doTest("conditional-cache", null, null, parameters);
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+			// The second request is a conditional request, and the body is taken from the cache.
+			Files.delete(outputFile);
+			doTest("conditional-cache", null, null, parameters);
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+			assertEquals(2, server.getRequestCount("/schema.xsd"));
+			assertEquals(1, notModified.get());
+		}
+	}
+
+	@Test
+	void testBatchRequests() throws Exception {
+		final Path outputDir = Paths.get("target/jwicrl-test/batch-requests");
+		final Path outputFileA = outputDir.resolve("a.xsd");
+		final Path outputFileB = outputDir.resolve("b.xsd");
+		Files.deleteIfExists(outputFileA);
+		Files.deleteIfExists(outputFileB);
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/a.xsd", (ex) -> HttpStubServer.send(ex, 200, "<a/>".getBytes(StandardCharsets.UTF_8)));
+			server.addHandler("/b.xsd", (ex) -> HttpStubServer.send(ex, 200,
+					ex.getRequestHeaders().getFirst("Accept").getBytes(StandardCharsets.UTF_8)));
+			server.addHandler("/fail.xsd", (ex) -> HttpStubServer.send(ex, 500, null));
+			final Map<String,String> headersB = new HashMap<>();
+			headersB.put("Accept", "application/xml");
+			final List<RequestDefinition> requests = new ArrayList<>();
+			requests.add(new RequestDefinition(server.getUrl("/a.xsd"), null, null, null, outputFileA));
+			requests.add(new RequestDefinition(server.getUrl("/b.xsd"), null, headersB, null, outputFileB));
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("requests", requests);
+			doTest("batch-requests", null, null, parameters);
+			assertEquals("<a/>", new String(Files.readAllBytes(outputFileA), StandardCharsets.UTF_8));
+			assertEquals("application/xml", new String(Files.readAllBytes(outputFileB), StandardCharsets.UTF_8));
+
+			// A failing request doesn't stop the others, but fails the goal.
+			Files.delete(outputFileA);
+			final String failUrl = server.getUrl("/fail.xsd");
+			requests.add(1, new RequestDefinition(failUrl, null, null, null, outputDir.resolve("fail.xsd")));
+			doTest("batch-requests", null, (t) -> {
+				assertTrue(t instanceof MojoExecutionException);
+				assertEquals("1 of 3 requests failed: " + failUrl, t.getMessage());
+			}, parameters);
+			assertTrue(Files.isRegularFile(outputFileA));
+		}
+	}
+
+	@Test
+	void testRangeDownload() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/range-download/archive.zip");
+		final Path stateFile = Paths.get("target/jwicrl-test/range-download/archive.zip.part.properties");
+		Files.deleteIfExists(outputFile);
+		Files.deleteIfExists(stateFile);
+		final byte[] body = new byte[10000];
+		for (int i = 0;  i < body.length;  i++) {
+			body[i] = (byte) i;
+		}
+		final AtomicInteger failures = new AtomicInteger(1);
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/archive.zip", (ex) -> {
+				ex.getResponseHeaders().add("Accept-Ranges", "bytes");
+				ex.getResponseHeaders().add("ETag", "\"a1\"");
+				final String range = ex.getRequestHeaders().getFirst("Range");
+				if ("HEAD".equals(ex.getRequestMethod())) {
+					ex.getResponseHeaders().add("Content-Length", String.valueOf(body.length));
+					HttpStubServer.send(ex, 200, null);
+				} else if (range == null) {
+					HttpStubServer.send(ex, 200, body);
+				} else {
+					final String[] fromTo = range.substring("bytes=".length()).split("-");
+					final int from = Integer.parseInt(fromTo[0]);
+					final int to = Integer.parseInt(fromTo[1]);
+					// The last range fails once, so that the first download is interrupted.
+					if (to == body.length-1  &&  failures.getAndDecrement() > 0) {
+						HttpStubServer.send(ex, 503, null);
+					} else {
+						ex.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
+						HttpStubServer.send(ex, 206, Arrays.copyOfRange(body, from, to+1));
+					}
+				}
+			});
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/archive.zip"));
+			doTest("range-download", null, (t) -> {
+				assertTrue(t instanceof MojoExecutionException);
+				assertTrue(t.getMessage(), t.getMessage().contains("got 503"));
+			}, parameters);
+			assertFalse(Files.exists(outputFile));
+			assertTrue(Files.isRegularFile(stateFile));
+			final int requestsBefore = server.getRequestCount("/archive.zip");
+			// The second download resumes, fetching the missing ranges only.
+			doTest("range-download", null, null, parameters);
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+			assertFalse(Files.exists(stateFile));
+			assertTrue(server.getRequestCount("/archive.zip") - requestsBefore < requestsBefore);
+		}
+	}
+
+	@Test
+	void testUpload() throws Exception {
+		final Path bodyFile = Paths.get("src/test/resources/com/github/jochenw/jmp/jwicrl/junit/upload/pom.xml");
+		final Path outputFile = Paths.get("target/jwicrl-test/upload/response.txt");
+		final byte[] body = Files.readAllBytes(bodyFile);
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/upload", (ex) -> {
+				InputStream in = ex.getRequestBody();
+				if ("gzip".equals(ex.getRequestHeaders().getFirst("Content-Encoding"))) {
+					in = new GZIPInputStream(in);
+				}
+				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[8192];
+				for (int res = in.read(buffer);  res != -1;  res = in.read(buffer)) {
+					baos.write(buffer, 0, res);
+				}
+				final boolean matching = Arrays.equals(body, baos.toByteArray());
+				final String response = ex.getRequestMethod() + ", " + matching
+						+ ", " + ex.getRequestHeaders().getFirst("Content-Length")
+						+ ", " + ex.getRequestHeaders().getFirst("Content-Encoding");
+				HttpStubServer.send(ex, 201, response.getBytes(StandardCharsets.UTF_8));
+			});
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/upload"));
+			doTest("upload", null, null, parameters);
+			assertEquals("PUT, true, " + body.length + ", null",
+					new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+			// A compressed body is sent in chunked mode, without Content-Length.
+			parameters.put("bodyGzip", Boolean.TRUE);
+			doTest("upload", null, null, parameters);
+			assertEquals("PUT, true, null, gzip", new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+			// GET requests have no body.
+			parameters.put("method", "GET");
+			doTest("upload", null, (t) -> {
+				assertTrue(t instanceof MojoFailureException);
+				assertEquals("A request body requires a method like POST, or PUT, got GET", t.getMessage());
+			}, parameters);
+		}
+	}
+
+	@Test
+	void testCompressedResponse() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/compressed/data.json");
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0;  i < 1000;  i++) {
+			sb.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append("}");
+		}
+		final byte[] body = sb.append("]").toString().getBytes(StandardCharsets.UTF_8);
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/data.json", (ex) -> {
+				final String acceptEncoding = ex.getRequestHeaders().getFirst("Accept-Encoding");
+				if (acceptEncoding != null  &&  acceptEncoding.contains("gzip")) {
+					final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					try (GZIPOutputStream gzos = new GZIPOutputStream(baos)) {
+						gzos.write(body);
+					}
+					ex.getResponseHeaders().add("Content-Encoding", "gzip");
+					HttpStubServer.send(ex, 200, baos.toByteArray());
+				} else {
+					HttpStubServer.send(ex, 200, body);
+				}
+			});
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/data.json"));
+			// The output file receives the uncompressed body.
+			doTest("compressed", null, null, parameters);
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+		}
+	}
+
+	@Test
+	void testRetriesAndHedging() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/retries/data.txt");
+		final byte[] body = "Some data".getBytes(StandardCharsets.UTF_8);
+		try (HttpStubServer server = new HttpStubServer()) {
+			final AtomicInteger failures = new AtomicInteger(1);
+			server.addHandler("/data.txt", (ex) -> {
+				if (failures.getAndDecrement() > 0) {
+					HttpStubServer.send(ex, 503, null);
+				} else {
+					HttpStubServer.send(ex, 200, body);
+				}
+			});
+			server.addHandler("/slow.txt", (ex) -> {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				HttpStubServer.send(ex, 200, body);
+			});
+			server.addHandler("/post.txt", (ex) -> HttpStubServer.send(ex, 503, null));
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/data.txt"));
+			// The first request fails with 503, the retry succeeds.
+			doTest("retries", null, null, parameters);
+			assertEquals(2, server.getRequestCount("/data.txt"));
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+
+			// The slow server doesn't respond in time, so the mirror receives a hedged request.
+			Files.delete(outputFile);
+			parameters.put("url", server.getUrl("/slow.txt"));
+			parameters.put("mirrors", Arrays.asList(server.getUrl("/data.txt")));
+			parameters.put("hedge", Boolean.TRUE);
+			parameters.put("hedgeDelay", Long.valueOf(100));
+			final long startTime = System.currentTimeMillis();
+			doTest("retries", null, null, parameters);
+			assertTrue(String.valueOf(System.currentTimeMillis() - startTime),
+					System.currentTimeMillis() - startTime < 5000);
+			assertEquals(3, server.getRequestCount("/data.txt"));
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+
+			// A POST request isn't idempotent, and isn't retried.
+			parameters.clear();
+			parameters.put("url", server.getUrl("/post.txt"));
+			parameters.put("method", "POST");
+			parameters.put("bodyText", "Some text");
+			doTest("retries", null, (t) -> {
+				assertEquals("Response error: 503, Service Unavailable", t.getMessage());
+			}, parameters);
+			assertEquals(1, server.getRequestCount("/post.txt"));
+		}
+	}
 
-		InputStream is = getClass().getResourceAsStream( "/" + getPluginDescriptorLocation() );
+	@Test
+	void testChecksum() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/checksum/data.bin");
+		final Path indexFile = Paths.get("target/jwicrl-test/checksum/digest-index.properties");
+		Files.deleteIfExists(outputFile);
+		Files.deleteIfExists(indexFile);
+		final byte[] body = new byte[100000];
+		for (int i = 0;  i < body.length;  i++) {
+			body[i] = (byte) i;
+		}
+		final String sha256 = ResponseCache.toHex(MessageDigest.getInstance("SHA-256").digest(body));
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/data.bin", (ex) -> HttpStubServer.send(ex, 200, body));
+			server.addHandler("/data.bin.sha256", (ex) -> HttpStubServer.send(ex, 200,
+					(sha256 + "  data.bin\n").getBytes(StandardCharsets.UTF_8)));
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/data.bin"));
+			parameters.put("checksum", "sha256:" + sha256);
+			doTest("checksum", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+			assertTrue(Files.isRegularFile(indexFile));
 
-		XmlStreamReader reader = new XmlStreamReader( is );
+			// The output file is present, with the expected checksum: No request is sent.
+			doTest("checksum", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
 
-		final PlexusContainer container = getContainer();
-		final Map<Object, Object> contextData = container.getContext().getContextData();
-		final Map<String,Object> containerData = (Map<String,Object>) contextData;
-		InterpolationFilterReader interpolationFilterReader =
-				new InterpolationFilterReader( new BufferedReader( reader ), containerData );
+			// Same, with the checksum taken from a checksum file.
+			parameters.remove("checksum");
+			parameters.put("checksumUrl", server.getUrl("/data.bin.sha256"));
+			doTest("checksum", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
+			assertEquals(1, server.getRequestCount("/data.bin.sha256"));
 
-		PluginDescriptor pluginDescriptor = new PluginDescriptorBuilder().build( interpolationFilterReader );
+			// A mismatch fails the request, and removes the output file.
+			parameters.remove("checksumUrl");
+			parameters.put("checksum", (sha256.charAt(0) == '0' ? "1" : "0") + sha256.substring(1));
+			doTest("checksum", null, (t) -> {
+				assertTrue(t.getMessage(), t.getMessage().startsWith("Checksum mismatch for "));
+			}, parameters);
+			assertEquals(2, server.getRequestCount("/data.bin"));
+			assertFalse(Files.exists(outputFile));
 
-		Artifact artifact =
-				lookup( RepositorySystem.class ).createArtifact( pluginDescriptor.getGroupId(),
-						pluginDescriptor.getArtifactId(),
-						pluginDescriptor.getVersion(), ".jar" );
+			parameters.put("checksum", "sha256:abc");
+			doTest("checksum", null, (t) -> {
+				assertEquals("Invalid parameter 'checksum': Expected 64 (SHA-256), or 128 (SHA-512) hex digits,"
+						+ " got 3 in sha256:abc", t.getMessage());
+			}, parameters);
+		}
+	}
 
-		artifact.setFile( getPluginArtifactFile() );
-		pluginDescriptor.setPluginArtifact( artifact );
-		pluginDescriptor.setArtifacts( Arrays.asList( artifact ) );
+	@Test
+	void testRequestMetrics() throws Exception {
+		final Path outputDir = Paths.get("target/jwicrl-test/request-metrics");
+		final Path reportFile = outputDir.resolve("request-metrics.jsonl");
+		Files.deleteIfExists(reportFile);
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/data.bin", (ex) -> HttpStubServer.send(ex, 200, new byte[100000]));
+			server.addHandler("/missing.bin", (ex) -> HttpStubServer.send(ex, 404, null));
+			final List<RequestDefinition> requests = new ArrayList<>();
+			requests.add(new RequestDefinition(server.getUrl("/data.bin"), null, null, null, outputDir.resolve("data.bin")));
+			requests.add(new RequestDefinition(server.getUrl("/missing.bin"), null, null, null,
+					outputDir.resolve("missing.bin")));
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("requests", requests);
+			doTest("request-metrics", null, (t) -> {
+				assertEquals("1 of 2 requests failed: " + server.getUrl("/missing.bin"), t.getMessage());
+			}, parameters);
+		}
+		// One JSON object per request, and line.
+		final List<String> lines = Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		final String ok = lines.get(0);
+		assertTrue(ok, ok.contains("\"status\": \"ok\", \"statusCode\": 200, \"bytes\": 100000,"));
+		assertTrue(ok, ok.contains("\"connectMillis\": "));
+		assertTrue(ok, ok.contains("\"ttfbMillis\": "));
+		assertTrue(ok, ok.contains("\"transferMillis\": "));
+		final String failed = lines.get(1);
+		assertTrue(failed, failed.contains("\"status\": \"failed\", \"error\": \"Response error: 404, Not Found\""));
 
-		for ( ComponentDescriptor<?> desc : pluginDescriptor.getComponents() )
-		{
-			getContainer().addComponentDescriptor( desc );
+		final RequestMetrics metrics = new RequestMetrics(new URL("http://localhost/data.bin"));
+		metrics.setConnectMillis(2);
+		metrics.setTtfbMillis(10);
+		metrics.setTransferMillis(500);
+		metrics.setReceivedBytes(3*1024*1024);
+		assertEquals("connect=2ms, ttfb=10ms, transfer=500ms, throughput=6.0 MB/s", metrics.toString());
+	}
+
+	@Test
+	void testExtract() throws Exception {
+		final StringBuilder sb = new StringBuilder("{\"build\": {\"id\": \"b-42\"}, \"builds\": [");
+		for (int i = 0;  i < 10000;  i++) {
+			sb.append(i == 0 ? "" : ", ").append("{\"version\": \"1.").append(10000-i).append("\"}");
 		}
+		final byte[] json = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+		final byte[] xml = ("<?xml version='1.0'?><metadata xmlns='urn:test'><versioning><release>2.1</release>"
+				+ "<versions><version>1.0</version><version>2.1</version></versions></versioning></metadata>")
+				.getBytes(StandardCharsets.UTF_8);
+		final Path outputFile = Paths.get("target/jwicrl-test/extract/maven-metadata.xml");
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/build.json", (ex) -> HttpStubServer.send(ex, 200, json));
+			server.addHandler("/maven-metadata.xml", (ex) -> HttpStubServer.send(ex, 200, xml));
+			final MavenProject project = new MavenProject();
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/build.json"));
+			parameters.put("project", project);
+			// Without an output file, reading stops after the last match.
+			doTest("extract", null, null, parameters);
+			assertEquals("b-42", project.getProperties().getProperty("build.id"));
+			assertEquals("1.10000", project.getProperties().getProperty("build.latest"));
+
+			// XPath expressions, evaluated while the output file is written.
+			final Map<String,String> extract = new HashMap<>();
+			extract.put("release", "/metadata/versioning/release");
+			extract.put("oldest", "/metadata/versioning/versions/version[1]/text()");
+			parameters.put("url", server.getUrl("/maven-metadata.xml"));
+			parameters.put("outputFile", outputFile);
+			parameters.put("extract", extract);
+			doTest("extract", null, null, parameters);
+			assertEquals("2.1", project.getProperties().getProperty("release"));
+			assertEquals("1.0", project.getProperties().getProperty("oldest"));
+			assertArrayEquals(xml, Files.readAllBytes(outputFile));
+
+			extract.put("missing", "/metadata/versioning/latest");
+			doTest("extract", null, (t) -> {
+				assertEquals("No match in the response of " + server.getUrl("/maven-metadata.xml")
+						+ " for: missing=/metadata/versioning/latest", t.getMessage());
+			}, parameters);
 
-		mojoDescriptors = new HashMap<String, MojoDescriptor>();
-		for ( MojoDescriptor mojoDescriptor : pluginDescriptor.getMojos() )
-		{
-			mojoDescriptors.put( mojoDescriptor.getGoal(), mojoDescriptor );
+			extract.put("missing", "$.latest");
+			doTest("extract", null, (t) -> {
+				assertEquals("Invalid parameter 'extract': JSONPath, and XPath expressions can't be mixed", t.getMessage());
+			}, parameters);
 		}
 	}
-	@AfterEach protected void tearDown() throws Exception { super-setUp(); super.tearDown(); }
 
-	private void setFieldValue(Object pBean, String pFieldName, Object pValue) {
+	@Test
+	void testSharedClients() throws Exception {
+		// Executions with the same trust, and proxy settings share a client.
+		final SessionConnectionPool pool = new SessionConnectionPool();
+		final SessionConnectionPool.Client client = pool.getClient(true, null, null, null);
+		assertSame(client, pool.getClient(true, null, null, null));
+		assertNotSame(client, pool.getClient(false, null, null, null));
+		assertNotSame(client, pool.getClient(true, null, null, "proxy.company.com:3128"));
+		assertFalse(client.getKey().contains("secret"));
+		assertNotEquals(SessionConnectionPool.getKey(false, null, "secret", null),
+				SessionConnectionPool.getKey(false, null, "other", null));
+	}
+
+	@Test
+	void testSslContextCache() throws Exception {
+		final Path trustStore = Paths.get("target/jwicrl-test/ssl-context-cache/truststore.p12");
+		Files.createDirectories(trustStore.getParent());
+		final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		keyStore.load(null, null);
+		try (OutputStream out = Files.newOutputStream(trustStore)) {
+			keyStore.store(out, "changeit".toCharArray());
+		}
+		Files.setLastModifiedTime(trustStore, FileTime.fromMillis(1000000000000L));
+		// The same settings share an SSL context, even across sessions.
+		final SSLSocketFactory factory = SslContextCache.getSocketFactory(false, trustStore, "changeit");
+		assertSame(factory, SslContextCache.getSocketFactory(false, trustStore.toAbsolutePath(), "changeit"));
+		assertNotSame(factory, SslContextCache.getSocketFactory(true, null, null));
+		assertSame(SslContextCache.getSocketFactory(true, null, null), SslContextCache.getSocketFactory(true, null, null));
+		final SessionConnectionPool pool = new SessionConnectionPool();
+		final SessionConnectionPool.Client client = pool.getClient(false, trustStore, "changeit", null);
+		assertSame(client, pool.getClient(false, trustStore, "changeit", null));
+		assertSame(factory, new SessionConnectionPool().getClient(false, trustStore, "changeit", null).getSocketFactory());
+
+		// A modified trust store is loaded again.
+		Files.setLastModifiedTime(trustStore, FileTime.fromMillis(1000000001000L));
+		final SSLSocketFactory newFactory = SslContextCache.getSocketFactory(false, trustStore, "changeit");
+		assertNotSame(factory, newFactory);
+		assertSame(newFactory, SslContextCache.getSocketFactory(false, trustStore, "changeit"));
+		assertNotSame(client, pool.getClient(false, trustStore, "changeit", null));
+		assertFalse(SslContextCache.getKey(false, trustStore, "changeit").contains("changeit"));
+
+		// A wrong password is reported as an invalid parameter.
 		try {
-			final Field field = pBean.getClass().getDeclaredField(pFieldName);
-			if (!field.isAccessible()) {
-				field.setAccessible(true);
-			}
-			field.set(pBean, pValue);
-		} catch (Throwable t) {
-			throw new UndeclaredThrowableException(t);
+			SslContextCache.getSocketFactory(false, trustStore, "wrong");
+			Assertions.fail("Expected Exception");
+		} catch (MojoFailureException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid parameter 'trustStore': Unable to load trust store "));
 		}
 	}
-	
+
 	@Test
-	void testSkip() throws Exception {
-		doTest("skip-execution", "", null);
+	void testArchive() throws Exception {
+		final Path outputFile = Paths.get("target/jwicrl-test/archive/data.bin");
+		final Path echoFile = Paths.get("target/jwicrl-test/archive/echo.txt");
+		final Path archiveDir = Paths.get("target/jwicrl-test/archive/requests");
+		Files.deleteIfExists(outputFile);
+		Files.deleteIfExists(archiveDir.resolve(RequestArchive.DATA_FILE));
+		Files.deleteIfExists(archiveDir.resolve(RequestArchive.INDEX_FILE));
+		final byte[] body = new byte[100000];
+		for (int i = 0;  i < body.length;  i++) {
+			body[i] = (byte) i;
+		}
+		try (HttpStubServer server = new HttpStubServer()) {
+			server.addHandler("/data.bin", (ex) -> HttpStubServer.send(ex, 200, body));
+			server.addHandler("/echo", (ex) -> {
+				final InputStream in = ex.getRequestBody();
+				final byte[] buffer = new byte[8192];
+				int bytes = 0;
+				for (int res = in.read(buffer);  res != -1;  res = in.read(buffer)) {
+					bytes += res;
+				}
+				HttpStubServer.send(ex, 201, ("Received " + bytes + " bytes").getBytes(StandardCharsets.UTF_8));
+			});
+			final Map<String,Object> parameters = new HashMap<>();
+			parameters.put("url", server.getUrl("/data.bin"));
+			doTest("archive", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
+			assertTrue(Files.isRegularFile(archiveDir.resolve(RequestArchive.DATA_FILE)));
+			assertTrue(Files.isRegularFile(archiveDir.resolve(RequestArchive.INDEX_FILE)));
+
+			// The response is replayed from the archive, without sending a request.
+			Files.delete(outputFile);
+			parameters.put("archiveMode", "replay");
+			doTest("archive", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+
+			// Same, after the index has been lost.
+			Files.delete(outputFile);
+			Files.delete(archiveDir.resolve(RequestArchive.INDEX_FILE));
+			doTest("archive", null, null, parameters);
+			assertEquals(1, server.getRequestCount("/data.bin"));
+			assertArrayEquals(body, Files.readAllBytes(outputFile));
+
+			// The request body is part of the key: Requests, which haven't been recorded, fail.
+			parameters.put("url", server.getUrl("/echo"));
+			parameters.put("method", "POST");
+			parameters.put("outputFile", echoFile);
+			parameters.put("bodyText", "Hello, world!");
+			doTest("archive", null, (t) -> {
+				assertTrue(t.getMessage(), t.getMessage().startsWith("No archived response for POST "
+						+ server.getUrl("/echo") + " in "));
+			}, parameters);
+			assertEquals(0, server.getRequestCount("/echo"));
+
+			// In auto mode, missing responses are recorded, and replayed afterwards.
+			parameters.put("archiveMode", "auto");
+			doTest("archive", null, null, parameters);
+			assertEquals("Received 13 bytes", new String(Files.readAllBytes(echoFile), StandardCharsets.UTF_8));
+			Files.delete(echoFile);
+			doTest("archive", null, null, parameters);
+			assertEquals("Received 13 bytes", new String(Files.readAllBytes(echoFile), StandardCharsets.UTF_8));
+			assertEquals(1, server.getRequestCount("/echo"));
+			parameters.put("bodyText", "Hello, world");
+			doTest("archive", null, null, parameters);
+			assertEquals("Received 12 bytes", new String(Files.readAllBytes(echoFile), StandardCharsets.UTF_8));
+			assertEquals(2, server.getRequestCount("/echo"));
+
+			parameters.put("archiveMode", "always");
+			doTest("archive", null, (t) -> {
+				assertEquals("Invalid value for parameter 'archiveMode': Expected off, record, replay, or auto,"
+						+ " got always", t.getMessage());
+			}, parameters);
+		}
 	}
 
 	private File requireTestPom(String pTestId) {
@@ -106,6 +568,10 @@ class JwiCrlMojoTest extends AbstractMojoTestCase {
 	}
 
 	private void doTest(String pTestId, String pExpectedOutput, Consumer<Throwable> pErrorValidator) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
+		doTest(pTestId, pExpectedOutput, pErrorValidator, null);
+	}
+
+	private void doTest(String pTestId, String pExpectedOutput, Consumer<Throwable> pErrorValidator, Map<String,Object> pParameters) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
 		final File pom = requireTestPom(pTestId);
 		final JwiCrlMojo mojo;
 		try {
@@ -115,6 +581,11 @@ class JwiCrlMojoTest extends AbstractMojoTestCase {
 			throw e;
 		}
 		assertNotNull(mojo);
+		if (pParameters != null) {
+			for (Map.Entry<String,Object> en : pParameters.entrySet()) {
+				setVariableValueToObject(mojo, en.getKey(), en.getValue());
+			}
+		}
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		final PrintStream savedSystemOut = System.out;
 		try {
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+
+import groovy.transform.CompileStatic;
+import groovy.transform.TypeChecked;
+
+
+/**
+ * Abstract base class for the goals of the JWI Groovy Maven plugin. Provides
+ * the parameters, which control, how scripts are compiled, and cached. The
+ * compile goal, and the run goal must use the same compiler settings, so that
+ * the run goal can use the precompiled scripts.
+ */
+public abstract class AbstractJwiGrvMojo extends AbstractMojo {
+	@Parameter(property="jwigrv.skip", defaultValue="false") 
+	private boolean skip;
+
+	@Parameter(defaultValue="${project}", readonly=true, required=true)
+	private MavenProject project;
+
+	@Parameter(defaultValue="${session}", readonly=true, required=true)
+	private MavenSession session;
+
+	/**
+	 * Whether to compile scripts statically, as if they were annotated with
+	 * {@code @CompileStatic}. This avoids dynamic dispatch, but requires, that
+	 * variables from the binding are accessed via {@code binding}.
+	 */
+	@Parameter(property="jwigrv.compileStatic", defaultValue="false")
+	private boolean compileStatic;
+
+	/**
+	 * Whether to type check scripts, as if they were annotated with
+	 * {@code @TypeChecked}. Ignored, if {@code compileStatic} is true.
+	 */
+	@Parameter(property="jwigrv.typeChecked", defaultValue="false")
+	private boolean typeChecked;
+
+	/**
+	 * The bytecode level of the compiled scripts, for example "11", or "17".
+	 * Defaults to Groovy's default.
+	 */
+	@Parameter(property="jwigrv.targetBytecode")
+	private String targetBytecode;
+
+	/**
+	 * Groovy's compiler optimization options, for example {@code indy}, with
+	 * the values "true", or "false".
+	 */
+	@Parameter
+	private Map<String,String> optimizationOptions;
+
+	/**
+	 * Directory, where compiled scripts are cached. Scripts are compiled again
+	 * only, if the script source, the Groovy version, or the compiler settings change.
+	 */
+	@Parameter(property="jwigrv.cacheDir", defaultValue="${project.build.directory}/jwigrv/classes")
+	private File cacheDirectory;
+
+	/**
+	 * Maximum number of compiled script classes, which are kept in memory, and
+	 * shared between all executions of the Maven session. Zero disables sharing.
+	 */
+	@Parameter(property="jwigrv.sessionCacheSize", defaultValue="64")
+	private int sessionCacheSize;
+
+	protected boolean isSkip() {
+		return skip;
+	}
+
+	protected MavenProject getProject() {
+		return project;
+	}
+
+	/**
+	 * Returns, whether Maven is running a parallel build (mvn -T).
+	 * @return True, if executions of this plugin may run concurrently.
+	 */
+	protected boolean isParallelBuild() {
+		return session != null  &&  session.isParallel();
+	}
+
+	protected boolean isCompileStatic() {
+		return compileStatic;
+	}
+
+	protected boolean isTypeChecked() {
+		return typeChecked  &&  !compileStatic;
+	}
+
+	protected Path getBaseDir() {
+		if (project == null) {
+			// For testing: The JwiGrvMojoTest uses this to inject a base directory.
+			final String baseDirProperty = System.getProperty("com.github.jochenw.jmp.jwigrv.BaseDir");
+			if (baseDirProperty != null) {
+				return Paths.get(baseDirProperty);
+			} else {
+				return null;
+			}
+		} else {
+			final File baseDir = project.getBasedir();
+			return baseDir == null ? null : baseDir.toPath();
+		}
+	}
+
+	protected CompilerConfiguration getCompilerConfiguration() throws MojoFailureException {
+		return newCompilerConfiguration(compileStatic, typeChecked, targetBytecode, optimizationOptions);
+	}
+
+	protected String getCompilerSettingsId(CompilerConfiguration pConfig) {
+		return getCompilerSettingsId(pConfig, compileStatic, typeChecked);
+	}
+
+	/**
+	 * Creates a compiler configuration with the given settings.
+	 * @param pCompileStatic Whether to compile scripts statically.
+	 * @param pTypeChecked Whether to type check scripts.
+	 * @param pTargetBytecode The bytecode level, or null for Groovy's default.
+	 * @param pOptimizationOptions Groovy's optimization options, or null.
+	 * @return The created compiler configuration.
+	 * @throws MojoFailureException The target bytecode, or an optimization option is invalid.
+	 */
+	static CompilerConfiguration newCompilerConfiguration(boolean pCompileStatic, boolean pTypeChecked,
+			String pTargetBytecode, Map<String,String> pOptimizationOptions) throws MojoFailureException {
+		final CompilerConfiguration config = new CompilerConfiguration(CompilerConfiguration.DEFAULT);
+		if (pTargetBytecode != null  &&  pTargetBytecode.trim().length() > 0) {
+			final String tb = pTargetBytecode.trim();
+			if (!Arrays.asList(CompilerConfiguration.ALLOWED_JDKS).contains(tb)) {
+				throw new MojoFailureException("Invalid value for parameter 'targetBytecode': Expected one of "
+						+ String.join(", ", CompilerConfiguration.ALLOWED_JDKS) + ", got " + tb);
+			}
+			config.setTargetBytecode(tb);
+		}
+		if (pOptimizationOptions != null  &&  !pOptimizationOptions.isEmpty()) {
+			final Map<String,Boolean> options = new HashMap<>(config.getOptimizationOptions());
+			for (Map.Entry<String,String> en : pOptimizationOptions.entrySet()) {
+				final String value = en.getValue() == null ? "" : en.getValue().trim();
+				if (!"true".equalsIgnoreCase(value)  &&  !"false".equalsIgnoreCase(value)) {
+					throw new MojoFailureException("Invalid value for parameter 'optimizationOptions': "
+							+ "Expected true, or false for option " + en.getKey() + ", got " + en.getValue());
+				}
+				options.put(en.getKey(), Boolean.valueOf(value));
+			}
+			config.setOptimizationOptions(options);
+		}
+		if (pCompileStatic) {
+			config.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+		} else if (pTypeChecked) {
+			config.addCompilationCustomizers(new ASTTransformationCustomizer(TypeChecked.class));
+		}
+		return config;
+	}
+
+	static String getCompilerSettingsId(CompilerConfiguration pConfig, boolean pCompileStatic, boolean pTypeChecked) {
+		return ScriptClassCache.describe(pConfig) + ";compileStatic=" + pCompileStatic
+				+ ";typeChecked=" + (pTypeChecked  &&  !pCompileStatic);
+	}
+
+	protected String getTargetBytecode() {
+		return targetBytecode;
+	}
+
+	protected Map<String,String> getOptimizationOptions() {
+		return optimizationOptions;
+	}
+
+	protected Path getCacheDirectory() {
+		return cacheDirectory == null ? null : cacheDirectory.toPath();
+	}
+
+	protected ScriptClassCache newScriptClassCache(Path pCacheDirectory) {
+		return new ScriptClassCache(pCacheDirectory, SessionScriptCache.of(session, sessionCacheSize), getLog());
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * A {@link Log}, which collects messages, and the scripts standard output,
+ * in memory, until they are replayed into the actual Maven log. This allows
+ * to print the output of scripts, which are running concurrently, without
+ * interleaving.
+ */
+public class BufferedLog implements Log {
+	private enum Level { DEBUG, INFO, WARN, ERROR, OUT }
+
+	private static class Entry {
+		private final Level level;
+		private final StringBuilder message;
+		private final Throwable error;
+
+		Entry(Level pLevel, CharSequence pMessage, Throwable pError) {
+			level = pLevel;
+			message = pMessage == null ? null : new StringBuilder(pMessage);
+			error = pError;
+		}
+	}
+
+	/**
+	 * Lock, which is held while replaying, so that the output of concurrent
+	 * executions (for example in a parallel Maven build) isn't interleaved.
+	 */
+	static final Object REPLAY_LOCK = new Object();
+
+	private final Log target;
+	private final List<Entry> entries = new ArrayList<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param pTarget The log, into which messages are replayed. The enabled levels
+	 *   are taken from this log as well.
+	 */
+	public BufferedLog(Log pTarget) {
+		target = pTarget;
+	}
+
+	private synchronized void add(Level pLevel, CharSequence pMessage, Throwable pError) {
+		entries.add(new Entry(pLevel, pMessage, pError));
+	}
+
+	private synchronized void addOutput(char[] pChars, int pOffset, int pLength) {
+		final Entry last = entries.isEmpty() ? null : entries.get(entries.size()-1);
+		if (last != null  &&  last.level == Level.OUT) {
+			last.message.append(pChars, pOffset, pLength);
+		} else {
+			entries.add(new Entry(Level.OUT, new String(pChars, pOffset, pLength), null));
+		}
+	}
+
+	/**
+	 * Returns a writer, which can be used as the scripts standard output.
+	 * Text written to this writer is replayed into the given stream by
+	 * {@link #replay(PrintStream)}.
+	 * @return A writer, which appends to this log.
+	 */
+	public PrintWriter getOutput() {
+		return new PrintWriter(new Writer() {
+			@Override
+			public void write(char[] pChars, int pOffset, int pLength) {
+				addOutput(pChars, pOffset, pLength);
+			}
+			@Override public void flush() {}
+			@Override public void close() {}
+		}, true);
+	}
+
+	/**
+	 * Returns, whether this log is empty.
+	 * @return True, if no messages, and no output, have been collected.
+	 */
+	public synchronized boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Replays the collected messages into the target log, and the collected
+	 * output into the given stream. Afterwards, the buffer is empty.
+	 * @param pOut The stream, where the scripts output is written to.
+	 */
+	public void replay(PrintStream pOut) {
+		synchronized (REPLAY_LOCK) {
+			doReplay(pOut);
+		}
+	}
+
+	private synchronized void doReplay(PrintStream pOut) {
+		for (Entry en : entries) {
+			switch (en.level) {
+			case DEBUG:
+				if (en.message == null) { target.debug(en.error); } else { target.debug(en.message, en.error); }
+				break;
+			case INFO:
+				if (en.message == null) { target.info(en.error); } else { target.info(en.message, en.error); }
+				break;
+			case WARN:
+				if (en.message == null) { target.warn(en.error); } else { target.warn(en.message, en.error); }
+				break;
+			case ERROR:
+				if (en.message == null) { target.error(en.error); } else { target.error(en.message, en.error); }
+				break;
+			case OUT:
+				pOut.print(en.message);
+				break;
+			default:
+				throw new IllegalStateException("Invalid level: " + en.level);
+			}
+		}
+		pOut.flush();
+		entries.clear();
+	}
+
+	@Override public boolean isDebugEnabled() { return target.isDebugEnabled(); }
+	@Override public boolean isInfoEnabled() { return target.isInfoEnabled(); }
+	@Override public boolean isWarnEnabled() { return target.isWarnEnabled(); }
+	@Override public boolean isErrorEnabled() { return target.isErrorEnabled(); }
+
+	@Override public void debug(CharSequence pContent) { debug(pContent, null); }
+	@Override public void debug(Throwable pError) { debug(null, pError); }
+	@Override public void debug(CharSequence pContent, Throwable pError) {
+		if (isDebugEnabled()) { add(Level.DEBUG, pContent, pError); }
+	}
+
+	@Override public void info(CharSequence pContent) { info(pContent, null); }
+	@Override public void info(Throwable pError) { info(null, pError); }
+	@Override public void info(CharSequence pContent, Throwable pError) {
+		if (isInfoEnabled()) { add(Level.INFO, pContent, pError); }
+	}
+
+	@Override public void warn(CharSequence pContent) { warn(pContent, null); }
+	@Override public void warn(Throwable pError) { warn(null, pError); }
+	@Override public void warn(CharSequence pContent, Throwable pError) {
+		if (isWarnEnabled()) { add(Level.WARN, pContent, pError); }
+	}
+
+	@Override public void error(CharSequence pContent) { error(pContent, null); }
+	@Override public void error(Throwable pError) { error(null, pError); }
+	@Override public void error(CharSequence pContent, Throwable pError) {
+		if (isErrorEnabled()) { add(Level.ERROR, pContent, pError); }
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import groovy.lang.GroovySystem;
+
+
+/**
+ * The client side of the {@link JwiGrvDaemon}: Locates a running daemon via its
+ * state file, or starts a new one, and sends execution requests to it.
+ * There is one daemon per Java installation, and plugin class path, so that
+ * different plugin versions don't share a daemon.
+ */
+public class DaemonClient {
+	private static final long STARTUP_TIMEOUT_MILLIS = 60000L;
+	/**
+	 * File locks are held by the JVM, not by the thread, so concurrent executions
+	 * within the same build must be serialized by other means.
+	 */
+	private static final Object START_LOCK = new Object();
+
+	private final Path directory;
+	private final int idleTimeoutSeconds;
+	private final Log log;
+	private final String classPath;
+	private final Path stateFile, lockFile, logFile;
+
+	/**
+	 * Creates a new instance.
+	 * @param pDirectory The directory, where the daemons state file, and log file are kept.
+	 * @param pIdleTimeoutSeconds The time, after which an idle daemon terminates.
+	 * @param pClassPathElements The plugins artifacts, including the dependencies,
+	 *   which have been added to the plugin in the POM, so that scripts can use them
+	 *   in the daemon, too.
+	 * @param pLog The plugins log.
+	 * @throws MojoExecutionException The plugins class path could not be determined.
+	 */
+	public DaemonClient(Path pDirectory, int pIdleTimeoutSeconds, List<Path> pClassPathElements, Log pLog)
+			throws MojoExecutionException {
+		directory = pDirectory;
+		idleTimeoutSeconds = pIdleTimeoutSeconds;
+		log = pLog;
+		classPath = getClassPath(pClassPathElements);
+		final String id = getDaemonId(System.getProperty("java.home") + File.pathSeparator + classPath);
+		stateFile = directory.resolve("daemon-" + id + ".properties");
+		lockFile = directory.resolve("daemon-" + id + ".lock");
+		logFile = directory.resolve("daemon-" + id + ".log");
+	}
+
+	private static String getClassPath(List<Path> pClassPathElements) throws MojoExecutionException {
+		final Set<String> entries = new LinkedHashSet<>();
+		// Maven's own API is not part of the plugins artifacts, so it is added explicitly.
+		for (Class<?> cl : new Class<?>[] { JwiGrvDaemon.class, GroovySystem.class, Log.class, MavenSession.class }) {
+			final CodeSource codeSource = cl.getProtectionDomain().getCodeSource();
+			if (codeSource == null  ||  codeSource.getLocation() == null) {
+				throw new MojoExecutionException("Unable to determine the location of " + cl.getName());
+			}
+			try {
+				entries.add(Paths.get(codeSource.getLocation().toURI()).toString());
+			} catch (URISyntaxException e) {
+				throw new MojoExecutionException("Invalid location of " + cl.getName() + ": " + codeSource.getLocation(), e);
+			}
+		}
+		for (Path p : pClassPathElements) {
+			entries.add(p.toAbsolutePath().toString());
+		}
+		return String.join(File.pathSeparator, entries);
+	}
+
+	private static String getDaemonId(String pValue) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return ScriptClassCache.toHex(md.digest(pValue.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Executes a script in the daemon. The daemon is started, if necessary.
+	 * @param pRequest The request, which describes the script.
+	 * @param pLog The log, which receives the scripts log messages.
+	 * @param pOut The scripts standard output, or null to use {@link System#out}.
+	 * @throws MojoExecutionException The daemon is unavailable, or compiling the script failed.
+	 * @throws MojoFailureException Running the script failed.
+	 */
+	public void run(DaemonRequest pRequest, Log pLog, PrintWriter pOut) throws MojoExecutionException, MojoFailureException {
+		try (Connection connection = getConnection();
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.socket.getOutputStream()));
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(connection.socket.getInputStream()))) {
+			pRequest.write(out, connection.token);
+			for (;;) {
+				final byte type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					throw new MojoExecutionException("Lost connection to the Groovy daemon, see " + logFile);
+				}
+				final byte[] bytes = DaemonRequest.readBytes(in);
+				if (type == JwiGrvDaemon.FRAME_OUTPUT) {
+					if (pOut == null) {
+						System.out.write(bytes, 0, bytes.length);
+						System.out.flush();
+					} else {
+						// The daemon uses the same default encoding, see start().
+						pOut.write(new String(bytes, Charset.defaultCharset()));
+						pOut.flush();
+					}
+					continue;
+				}
+				final String message = new String(bytes, StandardCharsets.UTF_8);
+				switch (type) {
+				case JwiGrvDaemon.FRAME_DEBUG: pLog.debug(message); break;
+				case JwiGrvDaemon.FRAME_INFO: pLog.info(message); break;
+				case JwiGrvDaemon.FRAME_WARN: pLog.warn(message); break;
+				case JwiGrvDaemon.FRAME_ERROR: pLog.error(message); break;
+				case JwiGrvDaemon.FRAME_SUCCESS:
+					return;
+				case JwiGrvDaemon.FRAME_COMPILATION_FAILED:
+					pLog.error("Compilation of Groovy script failed: " + message);
+					throw new MojoExecutionException("Compilation of Groovy script failed: " + message);
+				case JwiGrvDaemon.FRAME_EXECUTION_FAILED: {
+					final int offset = message.indexOf('\n');
+					pLog.error("Error while executing script " + pRequest.getScriptId() + ": "
+							+ (offset == -1 ? message : message.substring(0, offset)));
+					if (offset != -1) {
+						pLog.debug(message.substring(offset+1));
+					}
+					throw new MojoFailureException("Error while executing script " + pRequest.getScriptId()
+						+ " in the Groovy daemon: " + (offset == -1 ? message : message.substring(0, offset)));
+				}
+				case JwiGrvDaemon.FRAME_REJECTED:
+					throw new MojoExecutionException("Request rejected by the Groovy daemon: " + message);
+				default:
+					throw new MojoExecutionException("Invalid response from the Groovy daemon: Unknown frame type " + type);
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to communicate with the Groovy daemon: " + e.getMessage(), e);
+		}
+	}
+
+	private static class DaemonState {
+		private final int port;
+		private final String token;
+
+		DaemonState(int pPort, String pToken) {
+			port = pPort;
+			token = pToken;
+		}
+	}
+
+	private DaemonState readState() {
+		if (!Files.isRegularFile(stateFile)) {
+			return null;
+		}
+		final Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(stateFile)) {
+			props.load(in);
+			return new DaemonState(Integer.parseInt(props.getProperty("port")), props.getProperty("token"));
+		} catch (IOException|RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static class Connection implements AutoCloseable {
+		private final Socket socket;
+		private final String token;
+
+		Connection(Socket pSocket, String pToken) {
+			socket = pSocket;
+			token = pToken;
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	private Connection connect() {
+		final DaemonState state = readState();
+		if (state == null) {
+			return null;
+		}
+		final Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), state.port), 5000);
+			return new Connection(socket, state.token);
+		} catch (IOException e) {
+			try {
+				socket.close();
+			} catch (IOException e2) {
+				// Ignore this
+			}
+			return null;
+		}
+	}
+
+	private Connection getConnection() throws IOException, MojoExecutionException {
+		final Connection connection = connect();
+		if (connection != null) {
+			log.debug("Using running Groovy daemon, state file " + stateFile);
+			return connection;
+		}
+		Files.createDirectories(directory);
+		synchronized (START_LOCK) {
+			return getOrStartConnection();
+		}
+	}
+
+	private Connection getOrStartConnection() throws IOException, MojoExecutionException {
+		// Make sure, that concurrent builds don't start more than one daemon.
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			 FileLock lock = channel.lock()) {
+			final Connection connection2 = connect();
+			if (connection2 != null) {
+				return connection2;
+			}
+			start();
+			final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+			while (System.currentTimeMillis() < deadline) {
+				final Connection connection3 = connect();
+				if (connection3 != null) {
+					return connection3;
+				}
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MojoExecutionException("Interrupted while waiting for the Groovy daemon", e);
+				}
+			}
+			throw new MojoExecutionException("Timeout while waiting for the Groovy daemon, see " + logFile);
+		}
+	}
+
+	private void start() throws IOException {
+		Files.deleteIfExists(stateFile);
+		final Path javaExe = Paths.get(System.getProperty("java.home"), "bin",
+				File.separatorChar == '\\' ? "java.exe" : "java");
+		final List<String> cmd = new ArrayList<>();
+		cmd.add(javaExe.toString());
+		cmd.add("-Dfile.encoding=" + Charset.defaultCharset().name());
+		cmd.add("-cp");
+		cmd.add(classPath);
+		cmd.add(JwiGrvDaemon.class.getName());
+		cmd.add(stateFile.toAbsolutePath().toString());
+		cmd.add(String.valueOf(idleTimeoutSeconds));
+		log.info("Starting Groovy daemon, log file " + logFile);
+		new ProcessBuilder(cmd).redirectErrorStream(true)
+			.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile())).start();
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A request to execute a script, which is sent from the run goal to the
+ * {@link JwiGrvDaemon}. Besides, this class implements the wire format, which
+ * is shared by the client, and the daemon: Length prefixed UTF-8 strings, and
+ * string maps.
+ */
+public class DaemonRequest {
+	static final String MAGIC = "JWIGRV";
+	static final int PROTOCOL_VERSION = 2;
+
+	private String scriptId;
+	private String scriptFile;
+	private String baseDirectory;
+	private Map<String,String> scriptProperties;
+	private boolean compileStatic;
+	private boolean typeChecked;
+	private String targetBytecode;
+	private Map<String,String> optimizationOptions;
+	private String cacheDirectory;
+	private boolean debugEnabled;
+
+	public String getScriptId() { return scriptId; }
+	public void setScriptId(String pScriptId) { scriptId = pScriptId; }
+	public String getScriptFile() { return scriptFile; }
+	public void setScriptFile(String pScriptFile) { scriptFile = pScriptFile; }
+
+	/**
+	 * Returns the projects base directory, against which the {@code files} variable
+	 * resolves relative paths.
+	 * @return The absolute path of the base directory, or null.
+	 */
+	public String getBaseDirectory() { return baseDirectory; }
+	public void setBaseDirectory(String pBaseDirectory) { baseDirectory = pBaseDirectory; }
+	public Map<String,String> getScriptProperties() { return scriptProperties; }
+	public void setScriptProperties(Map<String,String> pScriptProperties) { scriptProperties = pScriptProperties; }
+	public boolean isCompileStatic() { return compileStatic; }
+	public void setCompileStatic(boolean pCompileStatic) { compileStatic = pCompileStatic; }
+	public boolean isTypeChecked() { return typeChecked; }
+	public void setTypeChecked(boolean pTypeChecked) { typeChecked = pTypeChecked; }
+	public String getTargetBytecode() { return targetBytecode; }
+	public void setTargetBytecode(String pTargetBytecode) { targetBytecode = pTargetBytecode; }
+	public Map<String,String> getOptimizationOptions() { return optimizationOptions; }
+	public void setOptimizationOptions(Map<String,String> pOptimizationOptions) { optimizationOptions = pOptimizationOptions; }
+	public String getCacheDirectory() { return cacheDirectory; }
+	public void setCacheDirectory(String pCacheDirectory) { cacheDirectory = pCacheDirectory; }
+	public boolean isDebugEnabled() { return debugEnabled; }
+	public void setDebugEnabled(boolean pDebugEnabled) { debugEnabled = pDebugEnabled; }
+
+	/**
+	 * Writes the request, including the protocol header, and the authentication token.
+	 * @param pOut The stream, to which the request is written.
+	 * @param pToken The daemons authentication token.
+	 * @throws IOException Writing the request failed.
+	 */
+	public void write(DataOutputStream pOut, String pToken) throws IOException {
+		writeString(pOut, MAGIC);
+		pOut.writeInt(PROTOCOL_VERSION);
+		writeString(pOut, pToken);
+		writeString(pOut, scriptId);
+		writeString(pOut, scriptFile);
+		writeString(pOut, baseDirectory);
+		writeMap(pOut, scriptProperties);
+		pOut.writeBoolean(compileStatic);
+		pOut.writeBoolean(typeChecked);
+		writeString(pOut, targetBytecode);
+		writeMap(pOut, optimizationOptions);
+		writeString(pOut, cacheDirectory);
+		pOut.writeBoolean(debugEnabled);
+		pOut.flush();
+	}
+
+	/**
+	 * Reads a request, which has been written by {@link #write(DataOutputStream, String)}.
+	 * @param pIn The stream, from which the request is read.
+	 * @param pToken The expected authentication token.
+	 * @return The request.
+	 * @throws IOException Reading the request failed, or the protocol header, or the
+	 *   authentication token are invalid.
+	 */
+	public static DaemonRequest read(DataInputStream pIn, String pToken) throws IOException {
+		if (!MAGIC.equals(readString(pIn))) {
+			throw new IOException("Invalid protocol header");
+		}
+		final int version = pIn.readInt();
+		if (version != PROTOCOL_VERSION) {
+			throw new IOException("Unsupported protocol version: Expected " + PROTOCOL_VERSION + ", got " + version);
+		}
+		if (!pToken.equals(readString(pIn))) {
+			throw new IOException("Invalid authentication token");
+		}
+		final DaemonRequest request = new DaemonRequest();
+		request.scriptId = readString(pIn);
+		request.scriptFile = readString(pIn);
+		request.baseDirectory = readString(pIn);
+		request.scriptProperties = readMap(pIn);
+		request.compileStatic = pIn.readBoolean();
+		request.typeChecked = pIn.readBoolean();
+		request.targetBytecode = readString(pIn);
+		request.optimizationOptions = readMap(pIn);
+		request.cacheDirectory = readString(pIn);
+		request.debugEnabled = pIn.readBoolean();
+		return request;
+	}
+
+	static void writeString(DataOutputStream pOut, String pValue) throws IOException {
+		if (pValue == null) {
+			pOut.writeInt(-1);
+		} else {
+			final byte[] bytes = pValue.getBytes(StandardCharsets.UTF_8);
+			pOut.writeInt(bytes.length);
+			pOut.write(bytes);
+		}
+	}
+
+	static String readString(DataInputStream pIn) throws IOException {
+		final byte[] bytes = readBytes(pIn);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static byte[] readBytes(DataInputStream pIn) throws IOException {
+		final int length = pIn.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0) {
+			throw new IOException("Invalid length: " + length);
+		}
+		final byte[] bytes = new byte[length];
+		pIn.readFully(bytes);
+		return bytes;
+	}
+
+	static void writeMap(DataOutputStream pOut, Map<String,String> pMap) throws IOException {
+		if (pMap == null) {
+			pOut.writeInt(-1);
+		} else {
+			pOut.writeInt(pMap.size());
+			for (Map.Entry<String,String> en : pMap.entrySet()) {
+				writeString(pOut, en.getKey());
+				writeString(pOut, en.getValue());
+			}
+		}
+	}
+
+	static Map<String,String> readMap(DataInputStream pIn) throws IOException {
+		final int size = pIn.readInt();
+		if (size == -1) {
+			return null;
+		}
+		final Map<String,String> map = new LinkedHashMap<>();
+		for (int i = 0;  i < size;  i++) {
+			final String key = readString(pIn);
+			map.put(key, readString(pIn));
+		}
+		return map;
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Collects the time, that a script execution spends in the various phases
+ * (resolving the script, compiling it, building the binding, and running it).
+ * Optionally, the number of bytes, that have been allocated by the executing
+ * thread, and the garbage collector counters are collected as well. The garbage
+ * collector counters are JVM-wide values for the time window of the script: If
+ * other scripts, or modules, are running concurrently, they include collections,
+ * which have been caused by these. Hence, they are reported as "jvmGcCount", and
+ * "jvmGcMillis".
+ */
+public class ExecutionMetrics {
+	private static final String[] PHASES = { "resolve", "compile", "bind", "run" };
+
+	/**
+	 * A point in time, at which a phase has started.
+	 */
+	public static class Mark {
+		private final long nanos, allocatedBytes;
+
+		Mark(long pNanos, long pAllocatedBytes) {
+			nanos = pNanos;
+			allocatedBytes = pAllocatedBytes;
+		}
+	}
+
+	private final String scriptId;
+	private final boolean memory;
+	private final Map<String,Long> phaseNanos = new LinkedHashMap<>();
+	private long allocatedBytes = -1;
+	private long gcCount = -1, gcMillis = -1;
+	private long gcCountAtStart, gcMillisAtStart;
+
+	/**
+	 * Creates a new instance.
+	 * @param pScriptId The id of the script, which is being measured.
+	 * @param pMemory True, if memory allocation, and (JVM-wide) garbage collector counters
+	 *   should be collected.
+	 */
+	public ExecutionMetrics(String pScriptId, boolean pMemory) {
+		scriptId = pScriptId;
+		memory = pMemory;
+		if (memory) {
+			gcCountAtStart = getGcCount();
+			gcMillisAtStart = getGcMillis();
+		}
+	}
+
+	public String getScriptId() {
+		return scriptId;
+	}
+
+	/**
+	 * Called to indicate the start of a phase.
+	 * @return The start mark, which must be passed to {@link #end(String, Mark)}.
+	 */
+	public Mark start() {
+		return new Mark(System.nanoTime(), memory ? getCurrentThreadAllocatedBytes() : -1);
+	}
+
+	/**
+	 * Called to indicate the end of a phase.
+	 * @param pPhase The phases name.
+	 * @param pMark The start mark, which has been returned by {@link #start()}.
+	 */
+	public void end(String pPhase, Mark pMark) {
+		phaseNanos.merge(pPhase, Long.valueOf(System.nanoTime() - pMark.nanos), (a,b) -> Long.valueOf(a.longValue() + b.longValue()));
+		if (pMark.allocatedBytes != -1) {
+			final long bytes = getCurrentThreadAllocatedBytes();
+			if (bytes != -1) {
+				allocatedBytes = Math.max(0, allocatedBytes) + bytes - pMark.allocatedBytes;
+			}
+		}
+		if (memory) {
+			gcCount = getGcCount() - gcCountAtStart;
+			gcMillis = getGcMillis() - gcMillisAtStart;
+		}
+	}
+
+	/**
+	 * Returns the time, that has been spent in the given phase.
+	 * @param pPhase The phases name.
+	 * @return The phases duration in milliseconds.
+	 */
+	public long getMillis(String pPhase) {
+		final Long nanos = phaseNanos.get(pPhase);
+		return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.longValue());
+	}
+
+	public long getTotalMillis() {
+		long nanos = 0;
+		for (Long l : phaseNanos.values()) {
+			nanos += l.longValue();
+		}
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * Returns the number of bytes, that have been allocated by the measured phases.
+	 * @return The number of allocated bytes, or -1, if not available.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	private static long getCurrentThreadAllocatedBytes() {
+		final ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+		if (threadMxBean instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean tmb = (com.sun.management.ThreadMXBean) threadMxBean;
+			if (tmb.isThreadAllocatedMemorySupported()  &&  tmb.isThreadAllocatedMemoryEnabled()) {
+				return tmb.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	/**
+	 * Returns a single line summary of the collected metrics.
+	 * @return A summary, which is suitable for logging.
+	 */
+	public String getSummary() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("Metrics of script ").append(scriptId).append(": ");
+		for (String phase : phaseNanos.keySet()) {
+			sb.append(phase).append('=').append(getMillis(phase)).append("ms, ");
+		}
+		sb.append("total=").append(getTotalMillis()).append("ms");
+		if (allocatedBytes != -1) {
+			sb.append(", allocated=").append(allocatedBytes / 1024).append("KB");
+		}
+		if (gcCount != -1) {
+			sb.append(", jvmGcCount=").append(gcCount).append(", jvmGcTime=").append(gcMillis).append("ms");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a report with the given metrics. The reports format is determined
+	 * by the file name: Files with the extension ".json" receive a JSON array,
+	 * which replaces the existing file, so that it contains the metrics of the
+	 * last execution only. Files with the extension ".jsonl" receive a JSON
+	 * object per line and script, which is appended. Other files are treated as
+	 * CSV files, to which a line per script is appended. JSON Lines, and CSV
+	 * files allow to track the costs over multiple builds, and may be shared by
+	 * concurrent executions.
+	 * @param pFile The report file.
+	 * @param pProjectId The project id, which is written to the report.
+	 * @param pMetrics The metrics to write.
+	 * @throws IOException Writing the report failed.
+	 */
+	public static synchronized void writeReport(Path pFile, String pProjectId, List<ExecutionMetrics> pMetrics) throws IOException {
+		final Path dir = pFile.toAbsolutePath().getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		final long timestamp = System.currentTimeMillis();
+		final String fileName = pFile.getFileName().toString().toLowerCase();
+		if (fileName.endsWith(".json")) {
+			try (BufferedWriter bw = Files.newBufferedWriter(pFile, StandardCharsets.UTF_8)) {
+				bw.write("[");
+				for (int i = 0;  i < pMetrics.size();  i++) {
+					bw.write(i == 0 ? "\n  " : ",\n  ");
+					bw.write(toJson(timestamp, pProjectId, pMetrics.get(i)));
+				}
+				bw.write("\n]\n");
+			}
+		} else if (fileName.endsWith(".jsonl")) {
+			try (BufferedWriter bw = Files.newBufferedWriter(pFile, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				for (ExecutionMetrics m : pMetrics) {
+					bw.write(toJson(timestamp, pProjectId, m));
+					bw.write("\n");
+				}
+			}
+		} else {
+			final boolean newFile = !Files.isRegularFile(pFile);
+			try (BufferedWriter bw = Files.newBufferedWriter(pFile, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				if (newFile) {
+					bw.write("timestamp,project,script");
+					for (String phase : PHASES) {
+						bw.write("," + phase + "Millis");
+					}
+					bw.write(",totalMillis,allocatedBytes,jvmGcCount,jvmGcMillis\n");
+				}
+				for (ExecutionMetrics m : pMetrics) {
+					bw.write(timestamp + "," + csv(pProjectId) + "," + csv(m.scriptId));
+					for (String phase : PHASES) {
+						bw.write("," + m.getMillis(phase));
+					}
+					bw.write("," + m.getTotalMillis() + "," + m.allocatedBytes + "," + m.gcCount + "," + m.gcMillis + "\n");
+				}
+			}
+		}
+	}
+
+	private static String toJson(long pTimestamp, String pProjectId, ExecutionMetrics pMetrics) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"timestamp\": ").append(pTimestamp).append(", \"project\": ").append(quote(pProjectId))
+		    .append(", \"script\": ").append(quote(pMetrics.scriptId));
+		for (String phase : PHASES) {
+			sb.append(", \"").append(phase).append("Millis\": ").append(pMetrics.getMillis(phase));
+		}
+		sb.append(", \"totalMillis\": ").append(pMetrics.getTotalMillis())
+		    .append(", \"allocatedBytes\": ").append(pMetrics.allocatedBytes)
+		    .append(", \"jvmGcCount\": ").append(pMetrics.gcCount)
+		    .append(", \"jvmGcMillis\": ").append(pMetrics.gcMillis).append('}');
+		return sb.toString();
+	}
+
+	private static String quote(String pValue) {
+		if (pValue == null) {
+			return "null";
+		}
+		final StringBuilder sb = new StringBuilder("\"");
+		for (char c : pValue.toCharArray()) {
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static String csv(String pValue) {
+		if (pValue == null) {
+			return "";
+		}
+		if (pValue.indexOf(',') == -1  &&  pValue.indexOf('"') == -1  &&  pValue.indexOf('\n') == -1) {
+			return pValue;
+		}
+		return "\"" + pValue.replace("\"", "\"\"") + "\"";
+	}
+}
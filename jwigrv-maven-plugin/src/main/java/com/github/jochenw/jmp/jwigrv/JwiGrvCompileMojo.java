@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+
+/**
+ * Compiles all scripts in the source directory into the script class cache,
+ * where the run goal picks them up, instead of compiling the scripts again.
+ * Compilation errors are collected, and reported together.
+ */
+@Mojo(name="compile", defaultPhase=LifecyclePhase.GENERATE_SOURCES, threadSafe=true)
+public class JwiGrvCompileMojo extends AbstractJwiGrvMojo {
+	/**
+	 * The directory, which contains the scripts.
+	 */
+	@Parameter(property="jwigrv.sourceDirectory", defaultValue="${project.basedir}/src/main/groovy")
+	private File sourceDirectory;
+
+	/**
+	 * Patterns of the scripts, which are being compiled, relative to the
+	 * {@code sourceDirectory}. Defaults to all files with the extension ".groovy".
+	 */
+	@Parameter
+	private List<String> includes;
+
+	/**
+	 * Patterns of the scripts, which are being excluded.
+	 */
+	@Parameter
+	private List<String> excludes;
+
+	protected List<Path> getScriptFiles() throws MojoFailureException, MojoExecutionException {
+		if (sourceDirectory == null) {
+			throw new MojoFailureException("The parameter 'sourceDirectory' is null.");
+		}
+		final FileSet fileSet = new FileSet();
+		fileSet.setDirectory(sourceDirectory.getPath());
+		if (includes == null  ||  includes.isEmpty()) {
+			fileSet.addInclude("**/*.groovy");
+		} else {
+			includes.forEach(fileSet::addInclude);
+		}
+		if (excludes != null) {
+			excludes.forEach(fileSet::addExclude);
+		}
+		try {
+			return UpToDateChecker.scan(getBaseDir(), fileSet, "sourceDirectory");
+		} catch (IOException ioe) {
+			throw new MojoExecutionException("Failed to scan source directory " + sourceDirectory
+					+ ": " + ioe.getMessage(), ioe);
+		}
+	}
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (isSkip()) {
+			getLog().info("Skipping execution, because 'skip' parameter is true.");
+			return;
+		}
+		final Path cacheDirectory = getCacheDirectory();
+		if (cacheDirectory == null) {
+			throw new MojoFailureException("The parameter 'cacheDirectory' is null.");
+		}
+		final List<Path> scriptFiles = getScriptFiles();
+		if (scriptFiles.isEmpty()) {
+			getLog().info("No scripts found in " + sourceDirectory);
+			return;
+		}
+		final CompilerConfiguration compilerConfiguration = getCompilerConfiguration();
+		final String compilerSettingsId = getCompilerSettingsId(compilerConfiguration);
+		final ScriptClassCache scriptClassCache = newScriptClassCache(cacheDirectory);
+		final List<Path> failedScripts = new ArrayList<>();
+		int compiled = 0;
+		for (Path scriptFile : scriptFiles) {
+			try {
+				if (scriptClassCache.precompile(scriptFile, compilerConfiguration, compilerSettingsId)) {
+					++compiled;
+				}
+			} catch (CompilationFailedException cfe) {
+				getLog().error("Compilation of Groovy script failed: " + cfe.getMessage());
+				failedScripts.add(scriptFile);
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Failed to compile script file: " + scriptFile + ": " + ioe.getMessage(), ioe);
+			}
+		}
+		if (!failedScripts.isEmpty()) {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("Compilation failed for ").append(failedScripts.size()).append(" of ")
+			  .append(scriptFiles.size()).append(" scripts:");
+			for (Path p : failedScripts) {
+				sb.append(' ').append(p);
+			}
+			if (isCompileStatic()  ||  isTypeChecked()) {
+				getLog().error("Note, that the scripts are compiled with " + (isCompileStatic() ? "compileStatic" : "typeChecked")
+						+ "=true: Undeclared variables, like log, project, or the script properties,"
+						+ " must be accessed via binding.getVariable(name), and casted to the expected type.");
+			}
+			throw new MojoExecutionException(sb.toString());
+		}
+		getLog().info("Compiled " + compiled + " of " + scriptFiles.size() + " scripts to " + cacheDirectory
+				+ " (" + (scriptFiles.size() - compiled) + " up-to-date)");
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+
+/**
+ * A background process, which keeps the Groovy runtime, and the compiled
+ * scripts warm, and executes scripts on behalf of the run goal. The daemon
+ * listens on the loopback interface only, and accepts requests, which carry
+ * the authentication token from its state file. It terminates, if it has
+ * been idle for the configured time, or if the state file has been removed.
+ */
+public class JwiGrvDaemon {
+	static final byte FRAME_DEBUG = 'D';
+	static final byte FRAME_INFO = 'I';
+	static final byte FRAME_WARN = 'W';
+	static final byte FRAME_ERROR = 'E';
+	static final byte FRAME_OUTPUT = 'O';
+	static final byte FRAME_SUCCESS = 'S';
+	static final byte FRAME_COMPILATION_FAILED = 'C';
+	static final byte FRAME_EXECUTION_FAILED = 'F';
+	static final byte FRAME_REJECTED = 'R';
+
+	private static final InheritableThreadLocal<OutputStream> currentOutput = new InheritableThreadLocal<>();
+
+	private final Path stateFile;
+	private final long idleTimeoutMillis;
+	private final String token;
+	private final SessionScriptCache scriptCache = new SessionScriptCache(256);
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private volatile long lastActivity = System.currentTimeMillis();
+
+	/**
+	 * Creates a new instance.
+	 * @param pStateFile The state file, where the daemons port, and authentication
+	 *   token are published.
+	 * @param pIdleTimeoutMillis The time, after which an idle daemon terminates.
+	 */
+	public JwiGrvDaemon(Path pStateFile, long pIdleTimeoutMillis) {
+		stateFile = pStateFile;
+		idleTimeoutMillis = pIdleTimeoutMillis;
+		final byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		token = ScriptClassCache.toHex(bytes);
+	}
+
+	/**
+	 * Runs the daemon, until it terminates.
+	 * @throws IOException Creating the server socket, or writing the state file failed.
+	 */
+	public void run() throws IOException {
+		// Output of the scripts is routed back to the client, which started the script.
+		final PrintStream systemOut = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int pByte) throws IOException {
+				getOutput().write(pByte);
+			}
+			@Override
+			public void write(byte[] pBytes, int pOffset, int pLength) throws IOException {
+				getOutput().write(pBytes, pOffset, pLength);
+			}
+			@Override
+			public void flush() throws IOException {
+				getOutput().flush();
+			}
+			private OutputStream getOutput() {
+				final OutputStream out = currentOutput.get();
+				return out == null ? systemOut : out;
+			}
+		}, true));
+		final ExecutorService executor = Executors.newCachedThreadPool((r) -> {
+			final Thread t = new Thread(r, "jwigrv-daemon-request");
+			t.setDaemon(true);
+			return t;
+		});
+		try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			serverSocket.setSoTimeout(1000);
+			writeStateFile(serverSocket.getLocalPort());
+			log("Listening on port " + serverSocket.getLocalPort());
+			for (;;) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketTimeoutException e) {
+					if (!isStateFileOwned()) {
+						log("State file removed, or replaced, terminating.");
+						break;
+					}
+					if (activeRequests.get() == 0
+							&&  System.currentTimeMillis() - lastActivity > idleTimeoutMillis) {
+						log("Idle timeout, terminating.");
+						break;
+					}
+					continue;
+				}
+				activeRequests.incrementAndGet();
+				lastActivity = System.currentTimeMillis();
+				executor.execute(() -> {
+					try {
+						handle(socket);
+					} catch (Throwable t) {
+						log("Failed to handle request: " + t);
+					} finally {
+						lastActivity = System.currentTimeMillis();
+						activeRequests.decrementAndGet();
+					}
+				});
+			}
+		} finally {
+			executor.shutdownNow();
+			if (isStateFileOwned()) {
+				Files.deleteIfExists(stateFile);
+			}
+		}
+	}
+
+	private void log(String pMsg) {
+		System.err.println(new Date() + " " + pMsg);
+	}
+
+	private void writeStateFile(int pPort) throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("port", String.valueOf(pPort));
+		props.setProperty("token", token);
+		Files.createDirectories(stateFile.toAbsolutePath().getParent());
+		final Path tempFile = Files.createTempFile(stateFile.toAbsolutePath().getParent(), "daemon", ".tmp");
+		try {
+			tempFile.toFile().setReadable(false, false);
+			tempFile.toFile().setReadable(true, true);
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				props.store(out, null);
+			}
+			try {
+				Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private boolean isStateFileOwned() {
+		final Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(stateFile)) {
+			props.load(in);
+		} catch (IOException e) {
+			return false;
+		}
+		return token.equals(props.getProperty("token"));
+	}
+
+	/**
+	 * Writes frames to the client. A frame consists of a type byte, and a length
+	 * prefixed payload.
+	 */
+	static class FrameWriter {
+		private final DataOutputStream out;
+
+		FrameWriter(DataOutputStream pOut) {
+			out = pOut;
+		}
+
+		synchronized void write(byte pType, byte[] pBytes, int pOffset, int pLength) throws IOException {
+			out.writeByte(pType);
+			out.writeInt(pLength);
+			out.write(pBytes, pOffset, pLength);
+			out.flush();
+		}
+
+		void write(byte pType, String pMessage) throws IOException {
+			final byte[] bytes = (pMessage == null ? "" : pMessage).getBytes(StandardCharsets.UTF_8);
+			write(pType, bytes, 0, bytes.length);
+		}
+
+		void writeQuietly(byte pType, CharSequence pMessage) {
+			try {
+				write(pType, pMessage == null ? null : pMessage.toString());
+			} catch (IOException e) {
+				// The client has gone, nothing we can do about it.
+			}
+		}
+	}
+
+	private void handle(Socket pSocket) throws IOException {
+		try (Socket socket = pSocket;
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			final FrameWriter frames = new FrameWriter(out);
+			final DaemonRequest request;
+			try {
+				request = DaemonRequest.read(in, token);
+			} catch (IOException e) {
+				frames.write(FRAME_REJECTED, e.getMessage());
+				return;
+			}
+			execute(request, frames);
+		}
+	}
+
+	private void execute(DaemonRequest pRequest, FrameWriter pFrames) throws IOException {
+		final Log log = new FrameLog(pFrames, pRequest.isDebugEnabled());
+		final CompilerConfiguration config;
+		try {
+			config = AbstractJwiGrvMojo.newCompilerConfiguration(pRequest.isCompileStatic(), pRequest.isTypeChecked(),
+					pRequest.getTargetBytecode(), pRequest.getOptimizationOptions());
+		} catch (MojoFailureException e) {
+			pFrames.write(FRAME_EXECUTION_FAILED, e.getMessage());
+			return;
+		}
+		final String settingsId = AbstractJwiGrvMojo.getCompilerSettingsId(config, pRequest.isCompileStatic(),
+				pRequest.isTypeChecked());
+		final Path cacheDir = pRequest.getCacheDirectory() == null ? null : Paths.get(pRequest.getCacheDirectory());
+		final ScriptClassCache scriptClassCache = new ScriptClassCache(cacheDir, scriptCache, log);
+		final Class<?> scriptClass;
+		try {
+			scriptClass = scriptClassCache.getScriptClass(Paths.get(pRequest.getScriptFile()), config, settingsId);
+		} catch (CompilationFailedException|IOException e) {
+			pFrames.write(FRAME_COMPILATION_FAILED, e.getMessage());
+			return;
+		}
+		final Binding binding = new Binding();
+		binding.setProperty("log", log);
+		// Relative paths must be resolved against the requesting project, not the daemons current directory.
+		final Path baseDir = pRequest.getBaseDirectory() == null ? null : Paths.get(pRequest.getBaseDirectory());
+		binding.setProperty("files", new ScriptFiles(baseDir, Runtime.getRuntime().availableProcessors()));
+		if (pRequest.getScriptProperties() != null) {
+			pRequest.getScriptProperties().forEach(binding::setProperty);
+		}
+		final Script script = InvokerHelper.createScript(scriptClass, binding);
+		currentOutput.set(new OutputStream() {
+			@Override
+			public void write(int pByte) throws IOException {
+				write(new byte[] { (byte) pByte }, 0, 1);
+			}
+			@Override
+			public void write(byte[] pBytes, int pOffset, int pLength) throws IOException {
+				pFrames.write(FRAME_OUTPUT, pBytes, pOffset, pLength);
+			}
+		});
+		try {
+			script.run();
+			System.out.flush();
+			pFrames.write(FRAME_SUCCESS, "");
+		} catch (Throwable t) {
+			System.out.flush();
+			final StringWriter sw = new StringWriter();
+			t.printStackTrace(new PrintWriter(sw));
+			pFrames.write(FRAME_EXECUTION_FAILED, t.getClass().getSimpleName() + ", " + t.getMessage() + "\n" + sw);
+		} finally {
+			currentOutput.remove();
+		}
+	}
+
+	/**
+	 * A {@link Log}, which sends the messages to the client.
+	 */
+	private static class FrameLog implements Log {
+		private final FrameWriter frames;
+		private final boolean debugEnabled;
+
+		FrameLog(FrameWriter pFrames, boolean pDebugEnabled) {
+			frames = pFrames;
+			debugEnabled = pDebugEnabled;
+		}
+
+		private void send(byte pType, CharSequence pContent, Throwable pError) {
+			if (pError == null) {
+				frames.writeQuietly(pType, pContent);
+			} else {
+				final StringWriter sw = new StringWriter();
+				if (pContent != null) {
+					sw.append(pContent).append('\n');
+				}
+				pError.printStackTrace(new PrintWriter(sw));
+				frames.writeQuietly(pType, sw.toString());
+			}
+		}
+
+		@Override public boolean isDebugEnabled() { return debugEnabled; }
+		@Override public boolean isInfoEnabled() { return true; }
+		@Override public boolean isWarnEnabled() { return true; }
+		@Override public boolean isErrorEnabled() { return true; }
+
+		@Override public void debug(CharSequence pContent) { debug(pContent, null); }
+		@Override public void debug(Throwable pError) { debug(null, pError); }
+		@Override public void debug(CharSequence pContent, Throwable pError) {
+			if (debugEnabled) { send(FRAME_DEBUG, pContent, pError); }
+		}
+
+		@Override public void info(CharSequence pContent) { info(pContent, null); }
+		@Override public void info(Throwable pError) { info(null, pError); }
+		@Override public void info(CharSequence pContent, Throwable pError) { send(FRAME_INFO, pContent, pError); }
+
+		@Override public void warn(CharSequence pContent) { warn(pContent, null); }
+		@Override public void warn(Throwable pError) { warn(null, pError); }
+		@Override public void warn(CharSequence pContent, Throwable pError) { send(FRAME_WARN, pContent, pError); }
+
+		@Override public void error(CharSequence pContent) { error(pContent, null); }
+		@Override public void error(Throwable pError) { error(null, pError); }
+		@Override public void error(CharSequence pContent, Throwable pError) { send(FRAME_ERROR, pContent, pError); }
+	}
+
+	/**
+	 * Starts the daemon.
+	 * @param pArgs The state file, and the idle timeout in seconds.
+	 * @throws Exception Running the daemon failed.
+	 */
+	public static void main(String[] pArgs) throws Exception {
+		if (pArgs.length != 2) {
+			throw new IllegalArgumentException("Usage: JwiGrvDaemon <stateFile> <idleTimeoutSeconds>");
+		}
+		new JwiGrvDaemon(Paths.get(pArgs[0]), Long.parseLong(pArgs[1]) * 1000L).run();
+	}
+}
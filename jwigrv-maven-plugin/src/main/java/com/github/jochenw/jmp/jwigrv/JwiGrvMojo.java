@@ -20,116 +20,508 @@ package com.github.jochenw.jmp.jwigrv;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.FileSet;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 
-@Mojo(name="run")
-public class JwiGrvMojo extends AbstractMojo {
-	@Parameter(property="jwigrv.skip", defaultValue="false") 
-	private boolean skip;
-
-	@Parameter(property="jwigrv.script", required=true)
+@Mojo(name="run", threadSafe=true)
+public class JwiGrvMojo extends AbstractJwiGrvMojo {
+	@Parameter(property="jwigrv.script")
 	private String scriptFile;
 
 	@Parameter
 	private Map<String,String> scriptProperties;
 
-	@Parameter(defaultValue="${project}", readonly=true, required=true)
-	private MavenProject project;
+	/**
+	 * A list of scripts, which are executed instead of the {@code scriptFile}.
+	 * Scripts may declare dependencies on other scripts via {@code dependsOn}.
+	 * Scripts, which don't depend on each other, are executed concurrently.
+	 */
+	@Parameter
+	private List<ScriptDefinition> scripts;
+
+	/**
+	 * The maximum number of concurrently running scripts, if {@code scripts} are
+	 * given. Defaults to the number of available processors.
+	 */
+	@Parameter(property="jwigrv.threads", defaultValue="0")
+	private int threads;
+
+	@Parameter(property="jwigrv.cache", defaultValue="true")
+	private boolean useCache;
+
+	/**
+	 * Whether to log the time, that is spent in the phases of a script execution
+	 * (resolve, compile, bind, and run).
+	 */
+	@Parameter(property="jwigrv.metrics", defaultValue="false")
+	private boolean metrics;
+
+	/**
+	 * Whether to collect the number of allocated bytes, and the garbage collector
+	 * counters as well.
+	 */
+	@Parameter(property="jwigrv.metrics.memory", defaultValue="false")
+	private boolean metricsMemory;
+
+	/**
+	 * If set, a report with the collected metrics is written to this file. Files
+	 * with the extension ".json" are replaced by a JSON array with the metrics of
+	 * the current execution. Files with the extension ".jsonl" receive a JSON
+	 * object per script, and other files are treated as CSV files. In both cases,
+	 * a line per script is appended.
+	 */
+	@Parameter(property="jwigrv.metrics.report")
+	private File metricsReport;
 
-	protected Path getScriptFile() throws MojoFailureException {
-		if (scriptFile == null) {
+	/**
+	 * Whether to execute the scripts in a background JVM, which keeps the Groovy
+	 * runtime, and the compiled scripts warm between builds. The daemon is started
+	 * by the first build, which needs it.
+	 */
+	@Parameter(property="jwigrv.daemon", defaultValue="false")
+	private boolean daemon;
+
+	/**
+	 * The directory, where the daemons state file (port, and authentication token),
+	 * and log file are kept. Deleting the state file stops the daemon.
+	 */
+	@Parameter(property="jwigrv.daemon.dir", defaultValue="${user.home}/.jwigrv")
+	private File daemonDirectory;
+
+	/**
+	 * The number of seconds, after which an idle daemon terminates.
+	 */
+	@Parameter(property="jwigrv.daemon.idleTimeout", defaultValue="10800")
+	private int daemonIdleTimeout;
+
+	@Parameter(defaultValue="${plugin}", readonly=true)
+	private PluginDescriptor pluginDescriptor;
+
+	private DaemonClient daemonClient;
+
+	/**
+	 * The files, which are read by the script. If inputs, or outputs are given, then
+	 * the script is skipped, if neither the script, the script properties, nor the
+	 * input files have changed since the last successful run, and all outputs exist.
+	 */
+	@Parameter
+	private List<FileSet> inputs;
+
+	/**
+	 * The files, which are created by the script. Every output file set must match
+	 * at least one file, or the script will be executed.
+	 */
+	@Parameter
+	private List<FileSet> outputs;
+
+	/**
+	 * The file, where the fingerprint of the last successful run is stored.
+	 */
+	@Parameter(property="jwigrv.fingerprintFile",
+			defaultValue="${project.build.directory}/jwigrv/${mojoExecution.executionId}.fingerprint")
+	private File fingerprintFile;
+
+	/**
+	 * Whether to profile the scripts: The stack of a running script is sampled
+	 * periodically. When the script is finished, the script lines with the most
+	 * samples are logged, and the samples are written to a file in the collapsed
+	 * stacks format, which is understood by flame graph tools.
+	 */
+	@Parameter(property="jwigrv.profile", defaultValue="false")
+	private boolean profile;
+
+	/**
+	 * The interval in milliseconds, in which a profiled script is sampled.
+	 */
+	@Parameter(property="jwigrv.profile.interval", defaultValue="10")
+	private int profileInterval;
+
+	/**
+	 * The directory, where the collapsed stacks files (one per script) are written.
+	 */
+	@Parameter(property="jwigrv.profile.dir", defaultValue="${project.build.directory}/jwigrv/profile")
+	private File profileDirectory;
+
+	/**
+	 * The number of script lines, that are logged as the hot lines of a profile.
+	 */
+	@Parameter(property="jwigrv.profile.topLines", defaultValue="10")
+	private int profileTopLines;
+
+	/**
+	 * If a script runs longer than this number of seconds, then a warning with the
+	 * current script line is logged, and repeated after the same number of seconds.
+	 * Zero disables the warning. Works without {@code profile} as well.
+	 */
+	@Parameter(property="jwigrv.slowScriptWarning", defaultValue="0")
+	private int slowScriptWarning;
+
+	protected Path getScriptFile(String pScriptFile) throws MojoFailureException {
+		if (pScriptFile == null) {
 			throw new MojoFailureException("The parameter 'scriptFile' is null.");
 		}
-		if (scriptFile.trim().length() == 0) {
+		if (pScriptFile.trim().length() == 0) {
 			throw new MojoFailureException("The parameter 'scriptFile' is empty.");
 		}
-		final File baseDir;
-		if (project == null) {
-			// For testing: The JwiGrvMojoTest uses this to inject a base directory.
-			final String baseDirProperty = System.getProperty("com.github.jochenw.jmp.jwigrv.BaseDir");
-			if (baseDirProperty != null) {
-				baseDir = Paths.get(baseDirProperty).toFile();
-			} else {
-				baseDir = null;
-			}
-		} else {
-			baseDir = project.getBasedir();
-		}
+		final Path baseDir = getBaseDir();
 		final Path scriptFilePath;
 		if (baseDir == null) {
-			scriptFilePath = Paths.get(scriptFile);
+			scriptFilePath = Paths.get(pScriptFile);
 		} else {
-			scriptFilePath = baseDir.toPath().resolve(scriptFile);
+			scriptFilePath = baseDir.resolve(pScriptFile);
 		}
 		if (Files.isRegularFile(scriptFilePath)) {
 			if (Files.isReadable(scriptFilePath)) {
 				return scriptFilePath;
 			} else {
 				throw new MojoFailureException("Invalid value for parameter 'scriptFile': "
-						+ "Expected readable file, got '" + scriptFile + "', resolved to "
+						+ "Expected readable file, got '" + pScriptFile + "', resolved to "
 						+ scriptFilePath.toAbsolutePath());
 			}
 		} else {
 			throw new MojoFailureException("Invalid value for parameter 'scriptFile': "
-					+ "Expected existing file, got '" + scriptFile + "', resolved to "
+					+ "Expected existing file, got '" + pScriptFile + "', resolved to "
 					+ scriptFilePath.toAbsolutePath());
 		}
 	}
 
+	protected List<ScriptDefinition> getScriptDefinitions() throws MojoFailureException {
+		if (scripts == null  ||  scripts.isEmpty()) {
+			return Collections.singletonList(new ScriptDefinition(scriptFile, scriptFile, null));
+		}
+		if (scriptFile != null) {
+			throw new MojoFailureException("The parameters 'scriptFile', and 'scripts' are mutually exclusive.");
+		}
+		return scripts;
+	}
+
+	protected Map<String,String> getScriptProperties(ScriptDefinition pDefinition) {
+		final Map<String,String> properties = new LinkedHashMap<>();
+		if (scriptProperties != null) {
+			properties.putAll(scriptProperties);
+		}
+		if (pDefinition.getScriptProperties() != null) {
+			properties.putAll(pDefinition.getScriptProperties());
+		}
+		return properties;
+	}
+
+	protected int getThreads() {
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	protected int getProfileInterval() {
+		return profileInterval > 0 ? profileInterval : 10;
+	}
+
+	protected int getProfileTopLines() {
+		return profileTopLines > 0 ? profileTopLines : 10;
+	}
+
+	protected Path getProfileFile(ScriptDefinition pDefinition) {
+		final Path dir;
+		if (profileDirectory == null) {
+			final Path baseDir = getBaseDir();
+			dir = baseDir == null ? Paths.get("target/jwigrv/profile") : baseDir.resolve("target/jwigrv/profile");
+		} else {
+			dir = profileDirectory.toPath();
+		}
+		return dir.resolve(pDefinition.getId().replaceAll("[^A-Za-z0-9._-]", "_") + ".collapsed");
+	}
+
+	protected List<Path> getPluginClassPath() {
+		final List<Path> classPath = new ArrayList<>();
+		if (pluginDescriptor != null  &&  pluginDescriptor.getArtifacts() != null) {
+			for (Artifact artifact : pluginDescriptor.getArtifacts()) {
+				if (artifact.getFile() != null) {
+					classPath.add(artifact.getFile().toPath());
+				}
+			}
+		}
+		return classPath;
+	}
+
+	protected Path getCacheDirectory() {
+		if (!useCache) {
+			return null;
+		}
+		return super.getCacheDirectory();
+	}
+
+	protected boolean isUpToDateCheckEnabled() {
+		return fingerprintFile != null
+				&&  ((inputs != null  &&  !inputs.isEmpty())  ||  (outputs != null  &&  !outputs.isEmpty()));
+	}
+
+	protected List<Path> getInputFiles() throws IOException, MojoFailureException {
+		final List<Path> files = new ArrayList<>();
+		if (inputs != null) {
+			for (FileSet fileSet : inputs) {
+				files.addAll(UpToDateChecker.scan(getBaseDir(), fileSet, "inputs"));
+			}
+		}
+		return files;
+	}
+
+	protected boolean isOutputPresent() throws IOException, MojoFailureException {
+		if (outputs != null) {
+			for (FileSet fileSet : outputs) {
+				if (UpToDateChecker.scan(getBaseDir(), fileSet, "outputs").isEmpty()) {
+					getLog().debug("No files found for output directory " + fileSet.getDirectory());
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		if (skip) {
+		if (isSkip()) {
 			getLog().info("Skipping execution, because 'skip' parameter is true.");
 			return;
 		}
-		final Path scriptFile = getScriptFile();
-		final GroovyShell gsh = new GroovyShell();
-		final Script script;
+		final List<ScriptDefinition> definitions = getScriptDefinitions();
+		final Map<String,Path> scriptFiles = new HashMap<>();
+		final Map<String,ExecutionMetrics> executionMetrics = new LinkedHashMap<>();
+		for (ScriptDefinition def : definitions) {
+			final ExecutionMetrics em = new ExecutionMetrics(def.getId(), metricsMemory);
+			final ExecutionMetrics.Mark mark = em.start();
+			scriptFiles.put(def.getId(), getScriptFile(def.getScriptFile()));
+			em.end("resolve", mark);
+			executionMetrics.put(def.getId(), em);
+		}
+		final CompilerConfiguration compilerConfiguration = getCompilerConfiguration();
+		final String compilerSettingsId = getCompilerSettingsId(compilerConfiguration);
+		final UpToDateChecker upToDateChecker;
+		final UpToDateChecker.Fingerprint fingerprint;
+		if (isUpToDateCheckEnabled()) {
+			upToDateChecker = new UpToDateChecker(fingerprintFile.toPath(), getLog());
+			final Map<String,String> properties = new TreeMap<>();
+			for (ScriptDefinition def : definitions) {
+				getScriptProperties(def).forEach((k,v) -> properties.put(def.getId() + "/" + k, v));
+			}
+			try {
+				fingerprint = upToDateChecker.fingerprint(new ArrayList<>(scriptFiles.values()), properties,
+						compilerSettingsId, getInputFiles());
+				if (upToDateChecker.isUpToDate(fingerprint)  &&  isOutputPresent()) {
+					getLog().info("Skipping execution, because inputs are unchanged, and outputs are present.");
+					return;
+				}
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Failed to check inputs: " + ioe.getMessage(), ioe);
+			}
+		} else {
+			upToDateChecker = null;
+			fingerprint = null;
+		}
+		final ScriptClassCache scriptClassCache = newScriptClassCache(getCacheDirectory());
+		if (daemon) {
+			if (daemonDirectory == null) {
+				throw new MojoFailureException("The parameter 'daemonDirectory' is null.");
+			}
+			daemonClient = new DaemonClient(daemonDirectory.toPath(), daemonIdleTimeout, getPluginClassPath(), getLog());
+			if (profile  ||  slowScriptWarning > 0) {
+				getLog().warn("The parameters 'profile', and 'slowScriptWarning' are ignored in daemon mode.");
+			}
+		}
+		if ((scripts == null  ||  scripts.isEmpty())  &&  !isParallelBuild()) {
+			final ScriptDefinition def = definitions.get(0);
+			runScript(def, scriptFiles.get(def.getId()), scriptClassCache, compilerConfiguration,
+					compilerSettingsId, getLog(), null, executionMetrics.get(def.getId()));
+		} else if (scripts == null  ||  scripts.isEmpty()) {
+			// In a parallel build, the scripts output is collected, and printed as a whole.
+			final ScriptDefinition def = definitions.get(0);
+			final BufferedLog log = new BufferedLog(getLog());
+			try {
+				runScript(def, scriptFiles.get(def.getId()), scriptClassCache, compilerConfiguration,
+						compilerSettingsId, log, log.getOutput(), executionMetrics.get(def.getId()));
+			} finally {
+				log.replay(System.out);
+			}
+		} else {
+			new ScriptScheduler(getThreads(), getLog()).run(definitions, (def, log) -> {
+				runScript(def, scriptFiles.get(def.getId()), scriptClassCache, compilerConfiguration,
+						compilerSettingsId, log, log.getOutput(), executionMetrics.get(def.getId()));
+			}, System.out);
+		}
+		if (metricsReport != null) {
+			final MavenProject project = getProject();
+			final String projectId = project == null ? "" : project.getGroupId() + ":" + project.getArtifactId();
+			try {
+				ExecutionMetrics.writeReport(metricsReport.toPath(), projectId, new ArrayList<>(executionMetrics.values()));
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Failed to write metrics report: " + ioe.getMessage(), ioe);
+			}
+		}
+		if (upToDateChecker != null) {
+			try {
+				upToDateChecker.store(fingerprint);
+			} catch (IOException ioe) {
+				throw new MojoExecutionException("Failed to store fingerprint: " + ioe.getMessage(), ioe);
+			}
+		}
+	}
+
+	/**
+	 * Compiles, and runs a single script.
+	 * @param pDefinition The script to run.
+	 * @param pScriptFile The resolved script file.
+	 * @param pScriptClassCache The cache of compiled scripts.
+	 * @param pCompilerConfiguration The compiler configuration.
+	 * @param pCompilerSettingsId A string, which describes the compiler settings.
+	 * @param pLog The scripts log.
+	 * @param pOut The scripts standard output, or null to use {@link System#out}.
+	 * @param pMetrics The metrics, which are being collected for this script.
+	 * @throws MojoExecutionException Compiling the script failed.
+	 * @throws MojoFailureException Running the script failed.
+	 */
+	protected void runScript(ScriptDefinition pDefinition, Path pScriptFile, ScriptClassCache pScriptClassCache,
+			CompilerConfiguration pCompilerConfiguration, String pCompilerSettingsId, Log pLog, PrintWriter pOut,
+			ExecutionMetrics pMetrics) throws MojoExecutionException, MojoFailureException {
+		ExecutionMetrics.Mark mark = pMetrics.start();
+		if (daemonClient != null) {
+			runScriptInDaemon(pDefinition, pScriptFile, pLog, pOut);
+			pMetrics.end("run", mark);
+			if (metrics  ||  metricsMemory) {
+				pLog.info(pMetrics.getSummary());
+			}
+			return;
+		}
+		final Class<?> scriptClass;
 		try {
-			script = gsh.parse(scriptFile.toFile());
+			scriptClass = pScriptClassCache.getScriptClass(pScriptFile, pCompilerConfiguration, pCompilerSettingsId);
 		} catch (CompilationFailedException cfe) {
-			getLog().error("Compilation of Groovy script failed: " + cfe.getMessage());
+			pLog.error("Compilation of Groovy script failed: " + cfe.getMessage());
+			if (isCompileStatic()  ||  isTypeChecked()) {
+				pLog.error("Note, that the script is compiled with " + (isCompileStatic() ? "compileStatic" : "typeChecked")
+						+ "=true: Undeclared variables, like log, project, or the script properties,"
+						+ " must be accessed via binding.getVariable(name), and casted to the expected type.");
+			}
 			throw new MojoExecutionException(cfe);
 		} catch (IOException ioe) {
-			throw new MojoExecutionException("Failed to compile script file: " + scriptFile + ": " + ioe.getMessage(), ioe);
+			throw new MojoExecutionException("Failed to compile script file: " + pScriptFile + ": " + ioe.getMessage(), ioe);
 		}
+		pMetrics.end("compile", mark);
+		mark = pMetrics.start();
 		final Binding binding = new Binding();
-		binding.setProperty("log", getLog());
-		if (scriptProperties != null) {
-			scriptProperties.forEach((k,v) -> {
-				final String kLc = k.toLowerCase();
-				final boolean passwordProperty = kLc.contains("password") || kLc.contains("pwd");
-				final String loggedValue = passwordProperty ? v : "<Password_Not_Logged>";
-				getLog().debug("Setting script property: " + k + "=" + loggedValue);
-				binding.setProperty(k, v);
-			});
-		}
-		if (project != null) {
-			binding.setProperty("project", project);
-		}
-		script.setBinding(binding);
+		binding.setProperty("log", pLog);
+		binding.setProperty("files", new ScriptFiles(getBaseDir(), Runtime.getRuntime().availableProcessors()));
+		if (pOut != null) {
+			binding.setProperty("out", pOut);
+		}
+		getScriptProperties(pDefinition).forEach((k,v) -> {
+			final String kLc = k.toLowerCase();
+			final boolean passwordProperty = kLc.contains("password") || kLc.contains("pwd");
+			final String loggedValue = passwordProperty ? v : "<Password_Not_Logged>";
+			pLog.debug("Setting script property: " + k + "=" + loggedValue);
+			binding.setProperty(k, v);
+		});
+		if (getProject() != null) {
+			binding.setProperty("project", getProject());
+		}
+		final Script script = InvokerHelper.createScript(scriptClass, binding);
+		pMetrics.end("bind", mark);
+		mark = pMetrics.start();
+		final ScriptProfiler profiler;
+		if (profile  ||  slowScriptWarning > 0) {
+			// Warnings are logged immediately, even if the scripts output is buffered.
+			profiler = new ScriptProfiler(pDefinition.getId(), pScriptFile, scriptClass.getName(),
+					Thread.currentThread(), profile ? getProfileInterval() : 1000, profile,
+					slowScriptWarning * 1000L, getLog());
+			profiler.start();
+		} else {
+			profiler = null;
+		}
 		try {
 			script.run();
 		} catch (Throwable t) {
-			getLog().error("Error while executing script " + this.scriptFile + ": "
+			pLog.error("Error while executing script " + pDefinition.getScriptFile() + ": "
 					+ t.getClass().getSimpleName() + ", " + t.getMessage());
-			getLog().error("Use Maven's -e switch to see error details.");
+			pLog.error("Use Maven's -e switch to see error details.");
 			throw new MojoFailureException(t);
+		} finally {
+			if (profiler != null) {
+				profiler.stop();
+				if (profile) {
+					writeProfile(pDefinition, profiler, pLog);
+				}
+			}
+		}
+		pMetrics.end("run", mark);
+		if (metrics  ||  metricsMemory) {
+			pLog.info(pMetrics.getSummary());
+		}
+	}
+
+	/**
+	 * Logs the hot lines of a profiled script, and writes the collapsed stacks file.
+	 * A failure to write the file is logged, but doesn't fail the build.
+	 * @param pDefinition The profiled script.
+	 * @param pProfiler The profiler, which has been stopped.
+	 * @param pLog The scripts log.
+	 */
+	protected void writeProfile(ScriptDefinition pDefinition, ScriptProfiler pProfiler, Log pLog) {
+		pProfiler.getSummary(getProfileTopLines()).forEach(pLog::info);
+		final Path profileFile = getProfileFile(pDefinition);
+		try {
+			pProfiler.writeCollapsedStacks(profileFile);
+			pLog.info("Profile written to " + profileFile);
+		} catch (IOException ioe) {
+			pLog.warn("Unable to write profile " + profileFile + ": " + ioe.getMessage());
 		}
 	}
+
+	/**
+	 * Runs a single script in the Groovy daemon. The daemon compiles the script,
+	 * using the same cache directory, and compiler settings.
+	 * @param pDefinition The script to run.
+	 * @param pScriptFile The resolved script file.
+	 * @param pLog The scripts log.
+	 * @param pOut The scripts standard output, or null to use {@link System#out}.
+	 * @throws MojoExecutionException Compiling the script failed, or the daemon is unavailable.
+	 * @throws MojoFailureException Running the script failed.
+	 */
+	protected void runScriptInDaemon(ScriptDefinition pDefinition, Path pScriptFile, Log pLog, PrintWriter pOut)
+			throws MojoExecutionException, MojoFailureException {
+		final DaemonRequest request = new DaemonRequest();
+		request.setScriptId(pDefinition.getId());
+		request.setScriptFile(pScriptFile.toAbsolutePath().toString());
+		final Path baseDir = getBaseDir();
+		request.setBaseDirectory(baseDir == null ? null : baseDir.toAbsolutePath().toString());
+		request.setScriptProperties(getScriptProperties(pDefinition));
+		request.setCompileStatic(isCompileStatic());
+		request.setTypeChecked(isTypeChecked());
+		request.setTargetBytecode(getTargetBytecode());
+		request.setOptimizationOptions(getOptimizationOptions());
+		final Path cacheDir = getCacheDirectory();
+		request.setCacheDirectory(cacheDir == null ? null : cacheDir.toAbsolutePath().toString());
+		request.setDebugEnabled(pLog.isDebugEnabled());
+		daemonClient.run(request, pLog, pOut);
+	}
 }
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+
+
+/**
+ * An on-disk cache of compiled Groovy scripts. Cache entries are keyed by a
+ * hash over the script source, the Groovy version, and the compiler settings,
+ * so a script is only compiled again, if either of these changes.
+ */
+public class ScriptClassCache {
+	private static final String INDEX_FILE = "script.properties";
+
+	private final Path cacheDir;
+	private final SessionScriptCache sessionCache;
+	private final Log log;
+
+	/**
+	 * Creates a new instance.
+	 * @param pCacheDir The cache directory, or null to disable the on-disk cache.
+	 * @param pSessionCache The in-memory cache, which is consulted before the cache directory.
+	 * @param pLog The logger to use.
+	 */
+	public ScriptClassCache(Path pCacheDir, SessionScriptCache pSessionCache, Log pLog) {
+		cacheDir = pCacheDir;
+		sessionCache = pSessionCache;
+		log = pLog;
+	}
+
+	/**
+	 * Returns a string, which describes the given compiler configuration, for use
+	 * as part of the cache key.
+	 * @param pConfig The compiler configuration.
+	 * @return A string, which changes, if the relevant compiler settings change.
+	 */
+	public static String describe(CompilerConfiguration pConfig) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("targetBytecode=").append(pConfig.getTargetBytecode());
+		sb.append(";sourceEncoding=").append(pConfig.getSourceEncoding());
+		sb.append(";scriptBaseClass=").append(pConfig.getScriptBaseClass());
+		sb.append(";optimizationOptions=").append(new TreeMap<>(pConfig.getOptimizationOptions()));
+		return sb.toString();
+	}
+
+	/**
+	 * Computes the cache key for the given script source.
+	 * @param pSource The scripts source bytes.
+	 * @param pSettingsId A string, which describes the compiler settings.
+	 * @return The cache key, a hex encoded SHA-256 hash.
+	 */
+	public static String getKey(byte[] pSource, String pSettingsId) {
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		md.update(pSource);
+		md.update((byte) 0);
+		md.update(GroovySystem.getVersion().getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+		md.update(pSettingsId.getBytes(StandardCharsets.UTF_8));
+		return toHex(md.digest());
+	}
+
+	static String toHex(byte[] pBytes) {
+		final StringBuilder sb = new StringBuilder(pBytes.length*2);
+		for (byte b : pBytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the compiled script class for the given script file. If the session
+	 * cache, or the cache directory contain a matching entry, the class is taken from
+	 * there. Otherwise, the script is compiled, and the result is stored in both caches.
+	 * @param pScriptFile The script file.
+	 * @param pConfig The compiler configuration.
+	 * @param pSettingsId A string, which describes the compiler settings.
+	 * @return The compiled script class.
+	 * @throws IOException Reading the script file failed.
+	 * @throws CompilationFailedException Compiling the script failed.
+	 */
+	public Class<?> getScriptClass(Path pScriptFile, CompilerConfiguration pConfig, String pSettingsId)
+			throws IOException, CompilationFailedException {
+		final byte[] source = Files.readAllBytes(pScriptFile);
+		final String key = getKey(source, pSettingsId);
+		final Class<?> sessionCached = sessionCache.get(key);
+		if (sessionCached != null) {
+			log.debug("Session script cache hit: " + pScriptFile + " -> " + key);
+			return sessionCached;
+		}
+		CompiledScript compiledScript = read(key);
+		if (compiledScript == null) {
+			log.debug("Script class cache miss: " + pScriptFile + " -> " + key);
+			compiledScript = compile(pScriptFile, pConfig, pSettingsId);
+			write(key, compiledScript);
+		} else {
+			log.debug("Script class cache hit: " + pScriptFile + " -> " + key);
+		}
+		final Class<?> scriptClass = compiledScript.load(getParentClassLoader());
+		sessionCache.put(key, scriptClass);
+		return scriptClass;
+	}
+
+	/**
+	 * Compiles the given script file, and stores the result in the cache directory,
+	 * unless the cache directory contains a matching entry already.
+	 * @param pScriptFile The script file.
+	 * @param pConfig The compiler configuration.
+	 * @param pSettingsId A string, which describes the compiler settings.
+	 * @return True, if the script has been compiled, false, if the cache entry was
+	 *   present already.
+	 * @throws IOException Reading the script file failed.
+	 * @throws CompilationFailedException Compiling the script failed.
+	 */
+	public boolean precompile(Path pScriptFile, CompilerConfiguration pConfig, String pSettingsId)
+			throws IOException, CompilationFailedException {
+		if (cacheDir == null) {
+			throw new IllegalStateException("No cache directory configured.");
+		}
+		final String key = getKey(Files.readAllBytes(pScriptFile), pSettingsId);
+		if (Files.isRegularFile(cacheDir.resolve(key).resolve(INDEX_FILE))) {
+			log.debug("Script class cache entry is present: " + pScriptFile + " -> " + key);
+			return false;
+		}
+		write(key, compile(pScriptFile, pConfig, pSettingsId));
+		return true;
+	}
+
+	protected ClassLoader getParentClassLoader() {
+		final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		return cl == null ? ScriptClassCache.class.getClassLoader() : cl;
+	}
+
+	/**
+	 * Compiles the given script file into a set of class files.
+	 * @param pScriptFile The script file.
+	 * @param pConfig The compiler configuration.
+	 * @param pSettingsId A string, which describes the compiler settings.
+	 * @return The compiled script.
+	 * @throws CompilationFailedException Compiling the script failed.
+	 */
+	public CompiledScript compile(Path pScriptFile, CompilerConfiguration pConfig, String pSettingsId)
+			throws CompilationFailedException {
+		final GroovyClassLoader gcl = sessionCache.getCompilerClassLoader(getParentClassLoader(), pConfig, pSettingsId);
+		final CompilationUnit unit = new CompilationUnit(pConfig, null, gcl);
+		final SourceUnit sourceUnit = unit.addSource(pScriptFile.toFile());
+		unit.compile(Phases.CLASS_GENERATION);
+		final List<ClassNode> classNodes = sourceUnit.getAST().getClasses();
+		if (classNodes.isEmpty()) {
+			throw new IllegalStateException("No classes generated for script file: " + pScriptFile);
+		}
+		final Map<String,byte[]> classes = new HashMap<>();
+		for (GroovyClass gc : unit.getClasses()) {
+			classes.put(gc.getName(), gc.getBytes());
+		}
+		return new CompiledScript(classNodes.get(0).getName(), classes);
+	}
+
+	protected CompiledScript read(String pKey) {
+		if (cacheDir == null) {
+			return null;
+		}
+		final Path entryDir = cacheDir.resolve(pKey);
+		final Path indexFile = entryDir.resolve(INDEX_FILE);
+		if (!Files.isRegularFile(indexFile)) {
+			return null;
+		}
+		try {
+			final Properties props = new Properties();
+			try (InputStream in = Files.newInputStream(indexFile)) {
+				props.load(in);
+			}
+			final String mainClass = props.getProperty("mainClass");
+			final Map<String,byte[]> classes = new HashMap<>();
+			for (String name : props.getProperty("classes", "").split(",")) {
+				if (name.length() > 0) {
+					classes.put(name, Files.readAllBytes(entryDir.resolve(name + ".class")));
+				}
+			}
+			if (mainClass == null  ||  !classes.containsKey(mainClass)) {
+				log.warn("Ignoring invalid script class cache entry: " + entryDir);
+				return null;
+			}
+			return new CompiledScript(mainClass, classes);
+		} catch (IOException ioe) {
+			log.warn("Unable to read script class cache entry " + entryDir + ": " + ioe.getMessage());
+			return null;
+		}
+	}
+
+	protected void write(String pKey, CompiledScript pScript) {
+		if (cacheDir == null) {
+			return;
+		}
+		final Path entryDir = cacheDir.resolve(pKey);
+		if (Files.isDirectory(entryDir)) {
+			return;
+		}
+		Path tempDir = null;
+		try {
+			Files.createDirectories(cacheDir);
+			tempDir = Files.createTempDirectory(cacheDir, pKey + ".");
+			final StringBuilder names = new StringBuilder();
+			for (Map.Entry<String,byte[]> en : pScript.getClasses().entrySet()) {
+				Files.write(tempDir.resolve(en.getKey() + ".class"), en.getValue());
+				if (names.length() > 0) {
+					names.append(',');
+				}
+				names.append(en.getKey());
+			}
+			final Properties props = new Properties();
+			props.setProperty("mainClass", pScript.getMainClass());
+			props.setProperty("classes", names.toString());
+			props.setProperty("groovyVersion", GroovySystem.getVersion());
+			try (OutputStream out = Files.newOutputStream(tempDir.resolve(INDEX_FILE))) {
+				props.store(out, null);
+			}
+			try {
+				Files.move(tempDir, entryDir, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempDir, entryDir);
+			}
+			tempDir = null;
+			log.debug("Stored script class cache entry: " + entryDir);
+		} catch (FileAlreadyExistsException e) {
+			// Another build stored the same entry concurrently, ignore this.
+		} catch (IOException ioe) {
+			log.warn("Unable to write script class cache entry " + entryDir + ": " + ioe.getMessage());
+		} finally {
+			if (tempDir != null) {
+				deleteQuietly(tempDir);
+			}
+		}
+	}
+
+	private void deleteQuietly(Path pDir) {
+		try {
+			if (Files.isDirectory(pDir)) {
+				try (Stream<Path> files = Files.list(pDir)) {
+					files.forEach((p) -> {
+						try {
+							Files.deleteIfExists(p);
+						} catch (IOException e) {
+							// Ignore this
+						}
+					});
+				}
+			}
+			Files.deleteIfExists(pDir);
+		} catch (IOException e) {
+			// Ignore this
+		}
+	}
+
+	/**
+	 * A compiled script: The generated class files, and the name of the script class.
+	 */
+	public static class CompiledScript {
+		private final String mainClass;
+		private final Map<String,byte[]> classes;
+
+		CompiledScript(String pMainClass, Map<String,byte[]> pClasses) {
+			mainClass = pMainClass;
+			classes = pClasses;
+		}
+
+		public String getMainClass() { return mainClass; }
+		public Map<String,byte[]> getClasses() { return classes; }
+
+		/**
+		 * Loads the script class into a new class loader.
+		 * @param pParent The parent class loader.
+		 * @return The loaded script class.
+		 */
+		public Class<?> load(ClassLoader pParent) {
+			try {
+				return new BytesClassLoader(pParent, classes).loadClass(mainClass);
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("Script class not found: " + mainClass, e);
+			}
+		}
+	}
+
+	private static class BytesClassLoader extends ClassLoader {
+		private final Map<String,byte[]> classes;
+
+		BytesClassLoader(ClassLoader pParent, Map<String,byte[]> pClasses) {
+			super(pParent);
+			classes = pClasses;
+		}
+
+		@Override
+		protected Class<?> findClass(String pName) throws ClassNotFoundException {
+			final byte[] bytes = classes.get(pName);
+			if (bytes == null) {
+				throw new ClassNotFoundException(pName);
+			}
+			return defineClass(pName, bytes, 0, bytes.length);
+		}
+	}
+}
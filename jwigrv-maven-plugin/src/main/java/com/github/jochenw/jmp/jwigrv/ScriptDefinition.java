@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An entry of the run goals {@code scripts} parameter: A script, which is
+ * executed, after the scripts, that it depends on.
+ */
+public class ScriptDefinition {
+	private String id;
+	private String scriptFile;
+	private Map<String,String> scriptProperties;
+	private List<String> dependsOn;
+
+	public ScriptDefinition() {
+	}
+
+	ScriptDefinition(String pId, String pScriptFile, Map<String,String> pScriptProperties) {
+		id = pId;
+		scriptFile = pScriptFile;
+		scriptProperties = pScriptProperties;
+	}
+
+	/**
+	 * Returns the scripts id, which is used in the {@code dependsOn} lists of
+	 * other scripts. Defaults to the script file.
+	 * @return The scripts id.
+	 */
+	public String getId() {
+		return id == null ? scriptFile : id;
+	}
+
+	public String getScriptFile() {
+		return scriptFile;
+	}
+
+	/**
+	 * Returns the scripts properties. These are added to (and override) the
+	 * run goals {@code scriptProperties}.
+	 * @return The scripts properties, or null.
+	 */
+	public Map<String,String> getScriptProperties() {
+		return scriptProperties;
+	}
+
+	/**
+	 * Returns the ids of the scripts, that must have finished successfully, before
+	 * this script can start.
+	 * @return The ids of the scripts, that this script depends on, or null.
+	 */
+	public List<String> getDependsOn() {
+		return dependsOn;
+	}
+}
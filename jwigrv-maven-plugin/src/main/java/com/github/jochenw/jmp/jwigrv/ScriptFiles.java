@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import groovy.lang.Closure;
+
+
+/**
+ * A helper object, which is available to scripts as the variable {@code files}.
+ * It allows to process the files in a directory tree concurrently, for example:
+ * <pre>
+ *   def sizes = files.parallel('target/classes', '**&#47;*.class') { path -&gt; files.bytes(path).length }
+ * </pre>
+ * The directory tree is listed lazily, while the files are being processed on a
+ * fork-join pool. The values, which are returned by the closure, are collected,
+ * and returned in the order of the file paths.
+ */
+public class ScriptFiles {
+	/**
+	 * Files of at least this size are memory mapped, rather than read into the heap.
+	 */
+	public static final long MAPPING_THRESHOLD = 1024*1024;
+
+	private final Path baseDir;
+	private final int parallelism;
+
+	/**
+	 * Creates a new instance.
+	 * @param pBaseDir The directory, against which relative paths are resolved,
+	 *   or null for the current directory. The directory is made absolute, so
+	 *   that the paths, which are passed to closures, are absolute, too, and
+	 *   can be passed back to this object without being resolved twice.
+	 * @param pParallelism The maximum number of files, which are processed concurrently.
+	 */
+	public ScriptFiles(Path pBaseDir, int pParallelism) {
+		baseDir = pBaseDir == null ? null : pBaseDir.toAbsolutePath().normalize();
+		parallelism = Math.max(1, pParallelism);
+	}
+
+	/**
+	 * Converts the given object (a {@link Path}, a {@link File}, or a string) into a
+	 * path. Relative paths are resolved against the base directory, absolute
+	 * paths are returned unchanged.
+	 * @param pPath The object to convert.
+	 * @return The converted path.
+	 */
+	public Path path(Object pPath) {
+		final Path p;
+		if (pPath instanceof Path) {
+			p = (Path) pPath;
+		} else if (pPath instanceof File) {
+			p = ((File) pPath).toPath();
+		} else if (pPath != null) {
+			p = Paths.get(pPath.toString());
+		} else {
+			throw new NullPointerException("Path");
+		}
+		return baseDir == null  ||  p.isAbsolute() ? p : baseDir.resolve(p);
+	}
+
+	/**
+	 * Invokes the given closure for all files in the given directory, which match
+	 * the given glob pattern, using as many threads, as there are processors.
+	 * @param pDir The directory to scan.
+	 * @param pGlob A glob pattern, which is matched against the path relative to
+	 *   {@code pDir}, for example "**&#47;*.java". Null matches all files.
+	 * @param pAction The closure, which is invoked with the files path as the argument.
+	 * @return The non-null values, which have been returned by the closure, in the
+	 *   order of the file paths.
+	 * @throws IOException Listing the directory failed.
+	 */
+	public List<Object> parallel(Object pDir, String pGlob, Closure<?> pAction) throws IOException {
+		return parallel(Collections.emptyMap(), pDir, pGlob, pAction);
+	}
+
+	/**
+	 * Invokes the given closure for all files in the given directory, which match
+	 * the given glob pattern. Supported options are {@code parallelism} (the
+	 * maximum number of threads).
+	 * @param pOptions The options, typically passed as named arguments.
+	 * @param pDir The directory to scan.
+	 * @param pGlob A glob pattern, which is matched against the path relative to
+	 *   {@code pDir}, for example "**&#47;*.java". Null matches all files.
+	 * @param pAction The closure, which is invoked with the files path as the argument.
+	 * @return The non-null values, which have been returned by the closure, in the
+	 *   order of the file paths.
+	 * @throws IOException Listing the directory failed.
+	 */
+	public List<Object> parallel(Map<String,?> pOptions, Object pDir, String pGlob, Closure<?> pAction)
+			throws IOException {
+		final Object parallelismOption = pOptions.get("parallelism");
+		final int threads = parallelismOption == null ? parallelism
+				: Math.max(1, Integer.parseInt(parallelismOption.toString()));
+		final Path dir = path(pDir);
+		if (!Files.isDirectory(dir)) {
+			throw new IOException("Directory not found: " + dir);
+		}
+		final List<PathMatcher> matchers = pGlob == null ? Collections.emptyList()
+				: UpToDateChecker.matchers(dir.getFileSystem(), Collections.singletonList(pGlob));
+		final Map<Path,Object> results = new ConcurrentSkipListMap<>();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		// Limits the number of queued files, so that the listing remains lazy.
+		final Semaphore pending = new Semaphore(threads*4);
+		final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		final ForkJoinPool pool = new ForkJoinPool(threads, (p) -> {
+			final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			t.setName("jwigrv-files-" + t.getPoolIndex());
+			t.setContextClassLoader(contextClassLoader);
+			return t;
+		}, null, false);
+		try (Stream<Path> stream = Files.walk(dir)) {
+			final Iterator<Path> iter = stream.iterator();
+			while (iter.hasNext()  &&  failure.get() == null) {
+				final Path file = iter.next();
+				if (!Files.isRegularFile(file)
+						||  (!matchers.isEmpty()  &&  !UpToDateChecker.matches(matchers, dir.relativize(file)))) {
+					continue;
+				}
+				pending.acquireUninterruptibly();
+				pool.execute(() -> {
+					try {
+						if (failure.get() == null) {
+							final Object result = pAction.call(file);
+							if (result != null) {
+								results.put(file, result);
+							}
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						pending.release();
+					}
+				});
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+			try {
+				while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					// Keep waiting, until the running closures have finished.
+				}
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		final Throwable t = failure.get();
+		if (t != null) {
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t instanceof IOException) {
+				throw (IOException) t;
+			} else {
+				throw new IllegalStateException(t.getMessage(), t);
+			}
+		}
+		return new ArrayList<>(results.values());
+	}
+
+	/**
+	 * Returns the contents of the given file as a read-only buffer. Files of at least
+	 * {@link #MAPPING_THRESHOLD} bytes are memory mapped, smaller files are read into
+	 * the heap.
+	 * @param pFile The file to read.
+	 * @return The files contents.
+	 * @throws IOException Reading the file failed.
+	 */
+	public ByteBuffer buffer(Object pFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(path(pFile), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size >= MAPPING_THRESHOLD) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()  &&  channel.read(buffer) != -1) {
+				// Keep reading.
+			}
+			buffer.flip();
+			return buffer.asReadOnlyBuffer();
+		}
+	}
+
+	/**
+	 * Returns the contents of the given file as a byte array.
+	 * @param pFile The file to read.
+	 * @return The files contents.
+	 * @throws IOException Reading the file failed.
+	 */
+	public byte[] bytes(Object pFile) throws IOException {
+		final ByteBuffer buffer = buffer(pFile);
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Returns the contents of the given file as a string, assuming UTF-8.
+	 * @param pFile The file to read.
+	 * @return The files contents.
+	 * @throws IOException Reading the file failed.
+	 */
+	public String text(Object pFile) throws IOException {
+		return text(pFile, StandardCharsets.UTF_8.name());
+	}
+
+	/**
+	 * Returns the contents of the given file as a string.
+	 * @param pFile The file to read.
+	 * @param pCharset The files character set.
+	 * @return The files contents.
+	 * @throws IOException Reading the file failed.
+	 */
+	public String text(Object pFile, String pCharset) throws IOException {
+		return Charset.forName(pCharset).decode(buffer(pFile)).toString();
+	}
+}
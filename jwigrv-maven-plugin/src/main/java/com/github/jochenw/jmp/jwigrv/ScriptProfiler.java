@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * A sampling profiler for a running script: The stack of the thread, which
+ * runs the script, is sampled periodically. The samples are aggregated
+ * immediately, so the memory use depends on the number of distinct stacks,
+ * not on the duration of the run. The profile measures wall clock time, so
+ * a script, which waits for I/O, or a lock, is sampled as well.
+ * Optionally, a warning with the current script line is logged, if the run
+ * takes longer than a threshold.
+ */
+public class ScriptProfiler {
+	private static final int MAX_DEPTH = 128;
+	private static final int MAX_STACKS = 10000;
+	private static final String[] HIDDEN_PACKAGES = { "org.codehaus.groovy.", "org.apache.groovy.",
+			"groovy.lang.", "java.lang.reflect.", "java.lang.invoke.", "jdk.internal.reflect.", "sun.reflect." };
+
+	private final String scriptId, scriptClassName, scriptFileName;
+	private final Path scriptFile;
+	private final Thread thread;
+	private final long intervalMillis, warnAfterMillis;
+	private final boolean aggregate;
+	private final Log log;
+	private final Map<String,long[]> stacks = new HashMap<>();
+	private final Map<Integer,long[]> lines = new HashMap<>();
+	private ScheduledExecutorService executor;
+	private long startMillis, endMillis, nextWarningMillis;
+	private int samples, scriptSamples;
+	private List<String> sourceLines;
+
+	/**
+	 * Creates a new instance.
+	 * @param pScriptId The scripts id, which is used in messages.
+	 * @param pScriptFile The script file.
+	 * @param pScriptClassName The name of the compiled script class.
+	 * @param pThread The thread, which runs the script.
+	 * @param pIntervalMillis The sampling interval in milliseconds.
+	 * @param pAggregate True, if the samples should be aggregated into a profile,
+	 *   false, if only the warning is required.
+	 * @param pWarnAfterMillis The duration in milliseconds, after which a warning
+	 *   is logged, and repeated, or 0 to disable the warning.
+	 * @param pLog The logger, which receives the warnings.
+	 */
+	public ScriptProfiler(String pScriptId, Path pScriptFile, String pScriptClassName, Thread pThread,
+			long pIntervalMillis, boolean pAggregate, long pWarnAfterMillis, Log pLog) {
+		scriptId = pScriptId;
+		scriptFile = pScriptFile;
+		scriptFileName = pScriptFile.getFileName().toString();
+		scriptClassName = pScriptClassName;
+		thread = pThread;
+		intervalMillis = Math.max(1, pIntervalMillis);
+		aggregate = pAggregate;
+		warnAfterMillis = pWarnAfterMillis;
+		log = pLog;
+	}
+
+	/**
+	 * Starts sampling.
+	 */
+	public synchronized void start() {
+		startMillis = System.currentTimeMillis();
+		nextWarningMillis = warnAfterMillis > 0 ? startMillis + warnAfterMillis : Long.MAX_VALUE;
+		executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+			final Thread t = new Thread(r, "jwigrv-profiler-" + thread.getName());
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleAtFixedRate(() -> sample(thread.getStackTrace()), intervalMillis, intervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sampling.
+	 */
+	public void stop() {
+		final ScheduledExecutorService exec;
+		synchronized (this) {
+			exec = executor;
+			executor = null;
+			endMillis = System.currentTimeMillis();
+		}
+		if (exec != null) {
+			exec.shutdownNow();
+			try {
+				exec.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns, whether the given stack frame belongs to the script, including
+	 * closures, and classes, which are declared in the script.
+	 * @param pFrame The stack frame.
+	 * @return True, if the frame is a script frame.
+	 */
+	protected boolean isScriptFrame(StackTraceElement pFrame) {
+		final String className = pFrame.getClassName();
+		return className.equals(scriptClassName)  ||  className.startsWith(scriptClassName + "$")
+				||  scriptFileName.equals(pFrame.getFileName());
+	}
+
+	/**
+	 * Records a sample.
+	 * @param pStack The sampled stack, innermost frame first.
+	 */
+	synchronized void sample(StackTraceElement[] pStack) {
+		int innermost = -1, outermost = -1;
+		for (int i = 0;  i < pStack.length;  i++) {
+			if (isScriptFrame(pStack[i])) {
+				if (innermost == -1) {
+					innermost = i;
+				}
+				outermost = i;
+			}
+		}
+		final long now = System.currentTimeMillis();
+		if (now >= nextWarningMillis) {
+			nextWarningMillis += warnAfterMillis;
+			warn(now, innermost == -1 ? null : pStack[innermost], pStack.length == 0 ? null : pStack[0]);
+		}
+		if (!aggregate) {
+			return;
+		}
+		++samples;
+		if (innermost == -1) {
+			// Not in the script yet, or anymore.
+			return;
+		}
+		++scriptSamples;
+		count(lines, Integer.valueOf(pStack[innermost].getLineNumber()));
+		final StringBuilder sb = new StringBuilder();
+		final int first = Math.max(0, outermost - MAX_DEPTH + 1);
+		if (first > 0) {
+			sb.append("[truncated]");
+		}
+		for (int i = outermost;  i >= first;  i--) {
+			final StackTraceElement frame = pStack[i];
+			final boolean scriptFrame = isScriptFrame(frame);
+			if (!scriptFrame  &&  isHidden(frame)) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append(';');
+			}
+			sb.append(frame.getClassName()).append('.').append(frame.getMethodName());
+			if (scriptFrame  &&  frame.getLineNumber() > 0) {
+				sb.append(':').append(frame.getLineNumber());
+			}
+		}
+		final String key = sb.toString();
+		if (stacks.size() < MAX_STACKS  ||  stacks.containsKey(key)) {
+			count(stacks, key);
+		} else {
+			count(stacks, "[other]");
+		}
+	}
+
+	/**
+	 * Returns, whether the given frame is omitted from the profile: The Groovy
+	 * runtime, and reflection, which are between the script frames.
+	 * @param pFrame The stack frame.
+	 * @return True, if the frame is hidden.
+	 */
+	protected boolean isHidden(StackTraceElement pFrame) {
+		final String className = pFrame.getClassName();
+		for (String prefix : HIDDEN_PACKAGES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static <K> void count(Map<K,long[]> pMap, K pKey) {
+		final long[] counter = pMap.get(pKey);
+		if (counter == null) {
+			pMap.put(pKey, new long[] { 1 });
+		} else {
+			++counter[0];
+		}
+	}
+
+	private void warn(long pNow, StackTraceElement pScriptFrame, StackTraceElement pTopFrame) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("Script ").append(scriptId).append(" is running for ")
+			.append((pNow - startMillis) / 1000).append(" seconds, ");
+		if (pScriptFrame == null) {
+			sb.append("currently outside the script");
+			if (pTopFrame != null) {
+				sb.append(" in ").append(pTopFrame);
+			}
+		} else {
+			sb.append("currently at line ").append(pScriptFrame.getLineNumber());
+			final String source = getSourceLine(pScriptFrame.getLineNumber());
+			if (source != null) {
+				sb.append(": ").append(source);
+			}
+		}
+		log.warn(sb.toString());
+	}
+
+	/**
+	 * Returns the given line of the script file.
+	 * @param pLineNumber The line number, starting with 1.
+	 * @return The trimmed line, or null, if the line isn't available.
+	 */
+	protected String getSourceLine(int pLineNumber) {
+		if (sourceLines == null) {
+			try {
+				sourceLines = Files.readAllLines(scriptFile, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				sourceLines = Collections.emptyList();
+			}
+		}
+		if (pLineNumber < 1  ||  pLineNumber > sourceLines.size()) {
+			return null;
+		}
+		return sourceLines.get(pLineNumber-1).trim();
+	}
+
+	public synchronized int getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Writes the aggregated stacks in the collapsed format ("frame;frame;frame count"),
+	 * which is understood by flame graph tools, like flamegraph.pl, or speedscope.
+	 * @param pFile The file to write.
+	 * @throws IOException Writing the file failed.
+	 */
+	public synchronized void writeCollapsedStacks(Path pFile) throws IOException {
+		final Path dir = pFile.toAbsolutePath().getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		try (BufferedWriter bw = Files.newBufferedWriter(pFile, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String,long[]> en : new TreeMap<>(stacks).entrySet()) {
+				bw.write(en.getKey());
+				bw.write(' ');
+				bw.write(String.valueOf(en.getValue()[0]));
+				bw.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Returns a summary of the profile: The number of samples, and the script
+	 * lines, where most samples have been taken.
+	 * @param pTopLines The maximum number of lines to include.
+	 * @return The summary, one entry per log message.
+	 */
+	public synchronized List<String> getSummary(int pTopLines) {
+		final List<String> summary = new ArrayList<>();
+		final long millis = (endMillis == 0 ? System.currentTimeMillis() : endMillis) - startMillis;
+		summary.add("Profile of script " + scriptId + ": " + samples + " samples in " + millis + " ms, "
+				+ scriptSamples + " in the script");
+		final List<Map.Entry<Integer,long[]>> hotLines = new ArrayList<>(lines.entrySet());
+		hotLines.sort((e1, e2) -> {
+			final int result = Long.compare(e2.getValue()[0], e1.getValue()[0]);
+			return result == 0 ? e1.getKey().compareTo(e2.getKey()) : result;
+		});
+		for (int i = 0;  i < Math.min(pTopLines, hotLines.size());  i++) {
+			final Map.Entry<Integer,long[]> en = hotLines.get(i);
+			final int lineNumber = en.getKey().intValue();
+			final String source = getSourceLine(lineNumber);
+			summary.add(String.format(Locale.ROOT, "  %s:%d %5.1f%% (%d samples)%s", scriptFileName,
+					Integer.valueOf(lineNumber), Double.valueOf(100.0 * en.getValue()[0] / Math.max(1, samples)),
+					Long.valueOf(en.getValue()[0]), source == null ? "" : ": " + source));
+		}
+		return summary;
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * Runs a set of scripts on a bounded thread pool. A script is started, as soon
+ * as all the scripts, that it depends on, have finished successfully. The first
+ * failure stops the run: No more scripts are started, and running scripts are
+ * interrupted.
+ */
+public class ScriptScheduler {
+	/**
+	 * The task, which actually runs a script.
+	 */
+	public interface Task {
+		/**
+		 * Runs the given script.
+		 * @param pDefinition The script, which is being executed.
+		 * @param pLog The scripts log, which is also used as the scripts standard output.
+		 * @throws MojoExecutionException The script could not be compiled.
+		 * @throws MojoFailureException The script failed.
+		 */
+		void run(ScriptDefinition pDefinition, BufferedLog pLog) throws MojoExecutionException, MojoFailureException;
+	}
+
+	private final int threads;
+	private final Log log;
+
+	/**
+	 * Creates a new instance.
+	 * @param pThreads The maximum number of concurrently running scripts.
+	 * @param pLog The log, into which the scripts log output is replayed.
+	 */
+	public ScriptScheduler(int pThreads, Log pLog) {
+		threads = pThreads;
+		log = pLog;
+	}
+
+	/**
+	 * Sorts the given scripts, so that every script comes after the scripts, that
+	 * it depends on.
+	 * @param pDefinitions The scripts to sort.
+	 * @return The sorted scripts.
+	 * @throws MojoFailureException The scripts have duplicate ids, unknown dependencies,
+	 *   or cyclic dependencies.
+	 */
+	public static List<ScriptDefinition> sort(List<ScriptDefinition> pDefinitions) throws MojoFailureException {
+		final Map<String,ScriptDefinition> definitionsById = new LinkedHashMap<>();
+		for (ScriptDefinition def : pDefinitions) {
+			if (def.getId() == null) {
+				throw new MojoFailureException("Invalid value for parameter 'scripts': "
+						+ "Every script requires either of 'id', or 'scriptFile'.");
+			}
+			if (definitionsById.put(def.getId(), def) != null) {
+				throw new MojoFailureException("Invalid value for parameter 'scripts': "
+						+ "Duplicate script id: " + def.getId());
+			}
+		}
+		final List<ScriptDefinition> sorted = new ArrayList<>(pDefinitions.size());
+		final Set<String> done = new HashSet<>();
+		for (ScriptDefinition def : pDefinitions) {
+			visit(def, definitionsById, done, new HashSet<>(), sorted);
+		}
+		return sorted;
+	}
+
+	private static void visit(ScriptDefinition pDefinition, Map<String,ScriptDefinition> pDefinitionsById,
+			Set<String> pDone, Set<String> pVisiting, List<ScriptDefinition> pSorted) throws MojoFailureException {
+		final String id = pDefinition.getId();
+		if (pDone.contains(id)) {
+			return;
+		}
+		if (!pVisiting.add(id)) {
+			throw new MojoFailureException("Invalid value for parameter 'scripts': "
+					+ "Cyclic dependency, involving script " + id);
+		}
+		if (pDefinition.getDependsOn() != null) {
+			for (String dependency : pDefinition.getDependsOn()) {
+				final ScriptDefinition dep = pDefinitionsById.get(dependency);
+				if (dep == null) {
+					throw new MojoFailureException("Invalid value for parameter 'scripts': "
+							+ "Script " + id + " depends on unknown script " + dependency);
+				}
+				visit(dep, pDefinitionsById, pDone, pVisiting, pSorted);
+			}
+		}
+		pVisiting.remove(id);
+		pDone.add(id);
+		pSorted.add(pDefinition);
+	}
+
+	/**
+	 * Runs the given scripts. When this method returns, the scripts log output has
+	 * been replayed into the Maven log, script by script, in the order of the
+	 * given list.
+	 * @param pDefinitions The scripts to run.
+	 * @param pTask The task, which actually runs a script.
+	 * @param pOut The stream, where the scripts standard output is written to.
+	 * @throws MojoExecutionException A script could not be compiled.
+	 * @throws MojoFailureException A script failed, or the scripts dependencies are invalid.
+	 */
+	public void run(List<ScriptDefinition> pDefinitions, Task pTask, PrintStream pOut)
+			throws MojoExecutionException, MojoFailureException {
+		final List<ScriptDefinition> sorted = sort(pDefinitions);
+		final Map<String,BufferedLog> logs = new LinkedHashMap<>();
+		for (ScriptDefinition def : pDefinitions) {
+			logs.put(def.getId(), new BufferedLog(log));
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+				newThreadFactory(Thread.currentThread().getContextClassLoader()));
+		final Set<String> started = ConcurrentHashMap.newKeySet();
+		final CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+		final Map<String,CompletableFuture<Void>> futures = new LinkedHashMap<>();
+		try {
+			for (ScriptDefinition def : sorted) {
+				final List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+				if (def.getDependsOn() != null) {
+					def.getDependsOn().forEach((id) -> dependencies.add(futures.get(id)));
+				}
+				final CompletableFuture<Void> future = CompletableFuture
+						.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+						.thenRunAsync(() -> {
+							if (firstFailure.isDone()) {
+								throw new CancellationException();
+							}
+							started.add(def.getId());
+							try {
+								pTask.run(def, logs.get(def.getId()));
+							} catch (Throwable t) {
+								firstFailure.completeExceptionally(t);
+								throw new CompletionException(t);
+							}
+						}, executor);
+				futures.put(def.getId(), future);
+			}
+			final CompletableFuture<Void> all = CompletableFuture.allOf(futures.values()
+					.toArray(new CompletableFuture<?>[futures.size()]));
+			try {
+				CompletableFuture.anyOf(all, firstFailure).join();
+			} catch (CompletionException|CancellationException e) {
+				// Handled below, via firstFailure.
+			}
+		} finally {
+			executor.shutdownNow();
+			synchronized (BufferedLog.REPLAY_LOCK) {
+				for (Map.Entry<String,BufferedLog> en : logs.entrySet()) {
+					if (started.contains(en.getKey())  &&  !en.getValue().isEmpty()) {
+						log.info("Output of script " + en.getKey() + ":");
+						en.getValue().replay(pOut);
+					}
+				}
+			}
+		}
+		if (firstFailure.isCompletedExceptionally()) {
+			try {
+				firstFailure.join();
+			} catch (CompletionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof MojoExecutionException) {
+					throw (MojoExecutionException) cause;
+				} else if (cause instanceof MojoFailureException) {
+					throw (MojoFailureException) cause;
+				} else {
+					throw new MojoFailureException(cause.getMessage(), cause);
+				}
+			}
+		}
+	}
+
+	private ThreadFactory newThreadFactory(ClassLoader pContextClassLoader) {
+		final AtomicInteger counter = new AtomicInteger();
+		return (r) -> {
+			final Thread t = new Thread(r, "jwigrv-script-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			t.setContextClassLoader(pContextClassLoader);
+			return t;
+		};
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import groovy.lang.GroovyClassLoader;
+
+
+/**
+ * An in-memory cache of compiled script classes, which is shared by all executions
+ * within the same Maven session. The cache is bounded, and evicts the least recently
+ * used classes. It holds classes only: Every execution creates its own binding,
+ * and script instance.
+ */
+public class SessionScriptCache {
+	private final LinkedHashMap<String,Class<?>> classes = new LinkedHashMap<>(16, 0.75f, true);
+	private GroovyClassLoader compilerClassLoader;
+	private String compilerSettingsId;
+	private int maxSize;
+
+	/**
+	 * Creates a new instance.
+	 * @param pMaxSize The maximum number of cached script classes.
+	 */
+	public SessionScriptCache(int pMaxSize) {
+		maxSize = pMaxSize;
+	}
+
+	/**
+	 * Returns the cache, which is attached to the given session, creating it, if
+	 * necessary.
+	 * @param pSession The Maven session, or null (for testing), in which case a new,
+	 *   unshared, cache is returned.
+	 * @param pMaxSize The maximum number of cached script classes.
+	 * @return The session scoped cache.
+	 */
+	public static SessionScriptCache of(MavenSession pSession, int pMaxSize) {
+		if (pSession == null  ||  pSession.getRepositorySession() == null) {
+			return new SessionScriptCache(pMaxSize);
+		}
+		// Using the class object as the key ensures, that different plugin versions
+		// within the same session don't see each others cache.
+		final SessionScriptCache cache = (SessionScriptCache) pSession.getRepositorySession().getData()
+				.computeIfAbsent(SessionScriptCache.class, () -> new SessionScriptCache(pMaxSize));
+		cache.setMaxSize(pMaxSize);
+		return cache;
+	}
+
+	/**
+	 * Sets the maximum number of cached script classes, evicting entries, if necessary.
+	 * @param pMaxSize The maximum number of cached script classes.
+	 */
+	public synchronized void setMaxSize(int pMaxSize) {
+		maxSize = pMaxSize;
+		evict();
+	}
+
+	/**
+	 * Returns the cached script class with the given key.
+	 * @param pKey The cache key, as created by {@link ScriptClassCache#getKey(byte[], String)}.
+	 * @return The cached class, or null.
+	 */
+	public synchronized Class<?> get(String pKey) {
+		return classes.get(pKey);
+	}
+
+	/**
+	 * Adds a script class to the cache.
+	 * @param pKey The cache key, as created by {@link ScriptClassCache#getKey(byte[], String)}.
+	 * @param pClass The script class.
+	 */
+	public synchronized void put(String pKey, Class<?> pClass) {
+		if (maxSize > 0) {
+			classes.put(pKey, pClass);
+			evict();
+		}
+	}
+
+	private void evict() {
+		while (classes.size() > Math.max(0, maxSize)) {
+			final Map.Entry<String,Class<?>> eldest = classes.entrySet().iterator().next();
+			classes.remove(eldest.getKey());
+		}
+	}
+
+	/**
+	 * Returns the class loader, which is used by the compiler to resolve classes.
+	 * Sharing this class loader avoids loading the same classes over and over again.
+	 * @param pParent The parent class loader.
+	 * @param pConfig The compiler configuration.
+	 * @param pSettingsId A string, which describes the compiler settings.
+	 * @return A class loader with the given parent.
+	 */
+	public synchronized GroovyClassLoader getCompilerClassLoader(ClassLoader pParent, CompilerConfiguration pConfig,
+			String pSettingsId) {
+		if (compilerClassLoader == null  ||  compilerClassLoader.getParent() != pParent
+				||  !pSettingsId.equals(compilerSettingsId)) {
+			compilerClassLoader = new GroovyClassLoader(pParent, pConfig);
+			compilerSettingsId = pSettingsId;
+		}
+		return compilerClassLoader;
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+
+/**
+ * Implements the up-to-date check of the run goal: A fingerprint of the script,
+ * the script properties, the compiler settings, and the input files is compared with the fingerprint of
+ * the last successful run. To keep the check cheap, input files are hashed only,
+ * if their size, or modification time has changed.
+ */
+public class UpToDateChecker {
+	private static final String SCRIPT_PREFIX = "script:";
+	private static final String PROPERTIES_KEY = "properties";
+	private static final String COMPILER_KEY = "compiler";
+	private static final String INPUT_PREFIX = "input:";
+
+	private final Path fingerprintFile;
+	private final Log log;
+	private Fingerprint previous;
+
+	/**
+	 * Creates a new instance.
+	 * @param pFingerprintFile The file, where the fingerprint of the last successful run is stored.
+	 * @param pLog The logger to use.
+	 */
+	public UpToDateChecker(Path pFingerprintFile, Log pLog) {
+		fingerprintFile = pFingerprintFile;
+		log = pLog;
+	}
+
+	/**
+	 * A fingerprint of a scripts inputs.
+	 */
+	public static class Fingerprint {
+		private final Map<String,String> values = new TreeMap<>();
+
+		String get(String pKey) { return values.get(pKey); }
+		void put(String pKey, String pValue) { values.put(pKey, pValue); }
+
+		/**
+		 * Returns, whether this fingerprint has the same contents than the given.
+		 * Modification times are ignored: A file, which has been touched, but not
+		 * changed, is still considered unchanged.
+		 * @param pOther The other fingerprint.
+		 * @return True, if the inputs are unchanged.
+		 */
+		public boolean isSameContent(Fingerprint pOther) {
+			if (pOther == null  ||  values.size() != pOther.values.size()) {
+				return false;
+			}
+			for (Map.Entry<String,String> en : values.entrySet()) {
+				final String otherValue = pOther.values.get(en.getKey());
+				if (otherValue == null) {
+					return false;
+				}
+				if (en.getKey().startsWith(INPUT_PREFIX)) {
+					final InputState state = InputState.parse(en.getValue());
+					final InputState otherState = InputState.parse(otherValue);
+					if (state.size != otherState.size  ||  !state.hash.equals(otherState.hash)) {
+						return false;
+					}
+				} else if (!en.getValue().equals(otherValue)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static class InputState {
+		private final long size, lastModified;
+		private final String hash;
+
+		InputState(long pSize, long pLastModified, String pHash) {
+			size = pSize;
+			lastModified = pLastModified;
+			hash = pHash;
+		}
+
+		static InputState parse(String pValue) {
+			final String[] parts = pValue.split(",", 3);
+			return new InputState(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+		}
+
+		@Override
+		public String toString() {
+			return size + "," + lastModified + "," + hash;
+		}
+	}
+
+	/**
+	 * Computes the current fingerprint. Input files, which have the same size,
+	 * and modification time than in the stored fingerprint, are not hashed again.
+	 * @param pScriptFiles The script files.
+	 * @param pScriptProperties The script properties, or null.
+	 * @param pCompilerSettingsId A string, which describes the compiler settings.
+	 * @param pInputFiles The input files.
+	 * @return The current fingerprint.
+	 * @throws IOException Reading the stored fingerprint, or an input file, failed.
+	 */
+	public Fingerprint fingerprint(List<Path> pScriptFiles, Map<String,String> pScriptProperties,
+			String pCompilerSettingsId, List<Path> pInputFiles) throws IOException {
+		final Fingerprint stored = getPrevious();
+		final Fingerprint fingerprint = new Fingerprint();
+		for (Path p : pScriptFiles) {
+			fingerprint.put(SCRIPT_PREFIX + p.toAbsolutePath().normalize(), hash(Files.readAllBytes(p)));
+		}
+		final Map<String,String> props = pScriptProperties == null ? Collections.emptyMap() : new TreeMap<>(pScriptProperties);
+		fingerprint.put(PROPERTIES_KEY, hash(props.toString().getBytes(StandardCharsets.UTF_8)));
+		fingerprint.put(COMPILER_KEY, hash(pCompilerSettingsId.getBytes(StandardCharsets.UTF_8)));
+		for (Path p : pInputFiles) {
+			final String key = INPUT_PREFIX + p.toAbsolutePath().normalize();
+			final long size = Files.size(p);
+			final long lastModified = Files.getLastModifiedTime(p).toMillis();
+			final String storedValue = stored == null ? null : stored.get(key);
+			String hash = null;
+			if (storedValue != null) {
+				final InputState storedState = InputState.parse(storedValue);
+				if (storedState.size == size  &&  storedState.lastModified == lastModified) {
+					hash = storedState.hash;
+				}
+			}
+			if (hash == null) {
+				hash = hash(p);
+			}
+			fingerprint.put(key, new InputState(size, lastModified, hash).toString());
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Returns, whether the given fingerprint matches the stored fingerprint.
+	 * @param pFingerprint The current fingerprint.
+	 * @return True, if the inputs are unchanged since the last successful run.
+	 * @throws IOException Reading the stored fingerprint failed.
+	 */
+	public boolean isUpToDate(Fingerprint pFingerprint) throws IOException {
+		return pFingerprint.isSameContent(getPrevious());
+	}
+
+	/**
+	 * Stores the given fingerprint, after a successful run.
+	 * @param pFingerprint The fingerprint to store.
+	 * @throws IOException Writing the fingerprint file failed.
+	 */
+	public void store(Fingerprint pFingerprint) throws IOException {
+		final Properties props = new Properties();
+		props.putAll(pFingerprint.values);
+		final Path dir = fingerprintFile.toAbsolutePath().getParent();
+		if (dir != null) {
+			Files.createDirectories(dir);
+		}
+		try (OutputStream out = Files.newOutputStream(fingerprintFile)) {
+			props.store(out, null);
+		}
+		previous = pFingerprint;
+		log.debug("Stored fingerprint: " + fingerprintFile);
+	}
+
+	protected Fingerprint getPrevious() throws IOException {
+		if (previous == null  &&  Files.isRegularFile(fingerprintFile)) {
+			final Properties props = new Properties();
+			try (InputStream in = Files.newInputStream(fingerprintFile)) {
+				props.load(in);
+			}
+			final Fingerprint fingerprint = new Fingerprint();
+			props.stringPropertyNames().forEach((k) -> fingerprint.put(k, props.getProperty(k)));
+			previous = fingerprint;
+		}
+		return previous;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hash(byte[] pBytes) {
+		return ScriptClassCache.toHex(newDigest().digest(pBytes));
+	}
+
+	private static String hash(Path pFile) throws IOException {
+		final MessageDigest md = newDigest();
+		final byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(pFile)) {
+			for (;;) {
+				final int res = in.read(buffer);
+				if (res == -1) {
+					break;
+				}
+				md.update(buffer, 0, res);
+			}
+		}
+		return ScriptClassCache.toHex(md.digest());
+	}
+
+	/**
+	 * Returns the files, which are matched by the given file set, in sorted order.
+	 * @param pBaseDir The base directory, against which the file sets directory is resolved.
+	 * @param pFileSet The file set to scan.
+	 * @param pParameter The name of the parameter, which configures the file set.
+	 * @return The matching files.
+	 * @throws IOException Scanning the directory failed.
+	 * @throws MojoFailureException The file set has no directory.
+	 */
+	public static List<Path> scan(Path pBaseDir, FileSet pFileSet, String pParameter)
+			throws IOException, MojoFailureException {
+		final String directory = pFileSet.getDirectory();
+		if (directory == null  ||  directory.trim().length() == 0) {
+			throw new MojoFailureException("Invalid parameter '" + pParameter + "': Missing directory");
+		}
+		final Path dir = pBaseDir == null ? Paths.get(directory) : pBaseDir.resolve(directory);
+		if (!Files.isDirectory(dir)) {
+			return Collections.emptyList();
+		}
+		final FileSystem fs = dir.getFileSystem();
+		final List<PathMatcher> includes = matchers(fs, pFileSet.getIncludes());
+		final List<PathMatcher> excludes = matchers(fs, pFileSet.getExcludes());
+		try (Stream<Path> stream = Files.walk(dir)) {
+			return stream.filter(Files::isRegularFile).filter((p) -> {
+				final Path relativePath = dir.relativize(p);
+				return (includes.isEmpty()  ||  matches(includes, relativePath))
+						&&  !matches(excludes, relativePath);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	static List<PathMatcher> matchers(FileSystem pFs, List<String> pPatterns) {
+		final List<PathMatcher> matchers = new ArrayList<>();
+		if (pPatterns != null) {
+			for (String pattern : pPatterns) {
+				final String p = pattern.replace('\\', '/');
+				matchers.add(pFs.getPathMatcher("glob:" + p));
+				// A Maven style "**/*.xml" should match "foo.xml" as well.
+				if (p.startsWith("**/")) {
+					matchers.add(pFs.getPathMatcher("glob:" + p.substring(3)));
+				}
+			}
+		}
+		return matchers;
+	}
+
+	static boolean matches(List<PathMatcher> pMatchers, Path pPath) {
+		for (PathMatcher matcher : pMatchers) {
+			if (matcher.matches(pPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JwiGrvCompileMojoTest extends AbstractMojoTestCase {
+	@BeforeEach protected void setUp() throws Exception { super.setUp(); }
+	@AfterEach protected void tearDown() throws Exception { super.tearDown(); }
+
+	@Test
+	void testCompileRun() throws Exception {
+		final Path cacheDir = Paths.get("target/jwigrv-cache/compile-run");
+		delete(cacheDir);
+		final JwiGrvCompileMojo compileMojo = (JwiGrvCompileMojo) lookupMojo("compile", requireTestPom("compile-run", "pom.xml"));
+		compileMojo.execute();
+		try (Stream<Path> entries = Files.list(cacheDir)) {
+			Assertions.assertEquals(2, entries.filter(Files::isDirectory).count());
+		}
+		// The run goal should use the precompiled script, rather than compiling it again.
+		final JwiGrvMojo runMojo = (JwiGrvMojo) lookupMojo("run", requireTestPom("compile-run", "run-pom.xml"));
+		final List<String> debugMessages = new ArrayList<>();
+		runMojo.setLog(new SystemStreamLog() {
+			@Override public boolean isDebugEnabled() { return true; }
+			@Override public void debug(CharSequence pContent) { debugMessages.add(pContent.toString()); }
+		});
+		runMojo.execute();
+		Assertions.assertTrue(debugMessages.stream().anyMatch((s) -> s.startsWith("Script class cache hit: ")),
+				debugMessages.toString());
+	}
+
+	@Test
+	void testCompileErrors() throws Exception {
+		delete(Paths.get("target/jwigrv-cache/compile-errors"));
+		final JwiGrvCompileMojo mojo = (JwiGrvCompileMojo) lookupMojo("compile", requireTestPom("compile-errors", "pom.xml"));
+		try {
+			mojo.execute();
+			Assertions.fail("Expected Exception");
+		} catch (MojoExecutionException e) {
+			// Both syntax errors are reported, not only the first.
+			final String msg = e.getMessage();
+			assertTrue(msg, msg.startsWith("Compilation failed for 2 of 3 scripts:"));
+			assertTrue(msg, msg.contains("missingBrace.groovy"));
+			assertTrue(msg, msg.contains("missingQuote.groovy"));
+		}
+	}
+
+	private void delete(Path pDir) throws Exception {
+		if (Files.isDirectory(pDir)) {
+			try (Stream<Path> files = Files.walk(pDir)) {
+				files.sorted(Comparator.reverseOrder()).forEach((p) -> p.toFile().delete());
+			}
+		}
+	}
+
+	private File requireTestPom(String pTestId, String pPomName) {
+		final Path testDir = Paths.get("src/test/resources/com/github/jochenw/jmp/jwigrv/junit/" + pTestId);
+		final File pom = testDir.resolve(pPomName).toFile();
+		assertTrue(pom.toPath().toAbsolutePath().toString(), pom.exists());
+		System.setProperty("com.github.jochenw.jmp.jwigrv.BaseDir", testDir.toString());
+		return pom;
+	}
+}
@@ -22,12 +22,25 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.apache.maven.plugin.testing.AbstractMojoTestCase;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -43,11 +56,15 @@ class JwiGrvMojoTest extends AbstractMojoTestCase {
 		doTest("simple-run", "Hello, world!\n");
 	}
 
-	private void doTest(String pTestId, String pExpectedOutput) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
-		doTest(pTestId, pExpectedOutput, null);
+	private String doTest(String pTestId, String pExpectedOutput) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
+		return doTest(pTestId, pExpectedOutput, null);
 	}
 
-	private void doTest(String pTestId, String pExpectedOutput, Consumer<Throwable> pErrorValidator) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
+	private String doTest(String pTestId, String pExpectedOutput, Consumer<Throwable> pErrorValidator) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
+		return doTest(pTestId, pExpectedOutput, pErrorValidator, null);
+	}
+
+	private String doTest(String pTestId, String pExpectedOutput, Consumer<Throwable> pErrorValidator, Map<String,Object> pParameters) throws Exception, MojoExecutionException, MojoFailureException, UnsupportedEncodingException {
 		final File pom = requireTestPom(pTestId);
 		final JwiGrvMojo mojo;
 		try {
@@ -57,6 +74,11 @@ class JwiGrvMojoTest extends AbstractMojoTestCase {
 			throw e;
 		}
 		assertNotNull(mojo);
+		if (pParameters != null) {
+			for (Map.Entry<String,Object> en : pParameters.entrySet()) {
+				setVariableValueToObject(mojo, en.getKey(), en.getValue());
+			}
+		}
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		final PrintStream savedSystemOut = System.out;
 		try {
@@ -68,17 +90,151 @@ class JwiGrvMojoTest extends AbstractMojoTestCase {
 		} catch (MojoExecutionException|MojoFailureException e) {
 			if (pErrorValidator != null) {
 				pErrorValidator.accept(e);
-				return;
+				return null;
 			}
 			throw e;
 		} finally {
 			System.setOut(savedSystemOut);
 		}
+		final String actualOutput = baos.toString("UTF-8");
 		if (pExpectedOutput != null) {
-			final String actualOutput = baos.toString("UTF-8");
 			final String expectedOutput = pExpectedOutput.replace("\n", System.lineSeparator());
 			Assertions.assertEquals(expectedOutput, actualOutput);
 		}
+		return actualOutput;
+	}
+
+	@Test
+	void testCachedRun() throws Exception {
+		final Path cacheDir = Paths.get("target/jwigrv-cache/cached-run");
+		if (Files.isDirectory(cacheDir)) {
+			try (Stream<Path> files = Files.walk(cacheDir)) {
+				files.sorted(Comparator.reverseOrder()).forEach((p) -> p.toFile().delete());
+			}
+		}
+		// The first run compiles the script, and populates the cache, the second run loads it from there.
+		doTest("cached-run", "Hello, world!\n");
+		try (Stream<Path> entries = Files.list(cacheDir)) {
+			assertEquals(1, entries.filter((p) -> Files.isRegularFile(p.resolve("script.properties"))).count());
+		}
+		final JwiGrvMojo mojo = (JwiGrvMojo) lookupMojo("run", requireTestPom("cached-run"));
+		final List<String> debugMessages = new ArrayList<>();
+		mojo.setLog(new SystemStreamLog() {
+			@Override public boolean isDebugEnabled() { return true; }
+			@Override public void debug(CharSequence pContent) { debugMessages.add(pContent.toString()); }
+		});
+		mojo.execute();
+		assertTrue(debugMessages.toString(),
+				debugMessages.stream().anyMatch((s) -> s.startsWith("Script class cache hit: ")));
+	}
+
+	@Test
+	void testUpToDateRun() throws Exception {
+		Files.deleteIfExists(Paths.get("target/jwigrv-fingerprints/up-to-date.fingerprint"));
+		doTest("up-to-date", "Hello, world!\n");
+		// Nothing has changed, so the second run should be skipped.
+		doTest("up-to-date", "[INFO] Skipping execution, because inputs are unchanged, and outputs are present.\n");
+		// Changed compiler settings require another run.
+		doTest("up-to-date", "Hello, world!\n", null, Collections.singletonMap("compileStatic", Boolean.TRUE));
+		doTest("up-to-date", "[INFO] Skipping execution, because inputs are unchanged, and outputs are present.\n",
+				null, Collections.singletonMap("compileStatic", Boolean.TRUE));
+	}
+
+	@Test
+	void testUpToDateMissingDirectory() throws Exception {
+		doTest("up-to-date-invalid", null, (t) -> {
+			assertTrue(t instanceof MojoFailureException);
+			assertEquals("Invalid parameter 'inputs': Missing directory", t.getMessage());
+		});
+	}
+
+	@Test
+	void testMultipleScripts() throws Exception {
+		// The scripts may run concurrently, but their output is printed in the configured order.
+		final String expectedOutput = "[INFO] Output of script first:\n"
+				+ "Hello from the first script, greeting everyone!\n"
+				+ "[INFO] Output of script second:\n"
+				+ "Hello from the second script, greeting John!\n"
+				+ "[INFO] Output of script third:\n"
+				+ "Hello from the third script, greeting everyone!\n";
+		doTest("multiple-scripts", expectedOutput);
+	}
+
+	@Test
+	void testMetricsReport() throws Exception {
+		final Path report = Paths.get("target/jwigrv-metrics/metrics.json");
+		Files.deleteIfExists(report);
+		doTest("metrics", "Hello, world!\n");
+		assertTrue(Files.isRegularFile(report));
+		final String json = new String(Files.readAllBytes(report), "UTF-8");
+		assertTrue(json, json.contains("\"script\": \"src/main/groovy/helloWorld.groovy\""));
+		assertTrue(json, json.contains("\"compileMillis\": "));
+		// A JSON Lines report is appended, rather than replaced.
+		final Path jsonLinesReport = Paths.get("target/jwigrv-metrics/metrics.jsonl");
+		Files.deleteIfExists(jsonLinesReport);
+		final Map<String,Object> parameters = Collections.singletonMap("metricsReport", jsonLinesReport.toFile());
+		doTest("metrics", "Hello, world!\n", null, parameters);
+		doTest("metrics", "Hello, world!\n", null, parameters);
+		final List<String> lines = Files.readAllLines(jsonLinesReport);
+		assertEquals(2, lines.size());
+		for (String line : lines) {
+			assertTrue(line, line.startsWith("{\"timestamp\": ")  &&  line.endsWith("}"));
+		}
+	}
+
+	@Test
+	void testProfile() throws Exception {
+		final Path profile = Paths.get("target/jwigrv-profile/src_main_groovy_busyLoop.groovy.collapsed");
+		Files.deleteIfExists(profile);
+		final String output = doTest("profile", null);
+		assertTrue(output, output.contains("Done."));
+		assertTrue(output, output.contains("Script src/main/groovy/busyLoop.groovy is running for 1 seconds, currently at line "));
+		assertTrue(output, output.contains("Profile of script src/main/groovy/busyLoop.groovy: "));
+		assertTrue(output, output.contains("busyLoop.groovy:28 "));
+		assertTrue(Files.isRegularFile(profile));
+		final String stacks = new String(Files.readAllBytes(profile), "UTF-8");
+		assertTrue(stacks, stacks.contains("busyLoop.run:27;busyLoop$_run_closure1.doCall:28"));
+	}
+
+	@Test
+	void testDaemonRun() throws Exception {
+		final Path daemonDir = Paths.get("target/jwigrv-daemon");
+		try {
+			// The first run may have to start the daemon, the second run uses the running daemon.
+			final String output = doTest("daemon-run", null);
+			assertTrue(output, output.endsWith("Hello, world!" + System.lineSeparator()));
+			doTest("daemon-run", "Hello, world!\n");
+			// The files variable resolves relative paths against the projects base directory,
+			// not against the daemons current directory.
+			doTest("daemon-files", "a.properties: 3\nb.properties: 2\n");
+			// Dependencies, which have been added to the plugin, are available in the daemon.
+			final Artifact commonsIo = new DefaultArtifact("commons-io", "commons-io", "2.2", "runtime", "jar",
+					null, new DefaultArtifactHandler("jar"));
+			commonsIo.setFile(new File(FilenameUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+			final PluginDescriptor pluginDescriptor = new PluginDescriptor();
+			pluginDescriptor.setArtifacts(Collections.singletonList(commonsIo));
+			// The class path differs, so another daemon is started.
+			final String dependencyOutput = doTest("daemon-dependency", null, null,
+					Collections.singletonMap("pluginDescriptor", pluginDescriptor));
+			assertTrue(dependencyOutput, dependencyOutput.endsWith("xml" + System.lineSeparator()));
+		} finally {
+			// Removing the state file stops the daemon.
+			if (Files.isDirectory(daemonDir)) {
+				try (Stream<Path> files = Files.list(daemonDir)) {
+					for (Path p : (Iterable<Path>) files::iterator) {
+						if (p.getFileName().toString().endsWith(".properties")) {
+							Files.delete(p);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void testParallelFiles() throws Exception {
+		// The files are processed concurrently, but the results are returned in the order of the paths.
+		doTest("parallel-files", "a.properties: 3\nb.properties: 2\n");
 	}
 
 	@Test
@@ -102,6 +258,15 @@ class JwiGrvMojoTest extends AbstractMojoTestCase {
 		});
 	}
 
+	@Test
+	void testCompileStaticError() throws Exception {
+		// With compileStatic=true, the undeclared variable "log" is a compilation error.
+		doTest("compile-static", null, (t) -> {
+			assertTrue(t instanceof MojoExecutionException);
+			assertTrue(t.getMessage().contains("The variable [log] is undeclared."));
+		});
+	}
+
 	@Test
 	void testRuntimeError() throws Exception {
 		doTest("runtime-error", null, (t) -> {
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.jochenw.jmp.jwigrv;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.jupiter.api.Test;
+
+class SessionScriptCacheTest {
+	private static final Path SCRIPT_FILE =
+			Paths.get("src/test/resources/com/github/jochenw/jmp/jwigrv/junit/cached-run/src/main/groovy/helloWorld.groovy");
+
+	@SuppressWarnings("deprecation")
+	private MavenSession newSession() {
+		return new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(),
+				new DefaultMavenExecutionResult());
+	}
+
+	private Class<?> getScriptClass(MavenSession pSession, int pMaxSize) throws Exception {
+		// Every execution creates its own ScriptClassCache, without a cache directory.
+		final ScriptClassCache cache = new ScriptClassCache(null, SessionScriptCache.of(pSession, pMaxSize),
+				new SystemStreamLog());
+		final CompilerConfiguration config = new CompilerConfiguration(CompilerConfiguration.DEFAULT);
+		return cache.getScriptClass(SCRIPT_FILE, config, ScriptClassCache.describe(config));
+	}
+
+	@Test
+	void testSharedWithinSession() throws Exception {
+		final MavenSession session = newSession();
+		assertSame(SessionScriptCache.of(session, 10), SessionScriptCache.of(session, 10));
+		final Class<?> scriptClass = getScriptClass(session, 10);
+		assertSame(scriptClass, getScriptClass(session, 10));
+		// Another session compiles the script again.
+		assertNotSame(scriptClass, getScriptClass(newSession(), 10));
+	}
+
+	@Test
+	void testEviction() {
+		final SessionScriptCache cache = new SessionScriptCache(2);
+		cache.put("a", String.class);
+		cache.put("b", Integer.class);
+		// Accessing "a" makes "b" the least recently used entry.
+		assertSame(String.class, cache.get("a"));
+		cache.put("c", Long.class);
+		assertSame(String.class, cache.get("a"));
+		assertNull(cache.get("b"));
+		assertSame(Long.class, cache.get("c"));
+		// Shrinking the cache evicts entries immediately.
+		cache.setMaxSize(1);
+		assertNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	void testDisabled() throws Exception {
+		final MavenSession session = newSession();
+		final Class<?> scriptClass = getScriptClass(session, 0);
+		assertNotSame(scriptClass, getScriptClass(session, 0));
+	}
+}
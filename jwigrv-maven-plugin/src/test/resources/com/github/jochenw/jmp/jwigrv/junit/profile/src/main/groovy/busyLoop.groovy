@@ -0,0 +1,31 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+// Keeps busy for 1.5 seconds, mostly in the method square.
+double square(double d) {
+    return Math.sqrt(d) * Math.sqrt(d)
+}
+
+double sum = 0
+long end = System.currentTimeMillis() + 1500
+while (System.currentTimeMillis() < end) {
+    (1..1000).each { i ->
+        sum += square(i)
+    }
+}
+System.out.println("Done.")